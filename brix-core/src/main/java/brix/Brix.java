@@ -17,7 +17,9 @@ package brix;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -149,10 +151,63 @@ public abstract class Brix
 		return config;
 	}
 
+	private static MetaDataKey<Map<Session, JcrSession>> CURRENT_SESSIONS = new MetaDataKey<Map<Session, JcrSession>>()
+	{
+	};
+
+	private static MetaDataKey<Map<Session, JcrSession>> CURRENT_READ_ONLY_SESSIONS = new MetaDataKey<Map<Session, JcrSession>>()
+	{
+	};
+
+	private static MetaDataKey<Boolean> READ_ONLY_REQUEST = new MetaDataKey<Boolean>()
+	{
+	};
+
+	/**
+	 * Marks the current request as read-only. Sessions returned by
+	 * {@link #getCurrentSession(String)} for the rest of the request are wrapped using
+	 * {@link #wrapReadOnlySession(Session)}.
+	 * 
+	 * @param readOnly
+	 */
+	public void setCurrentRequestReadOnly(boolean readOnly)
+	{
+		RequestCycle.get().setMetaData(READ_ONLY_REQUEST, readOnly ? Boolean.TRUE : null);
+	}
+
+	public boolean isCurrentRequestReadOnly()
+	{
+		RequestCycle requestCycle = RequestCycle.get();
+		return requestCycle != null && requestCycle.getMetaData(READ_ONLY_REQUEST) != null;
+	}
+
 	public JcrSession getCurrentSession(String workspace)
 	{
 		Session session = config.getSessionFactory().getCurrentSession(workspace);
-		return wrapSession(session);
+		RequestCycle requestCycle = RequestCycle.get();
+		final boolean readOnly = requestCycle != null &&
+				requestCycle.getMetaData(READ_ONLY_REQUEST) != null;
+		if (config.isNodeIdentityMapEnabled() && requestCycle != null)
+		{
+			// reuse the wrapper for the whole request so that nodes are wrapped only once
+			MetaDataKey<Map<Session, JcrSession>> key = readOnly ? CURRENT_READ_ONLY_SESSIONS
+					: CURRENT_SESSIONS;
+			Map<Session, JcrSession> sessions = requestCycle.getMetaData(key);
+			if (sessions == null)
+			{
+				sessions = new IdentityHashMap<Session, JcrSession>();
+				requestCycle.setMetaData(key, sessions);
+			}
+			JcrSession result = sessions.get(session);
+			if (result == null)
+			{
+				result = readOnly ? wrapReadOnlySession(session) : wrapSession(session);
+				result.setNodeIdentityMapEnabled(true);
+				sessions.put(session, result);
+			}
+			return result;
+		}
+		return readOnly ? wrapReadOnlySession(session) : wrapSession(session);
 	}
 
 	public JcrSession wrapSession(Session session)
@@ -161,6 +216,20 @@ public abstract class Brix
 		return JcrSession.Wrapper.wrap(session, behavior);
 	}
 
+	/**
+	 * Wraps the session for reading only. Nodes are still wrapped by the registered
+	 * {@link JcrNodeWrapperFactory}s, but the session does not keep the change log and rejects all
+	 * modifications.
+	 * 
+	 * @param session
+	 * @return
+	 */
+	public JcrSession wrapReadOnlySession(Session session)
+	{
+		SessionBehavior behavior = new SessionBehavior(this);
+		return JcrSession.Wrapper.wrapReadOnly(session, behavior);
+	}
+
 	/**
 	 * Performs any {@link WebApplication} specific initialization
 	 * 
@@ -89,6 +89,27 @@ public class BrixNodeModel implements IModel<BrixNode>
         }
     }
 
+    /**
+     * Returns the UUID (or path if the node is not referenceable) of the node without loading it.
+     * 
+     * @see BrixNode#getNodeId()
+     * @return node id or <code>null</code> if the model is empty
+     */
+    public String getNodeId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the name of workspace of the node without loading it.
+     * 
+     * @return
+     */
+    public String getWorkspaceName()
+    {
+        return workspaceName;
+    }
+
     public void detach()
     {
         node = null;
@@ -15,13 +15,17 @@
 package brix.config;
 
 import brix.jcr.JcrSessionFactory;
+import brix.plugin.site.page.tile.Tile;
 import brix.registry.ExtensionPointRegistry;
+import brix.web.nodepage.PageOutputCache;
 import brix.workspace.WorkspaceManager;
 
 public class BrixConfig
 {
     private final ExtensionPointRegistry registry = new ExtensionPointRegistry();
 
+    private final Tile.Helper.TypeIndex tileTypeIndex = new Tile.Helper.TypeIndex();
+
     private AdminConfig adminConfig = new AdminConfig();
 
     private final UriMapper mapper;
@@ -29,6 +33,12 @@ public class BrixConfig
     private int httpPort = 80;
     private int httpsPort = 443;
 
+    private PageOutputCache pageOutputCache = null;
+
+    private boolean nodeIdentityMapEnabled = false;
+
+    private boolean readOnlyPresentation = false;
+
     private final WorkspaceManager workspaceManager;
     private final JcrSessionFactory sessionFactory;
 
@@ -38,6 +48,7 @@ public class BrixConfig
         this.sessionFactory = sessionFactory;
         this.workspaceManager = workspaceManager;
         this.mapper = mapper;
+        registry.register(tileTypeIndex, true);
     }
 
 
@@ -63,6 +74,16 @@ public class BrixConfig
         return registry;
     }
 
+    /**
+     * Returns the type name -> tile index of tiles registered in {@link #getRegistry()}.
+     * 
+     * @return
+     */
+    public Tile.Helper.TypeIndex getTileTypeIndex()
+    {
+        return tileTypeIndex;
+    }
+
     public int getHttpPort()
     {
         return httpPort;
@@ -88,6 +109,82 @@ public class BrixConfig
         return mapper;
     }
 
+    /**
+     * Returns the cache of rendered page output or <code>null</code> if page output is not
+     * cached.
+     * 
+     * @return
+     */
+    public PageOutputCache getPageOutputCache()
+    {
+        return pageOutputCache;
+    }
+
+    /**
+     * Sets the cache of rendered page output. Pass <code>null</code> to disable caching (the
+     * default). The previously set cache is destroyed.
+     * 
+     * @param pageOutputCache
+     */
+    public void setPageOutputCache(PageOutputCache pageOutputCache)
+    {
+        if (this.pageOutputCache != null && this.pageOutputCache != pageOutputCache)
+        {
+            this.pageOutputCache.destroy();
+        }
+        this.pageOutputCache = pageOutputCache;
+    }
+
+    /**
+     * Returns whether sessions obtained through {@link brix.Brix#getCurrentSession(String)} during
+     * a request share the wrapper instances of their nodes.
+     * 
+     * @see brix.jcr.api.JcrSession#setNodeIdentityMapEnabled(boolean)
+     * @return
+     */
+    public boolean isNodeIdentityMapEnabled()
+    {
+        return nodeIdentityMapEnabled;
+    }
+
+    /**
+     * Enables wrapping each node only once per request. When enabled,
+     * {@link brix.Brix#getCurrentSession(String)} returns the same {@link brix.jcr.api.JcrSession}
+     * for a workspace during a request and the session keeps an identity map of wrapped nodes.
+     * Disabled by default.
+     * 
+     * @param nodeIdentityMapEnabled
+     */
+    public void setNodeIdentityMapEnabled(boolean nodeIdentityMapEnabled)
+    {
+        this.nodeIdentityMapEnabled = nodeIdentityMapEnabled;
+    }
+
+    /**
+     * Returns whether requests that only display site content use read-only sessions.
+     * 
+     * @see brix.web.BrixRequestCycleProcessor#isReadOnlyTarget(org.apache.wicket.IRequestTarget)
+     * @return
+     */
+    public boolean isReadOnlyPresentation()
+    {
+        return readOnlyPresentation;
+    }
+
+    /**
+     * Enables read-only sessions for requests that only display site content (rendering pages and
+     * serving resources, but not form submissions or other listener requests). Such sessions skip
+     * the change log and action handlers and reject all modifications, so this should only be
+     * enabled when no tile writes to the repository while rendering. Disabled by default.
+     * 
+     * @see brix.Brix#setCurrentRequestReadOnly(boolean)
+     * @param readOnlyPresentation
+     */
+    public void setReadOnlyPresentation(boolean readOnlyPresentation)
+    {
+        this.readOnlyPresentation = readOnlyPresentation;
+    }
+
   
 
 
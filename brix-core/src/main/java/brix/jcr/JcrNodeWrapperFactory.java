@@ -14,6 +14,8 @@
 
 package brix.jcr;
 
+import java.util.Collection;
+
 import javax.jcr.Node;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
@@ -79,6 +81,23 @@ public abstract class JcrNodeWrapperFactory implements RepositoryInitializer
 	 */
 	public abstract boolean canWrap(Brix brix, JcrNode node);
 
+	/**
+	 * Returns values of the <code>brix:nodeType</code> property of nodes this
+	 * factory wraps. Factories that declare their node types are dispatched to
+	 * directly by node type and {@link #canWrap(Brix, JcrNode)} is not called
+	 * for them, so it must be consistent with the returned types.
+	 * <p>
+	 * Factories that decide based on something else (path, primary node type,
+	 * mixins) should return <code>null</code> (the default) and are consulted
+	 * through {@link #canWrap(Brix, JcrNode)} in order of registration.
+	 * 
+	 * @return node types or <code>null</code>
+	 */
+	public Collection<String> getNodeTypes()
+	{
+		return null;
+	}
+
 	/**
 	 * Wraps the node with a subclass. 
 	 
@@ -0,0 +1,669 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.jcr.Credentials;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session factory that keeps pools of logged in sessions per workspace instead of logging in for
+ * every request. This is mostly useful when login is expensive, e.g. with a remote (RMI)
+ * repository.
+ * <p>
+ * Like {@link ThreadLocalSessionFactory}, {@link #getCurrentSession(String)} returns the same
+ * session for a workspace until {@link #cleanup()} is called at the end of the request. Instead of
+ * being logged out, the sessions are then reset using {@link Session#refresh(boolean)} (discarding
+ * any unsaved changes) and returned to the pool.
+ * <p>
+ * The pool of each workspace can be configured with
+ * <ul>
+ * <li>{@link #setMinIdle(int)} - number of idle sessions to keep logged in even when unused
+ * <li>{@link #setMaxIdle(int)} - number of idle sessions above which returned sessions are logged
+ * out
+ * <li>{@link #setMaxActive(int)} - maximum number of sessions (idle and borrowed), when reached
+ * threads wait up to {@link #setMaxWait(long)} milliseconds for a session to be returned
+ * <li>{@link #setIdleTimeout(long)} - time after which idle sessions above minIdle are logged out
+ * <li>{@link #setEvictionInterval(long)} - how often a background timer logs out expired idle
+ * sessions and logs in new ones up to minIdle, so that requests never wait for it
+ * <li>{@link #setLeakThreshold(long)} - time after which a borrowed session not yet returned is
+ * reported as possibly leaked
+ * <li>{@link #setTrackBorrowStackTrace(boolean)} - whether the leak report includes the stack
+ * trace of the code that borrowed the session (disabled by default because capturing it on every
+ * borrow is expensive)
+ * </ul>
+ * Sessions are validated using {@link Session#isLive()} when borrowed and returned.
+ * 
+ * @see #cleanup()
+ */
+public class PooledSessionFactory implements JcrSessionFactory
+{
+    private static final Logger logger = LoggerFactory.getLogger(PooledSessionFactory.class);
+
+    private final Repository repository;
+    private final Credentials credentials;
+
+    private volatile int minIdle = 0;
+    private volatile int maxIdle = 8;
+    private volatile int maxActive = 0;
+    private volatile long maxWait = 30 * 1000;
+    private volatile long idleTimeout = 10 * 60 * 1000;
+    private volatile long leakThreshold = 5 * 60 * 1000;
+    private volatile boolean trackBorrowStackTrace = false;
+    private volatile long evictionInterval = 60 * 1000;
+
+    // guarded by pools
+    private Timer evictionTimer = null;
+
+    private final ThreadLocal<Map<String, Session>> current = new ThreadLocal<Map<String, Session>>()
+    {
+        @Override
+        protected Map<String, Session> initialValue()
+        {
+            return new HashMap<String, Session>();
+        }
+    };
+
+    private final Map<String, Pool> pools = new HashMap<String, Pool>();
+
+    public PooledSessionFactory(Repository repository, Credentials credentials)
+    {
+        if (repository == null)
+        {
+            throw new IllegalArgumentException("repository cannot be null");
+        }
+        if (credentials == null)
+        {
+            throw new IllegalArgumentException("credentials cannot be null");
+        }
+        this.repository = repository;
+        this.credentials = credentials;
+        scheduleEviction();
+    }
+
+    /**
+     * (Re)starts the timer that calls {@link #evict()}.
+     */
+    private void scheduleEviction()
+    {
+        synchronized (pools)
+        {
+            if (evictionTimer != null)
+            {
+                evictionTimer.cancel();
+                evictionTimer = null;
+            }
+            final long interval = evictionInterval;
+            if (interval > 0)
+            {
+                evictionTimer = new Timer("PooledSessionFactory-evictor", true);
+                evictionTimer.schedule(new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            evict();
+                        }
+                        catch (RuntimeException e)
+                        {
+                            // an exception would cancel the timer
+                            logger.warn("Error evicting pooled sessions", e);
+                        }
+                    }
+                }, interval, interval);
+            }
+        }
+    }
+
+    private static class IdleSession
+    {
+        private final Session session;
+        private final long since = System.currentTimeMillis();
+
+        public IdleSession(Session session)
+        {
+            this.session = session;
+        }
+    }
+
+    private static class BorrowedSession
+    {
+        private final String thread = Thread.currentThread().getName();
+        private final long since = System.currentTimeMillis();
+        private final Exception stackTrace;
+        private boolean reported = false;
+
+        public BorrowedSession(boolean trackStackTrace)
+        {
+            stackTrace = trackStackTrace ? new Exception("Session borrowed here") : null;
+        }
+    }
+
+    /**
+     * Sessions of a single workspace. All fields are guarded by the pool instance.
+     */
+    private static class Pool
+    {
+        private final String workspace;
+
+        // most recently returned sessions first
+        private final LinkedList<IdleSession> idle = new LinkedList<IdleSession>();
+        private final Map<Session, BorrowedSession> borrowed = new IdentityHashMap<Session, BorrowedSession>();
+
+        // number of sessions being logged in
+        private int opening = 0;
+
+        public Pool(String workspace)
+        {
+            this.workspace = workspace;
+        }
+
+        public int getActiveCount()
+        {
+            return idle.size() + borrowed.size() + opening;
+        }
+    }
+
+    private Pool getPool(String workspace)
+    {
+        synchronized (pools)
+        {
+            Pool pool = pools.get(workspace);
+            if (pool == null)
+            {
+                pool = new Pool(workspace);
+                pools.put(workspace, pool);
+            }
+            return pool;
+        }
+    }
+
+    public Session getCurrentSession(String workspace) throws CannotOpenJcrSessionException
+    {
+        final Map<String, Session> map = current.get();
+        Session session = map.get(workspace);
+        if (session != null && !session.isLive())
+        {
+            discard(getPool(workspace), session);
+            session = null;
+        }
+        if (session == null)
+        {
+            session = borrow(getPool(workspace));
+            map.put(workspace, session);
+        }
+        return session;
+    }
+
+    private Session borrow(Pool pool)
+    {
+        final long deadline = System.currentTimeMillis() + maxWait;
+        synchronized (pool)
+        {
+            reportLeaks(pool);
+            while (true)
+            {
+                while (!pool.idle.isEmpty())
+                {
+                    Session session = pool.idle.removeFirst().session;
+                    if (session.isLive())
+                    {
+                        pool.borrowed.put(session, newBorrowedSession());
+                        return session;
+                    }
+                    logger.debug("Discarding dead pooled session for workspace: {}",
+                        pool.workspace);
+                }
+                if (maxActive <= 0 || pool.getActiveCount() < maxActive)
+                {
+                    ++pool.opening;
+                    break;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0)
+                {
+                    throw new CannotOpenJcrSessionException(pool.workspace,
+                        new IllegalStateException("Session pool exhausted, " + maxActive +
+                            " sessions are in use."));
+                }
+                try
+                {
+                    pool.wait(wait);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new CannotOpenJcrSessionException(pool.workspace, e);
+                }
+            }
+        }
+
+        // log in without holding the lock
+        Session session = null;
+        try
+        {
+            session = login(pool.workspace);
+        }
+        finally
+        {
+            synchronized (pool)
+            {
+                --pool.opening;
+                if (session != null)
+                {
+                    pool.borrowed.put(session, newBorrowedSession());
+                }
+                pool.notifyAll();
+            }
+        }
+        return session;
+    }
+
+    private BorrowedSession newBorrowedSession()
+    {
+        return new BorrowedSession(leakThreshold > 0 && trackBorrowStackTrace);
+    }
+
+    private Session login(String workspace)
+    {
+        try
+        {
+            logger.debug("Opening pooled jcr session to workspace: {}", workspace);
+            return repository.login(credentials, workspace);
+        }
+        catch (Exception e)
+        {
+            throw new CannotOpenJcrSessionException(workspace, e);
+        }
+    }
+
+    private void reportLeaks(Pool pool)
+    {
+        final long threshold = leakThreshold;
+        if (threshold <= 0)
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (BorrowedSession borrowed : pool.borrowed.values())
+        {
+            if (!borrowed.reported && now - borrowed.since > threshold)
+            {
+                borrowed.reported = true;
+                logger.warn("Session for workspace " + pool.workspace + " borrowed by thread " +
+                    borrowed.thread + " has not been returned for " + (now - borrowed.since) +
+                    "ms. Make sure cleanup() is called at the end of each request.",
+                    borrowed.stackTrace);
+            }
+        }
+    }
+
+    private void discard(Pool pool, Session session)
+    {
+        synchronized (pool)
+        {
+            pool.borrowed.remove(session);
+            pool.notifyAll();
+        }
+        logout(session);
+    }
+
+    private static void logout(Session session)
+    {
+        try
+        {
+            if (session.isLive())
+            {
+                session.logout();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Error logging out jcr session", e);
+        }
+    }
+
+    /**
+     * Returns the session to the pool.
+     * 
+     * @param pool
+     * @param session
+     */
+    private void giveBack(Pool pool, Session session)
+    {
+        if (!session.isLive())
+        {
+            discard(pool, session);
+            return;
+        }
+        try
+        {
+            session.refresh(false);
+        }
+        catch (RepositoryException e)
+        {
+            logger.warn("Could not reset pooled session, discarding it", e);
+            discard(pool, session);
+            return;
+        }
+
+        Session excess = null;
+        synchronized (pool)
+        {
+            if (pool.borrowed.remove(session) == null)
+            {
+                // not ours (anymore)
+                excess = session;
+            }
+            else if (pool.idle.size() >= maxIdle)
+            {
+                excess = session;
+            }
+            else
+            {
+                pool.idle.addFirst(new IdleSession(session));
+            }
+            pool.notifyAll();
+        }
+        if (excess != null)
+        {
+            logout(excess);
+        }
+    }
+
+    /**
+     * Logs out sessions that have been idle for longer than the idle timeout (keeping at least
+     * minIdle sessions) and logs in new sessions if there are less than minIdle idle sessions.
+     * Called periodically by the eviction timer (see {@link #setEvictionInterval(long)}).
+     */
+    public void evict()
+    {
+        Pool[] all;
+        synchronized (pools)
+        {
+            all = pools.values().toArray(new Pool[pools.size()]);
+        }
+        for (Pool pool : all)
+        {
+            evict(pool);
+        }
+    }
+
+    private void evict(Pool pool)
+    {
+        final long now = System.currentTimeMillis();
+        LinkedList<Session> expired = new LinkedList<Session>();
+        int missing;
+        synchronized (pool)
+        {
+            // oldest sessions are at the end
+            ListIterator<IdleSession> i = pool.idle.listIterator(pool.idle.size());
+            while (i.hasPrevious() && pool.idle.size() > minIdle)
+            {
+                IdleSession idle = i.previous();
+                if (now - idle.since > idleTimeout || !idle.session.isLive())
+                {
+                    expired.add(idle.session);
+                    i.remove();
+                }
+                else
+                {
+                    break;
+                }
+            }
+            missing = minIdle - pool.idle.size() - pool.opening;
+            if (maxActive > 0)
+            {
+                missing = Math.min(missing, maxActive - pool.getActiveCount());
+            }
+            pool.opening += Math.max(missing, 0);
+        }
+        for (Session session : expired)
+        {
+            logout(session);
+        }
+        for (int i = 0; i < missing; ++i)
+        {
+            Session session = null;
+            try
+            {
+                session = login(pool.workspace);
+            }
+            catch (CannotOpenJcrSessionException e)
+            {
+                logger.warn("Could not open idle pooled session", e);
+            }
+            finally
+            {
+                synchronized (pool)
+                {
+                    --pool.opening;
+                    if (session != null)
+                    {
+                        // newest sessions first, so that the expiration scan can stop at the
+                        // first session that hasn't expired
+                        pool.idle.addFirst(new IdleSession(session));
+                    }
+                    pool.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns sessions obtained by current thread through {@link #getCurrentSession(String)} to
+     * the pool. Must be called at the end of each request.
+     */
+    public void cleanup()
+    {
+        final Map<String, Session> map = current.get();
+        for (Map.Entry<String, Session> entry : map.entrySet())
+        {
+            giveBack(getPool(entry.getKey()), entry.getValue());
+        }
+        map.clear();
+    }
+
+    /**
+     * Stops the eviction timer and logs out all idle sessions. Borrowed sessions are logged out
+     * when returned.
+     */
+    public void close()
+    {
+        synchronized (pools)
+        {
+            if (evictionTimer != null)
+            {
+                evictionTimer.cancel();
+                evictionTimer = null;
+            }
+            for (Pool pool : pools.values())
+            {
+                synchronized (pool)
+                {
+                    for (IdleSession idle : pool.idle)
+                    {
+                        logout(idle.session);
+                    }
+                    pool.idle.clear();
+                }
+            }
+        }
+        maxIdle = 0;
+        minIdle = 0;
+    }
+
+    public Session createSession(String workspace) throws CannotOpenJcrSessionException
+    {
+        try
+        {
+            logger.debug("Opening unmanaged jcr session to workspace: {}", workspace);
+            return repository.login(credentials, workspace);
+        }
+        catch (Exception e)
+        {
+            throw new CannotOpenJcrSessionException(workspace, e);
+        }
+    }
+
+    /**
+     * Returns the number of idle sessions for given workspace.
+     * 
+     * @param workspace
+     * @return
+     */
+    public int getIdleCount(String workspace)
+    {
+        Pool pool = getPool(workspace);
+        synchronized (pool)
+        {
+            return pool.idle.size();
+        }
+    }
+
+    /**
+     * Returns the number of sessions for given workspace currently in use.
+     * 
+     * @param workspace
+     * @return
+     */
+    public int getBorrowedCount(String workspace)
+    {
+        Pool pool = getPool(workspace);
+        synchronized (pool)
+        {
+            return pool.borrowed.size();
+        }
+    }
+
+    public int getMinIdle()
+    {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle)
+    {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle()
+    {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle)
+    {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxActive()
+    {
+        return maxActive;
+    }
+
+    /**
+     * Sets the maximum number of sessions per workspace, 0 (the default) means no limit.
+     * 
+     * @param maxActive
+     */
+    public void setMaxActive(int maxActive)
+    {
+        this.maxActive = maxActive;
+    }
+
+    public long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getLeakThreshold()
+    {
+        return leakThreshold;
+    }
+
+    /**
+     * Sets the time in milliseconds after which borrowed session that has not been returned is
+     * reported. 0 disables leak detection.
+     * 
+     * @param leakThreshold
+     */
+    public void setLeakThreshold(long leakThreshold)
+    {
+        this.leakThreshold = leakThreshold;
+    }
+
+    public long getEvictionInterval()
+    {
+        return evictionInterval;
+    }
+
+    /**
+     * Sets how often (in milliseconds) idle sessions are evicted and topped up to minIdle by a
+     * background timer. 0 disables the timer, {@link #evict()} then has to be called by the
+     * application. Defaults to one minute.
+     * 
+     * @param evictionInterval
+     */
+    public void setEvictionInterval(long evictionInterval)
+    {
+        this.evictionInterval = evictionInterval;
+        scheduleEviction();
+    }
+
+    public boolean isTrackBorrowStackTrace()
+    {
+        return trackBorrowStackTrace;
+    }
+
+    /**
+     * Sets whether the stack trace of the code that borrowed a session is captured, so that it
+     * can be logged when the session is reported as leaked. Disabled by default.
+     * 
+     * @param trackBorrowStackTrace
+     */
+    public void setTrackBorrowStackTrace(boolean trackBorrowStackTrace)
+    {
+        this.trackBorrowStackTrace = trackBorrowStackTrace;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.jcr.Credentials;
+import javax.jcr.Repository;
+import javax.jcr.Session;
+
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.RequestCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session factory that binds sessions to the current Wicket {@link RequestCycle} instead of to the
+ * current thread. A request keeps its sessions even if it is processed by several threads (e.g.
+ * with asynchronous servlet processing), and no per-thread state outlives the request, so threads
+ * can be created per request without leaking sessions.
+ * <p>
+ * Sessions of a request are logged out by {@link #release()}, which must be called at the end of
+ * each request, typically from {@link RequestCycle#onEndRequest()}. Work done outside of a request
+ * (application initialization, background jobs) must run inside {@link #call(Callable)}, which
+ * opens a {@link Scope} for the duration of the task.
+ */
+public class RequestScopedSessionFactory implements JcrSessionFactory
+{
+    private static final Logger logger = LoggerFactory.getLogger(RequestScopedSessionFactory.class);
+
+    private final Repository repository;
+    private final Credentials credentials;
+
+    // scopes opened by call(Callable); always removed when the task finishes
+    private final ThreadLocal<Scope> explicitScope = new ThreadLocal<Scope>();
+
+    private static final MetaDataKey<Scope> REQUEST_SCOPE = new MetaDataKey<Scope>()
+    {
+        private static final long serialVersionUID = 1L;
+    };
+
+    public RequestScopedSessionFactory(Repository repository, Credentials credentials)
+    {
+        if (repository == null)
+        {
+            throw new IllegalArgumentException("repository cannot be null");
+        }
+        if (credentials == null)
+        {
+            throw new IllegalArgumentException("credentials cannot be null");
+        }
+        this.repository = repository;
+        this.credentials = credentials;
+    }
+
+    /**
+     * Sessions opened within a single unit of work, one per workspace. Scope can be accessed from
+     * different threads, but not concurrently - the sessions themselves are not thread safe.
+     */
+    public static class Scope
+    {
+        private final RequestScopedSessionFactory factory;
+        private final Map<String, Session> sessions = new HashMap<String, Session>();
+        private boolean closed = false;
+
+        private Scope(RequestScopedSessionFactory factory)
+        {
+            this.factory = factory;
+        }
+
+        public synchronized Session getSession(String workspace)
+        {
+            if (closed)
+            {
+                throw new IllegalStateException("Scope has already been closed.");
+            }
+            Session session = sessions.get(workspace);
+            if (session != null && !session.isLive())
+            {
+                session = null;
+            }
+            if (session == null)
+            {
+                session = factory.login(workspace, "managed");
+                sessions.put(workspace, session);
+            }
+            return session;
+        }
+
+        /**
+         * Logs out all sessions of this scope.
+         */
+        public synchronized void close()
+        {
+            closed = true;
+            for (Session session : sessions.values())
+            {
+                try
+                {
+                    if (session.isLive())
+                    {
+                        session.logout();
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    logger.warn("Error logging out jcr session", e);
+                }
+            }
+            sessions.clear();
+        }
+    }
+
+    private Session login(String workspace, String kind)
+    {
+        try
+        {
+            logger.debug("Opening {} jcr session to workspace: {}", kind, workspace);
+            return repository.login(credentials, workspace);
+        }
+        catch (Exception e)
+        {
+            throw new CannotOpenJcrSessionException(workspace, e);
+        }
+    }
+
+    /**
+     * Returns the scope of current request or of the task executed by {@link #call(Callable)}.
+     * 
+     * @return current scope
+     * @throws IllegalStateException
+     *             if there is neither request nor scope
+     */
+    protected Scope getCurrentScope()
+    {
+        Scope scope = explicitScope.get();
+        if (scope != null)
+        {
+            return scope;
+        }
+        RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle == null)
+        {
+            throw new IllegalStateException("No request in progress. Use " +
+                "RequestScopedSessionFactory#call to access sessions outside of a request.");
+        }
+        scope = requestCycle.getMetaData(REQUEST_SCOPE);
+        if (scope == null)
+        {
+            scope = new Scope(this);
+            requestCycle.setMetaData(REQUEST_SCOPE, scope);
+        }
+        return scope;
+    }
+
+    public Session getCurrentSession(String workspace) throws CannotOpenJcrSessionException
+    {
+        return getCurrentScope().getSession(workspace);
+    }
+
+    public Session createSession(String workspace) throws CannotOpenJcrSessionException
+    {
+        return login(workspace, "unmanaged");
+    }
+
+    /**
+     * Logs out sessions of the current request. Must be called at the end of each request.
+     */
+    public void release()
+    {
+        RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle != null)
+        {
+            Scope scope = requestCycle.getMetaData(REQUEST_SCOPE);
+            if (scope != null)
+            {
+                requestCycle.setMetaData(REQUEST_SCOPE, null);
+                scope.close();
+            }
+        }
+    }
+
+    /**
+     * Executes the task with a new scope. {@link #getCurrentSession(String)} called by the task
+     * returns sessions of this scope, which are logged out when the task completes.
+     * 
+     * @param <T>
+     * @param task
+     * @return result of the task
+     * @throws Exception
+     *             exception thrown by the task
+     */
+    public <T> T call(Callable<T> task) throws Exception
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("Argument 'task' may not be null.");
+        }
+        final Scope previous = explicitScope.get();
+        final Scope scope = new Scope(this);
+        explicitScope.set(scope);
+        try
+        {
+            return task.call();
+        }
+        finally
+        {
+            if (previous != null)
+            {
+                explicitScope.set(previous);
+            }
+            else
+            {
+                explicitScope.remove();
+            }
+            scope.close();
+        }
+    }
+}
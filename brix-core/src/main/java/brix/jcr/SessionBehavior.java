@@ -14,7 +14,11 @@
 
 package brix.jcr;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -62,20 +66,41 @@ public class SessionBehavior implements Behavior
     	{
     		return (JcrNode) node;
     	}
-    	
-        JcrNode n = new NodeWrapper(node, session);
 
-        Collection<JcrNodeWrapperFactory> factories = brix.getConfig().getRegistry().lookupCollection(
-            JcrNodeWrapperFactory.POINT);
+        Dispatch dispatch = getDispatch();
 
-        for (JcrNodeWrapperFactory factory : factories)
+        // a single property read decides most nodes, the canWrap chain is only consulted for
+        // factories that don't declare node types (and only those registered before the
+        // matching factory to keep the registration order semantics)
+        IndexedFactory declared = dispatch.declared.get(getNodeType(node));
+        int limit = declared != null ? declared.index : Integer.MAX_VALUE;
+
+        JcrNode n = null;
+        for (IndexedFactory fallback : dispatch.fallback)
         {
-            if (factory.canWrap(brix, n))
+            if (fallback.index > limit)
+            {
+                break;
+            }
+            if (n == null)
+            {
+                n = new NodeWrapper(node, session);
+            }
+            if (fallback.factory.canWrap(brix, n))
             {
-                return factory.wrap(brix, node, session);
+                return fallback.factory.wrap(brix, node, session);
             }
         }
 
+        if (declared != null)
+        {
+            return declared.factory.wrap(brix, node, session);
+        }
+
+        if (n == null)
+        {
+            n = new NodeWrapper(node, session);
+        }
         if (ResourceNode.FACTORY.canWrap(brix, n))
         {
             return ResourceNode.FACTORY.wrap(brix, node, session);
@@ -83,4 +108,86 @@ public class SessionBehavior implements Behavior
 
         return new BrixNode(node, session);
     }
+
+    private String getNodeType(Node node)
+    {
+        try
+        {
+            if (node.hasProperty(BrixNode.JCR_PROP_NODE_TYPE))
+            {
+                return node.getProperty(BrixNode.JCR_PROP_NODE_TYPE).getString();
+            }
+            return null;
+        }
+        catch (RepositoryException e)
+        {
+            handleException(e);
+            return null;
+        }
+    }
+
+    private volatile Dispatch dispatch;
+
+    /**
+     * Returns the dispatch table for currently registered factories. The registry hands out the
+     * same immutable collection until a factory is (un)registered, so the table is only rebuilt
+     * when the collection instance changes.
+     */
+    private Dispatch getDispatch()
+    {
+        Collection<JcrNodeWrapperFactory> factories = brix.getConfig().getRegistry()
+            .lookupCollection(JcrNodeWrapperFactory.POINT);
+        Dispatch current = dispatch;
+        if (current == null || current.factories != factories)
+        {
+            current = new Dispatch(factories);
+            dispatch = current;
+        }
+        return current;
+    }
+
+    private static class IndexedFactory
+    {
+        private final JcrNodeWrapperFactory factory;
+        private final int index;
+
+        public IndexedFactory(JcrNodeWrapperFactory factory, int index)
+        {
+            this.factory = factory;
+            this.index = index;
+        }
+    }
+
+    private static class Dispatch
+    {
+        private final Collection<JcrNodeWrapperFactory> factories;
+        private final Map<String, IndexedFactory> declared = new HashMap<String, IndexedFactory>();
+        private final List<IndexedFactory> fallback = new ArrayList<IndexedFactory>();
+
+        public Dispatch(Collection<JcrNodeWrapperFactory> factories)
+        {
+            this.factories = factories;
+            int index = 0;
+            for (JcrNodeWrapperFactory factory : factories)
+            {
+                Collection<String> types = factory.getNodeTypes();
+                if (types != null)
+                {
+                    for (String type : types)
+                    {
+                        // first registered factory wins, same as with the canWrap chain
+                        if (!declared.containsKey(type))
+                        {
+                            declared.put(type, new IndexedFactory(factory, index));
+                        }
+                    }
+                }
+                else
+                {
+                    fallback.add(new IndexedFactory(factory, index));
+                }
+                ++index;
+            }
+        }
+    }
 }
@@ -17,6 +17,10 @@ package brix.jcr.wrapper;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 
 import javax.jcr.Node;
@@ -24,6 +28,8 @@ import javax.jcr.Node;
 import org.apache.wicket.util.io.Streams;
 import org.apache.wicket.util.string.Strings;
 
+import brix.Brix;
+import brix.exception.BrixException;
 import brix.jcr.api.JcrNode;
 import brix.jcr.api.JcrSession;
 import brix.plugin.site.SitePlugin;
@@ -159,6 +165,19 @@ public class BrixFileNode extends BrixNode
 		}
 		setEncoding("UTF-8");
 		getContent().setProperty("jcr:data", data);
+		if (isContentHashed())
+		{
+			MessageDigest digest = newContentDigest();
+			try
+			{
+				digest.update(data.getBytes("UTF-8"));
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				throw new BrixException(e);
+			}
+			storeContentHash(digest, Calendar.getInstance());
+		}
 	}
 
 	/**
@@ -179,7 +198,156 @@ public class BrixFileNode extends BrixNode
 	 */
 	public void setData(InputStream data)
 	{
-		getContent().setProperty("jcr:data", data);
+		if (isContentHashed())
+		{
+			MessageDigest digest = newContentDigest();
+			getContent().setProperty("jcr:data", new DigestInputStream(data, digest));
+			storeContentHash(digest, Calendar.getInstance());
+		}
+		else
+		{
+			getContent().setProperty("jcr:data", data);
+		}
+	}
+
+	private static final String JCR_PROP_CONTENT_HASH = Brix.NS_PREFIX + "contentHash";
+
+	/**
+	 * Returns whether the hash of the data is stored when the data is set, so that the data can
+	 * be served with a strong entity tag. Subclasses whose data is not served as a resource (such
+	 * as pages and templates) return <code>false</code>.
+	 * 
+	 * @return
+	 */
+	public boolean isContentHashed()
+	{
+		return true;
+	}
+
+	/**
+	 * Returns a new instance of the digest used to compute the content hash.
+	 * 
+	 * @return
+	 */
+	public static MessageDigest newContentDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new BrixException(e);
+		}
+	}
+
+	/**
+	 * Stores hash of the data together with the content length and modification time, so that a
+	 * hash made stale by changing the data by other means (e.g. WebDAV) can be detected.
+	 * 
+	 * @param digest
+	 *            digest that has been updated with the whole data
+	 * @param lastModified
+	 *            modification time to store, <code>null</code> to keep the current one
+	 */
+	private void storeContentHash(MessageDigest digest, Calendar lastModified)
+	{
+		StringBuilder hash = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			hash.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hash.append(Character.forDigit(b & 0xF, 16));
+		}
+		JcrNode content = getContent();
+		if (lastModified != null || !content.hasProperty("jcr:lastModified"))
+		{
+			content.setProperty("jcr:lastModified", lastModified != null ? lastModified : Calendar
+					.getInstance());
+		}
+		long time = content.getProperty("jcr:lastModified").getDate().getTimeInMillis();
+		if (!isNodeType(JCR_TYPE_BRIX_NODE))
+		{
+			addMixin(JCR_TYPE_BRIX_NODE);
+		}
+		setProperty(JCR_PROP_CONTENT_HASH, getContentLength() + "/" + time + "/" + hash);
+	}
+
+	/**
+	 * Stores the hash of the current data, e.g. computed while the data was being streamed to a
+	 * client or after it was set by other means than {@link #setData(InputStream)}. The
+	 * modification time is not changed. The session is not saved.
+	 * 
+	 * @param digest
+	 *            digest created by {@link #newContentDigest()} that has been updated with the
+	 *            whole current data
+	 */
+	public void setContentHash(MessageDigest digest)
+	{
+		storeContentHash(digest, null);
+	}
+
+	/**
+	 * Reads the current data and stores its hash. The session is not saved.
+	 * 
+	 * @see #setContentHash(MessageDigest)
+	 */
+	public void updateContentHash()
+	{
+		MessageDigest digest = newContentDigest();
+		InputStream stream = new DigestInputStream(getDataAsStream(), digest);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			while (stream.read(buffer) != -1)
+			{
+				// digest is updated while reading
+			}
+		}
+		catch (IOException e)
+		{
+			throw new BrixException(e);
+		}
+		finally
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+		setContentHash(digest);
+	}
+
+	/**
+	 * Returns the SHA-1 hash of the data as hexadecimal string. The hash is computed when the data
+	 * is set through this class or stored by {@link #setContentHash(MessageDigest)}; if the data
+	 * was modified by other means since, the hash is not known and this method returns
+	 * <code>null</code>. Reading the hash does not touch the data.
+	 * 
+	 * @return content hash or <code>null</code>
+	 */
+	public String getContentHash()
+	{
+		if (!hasProperty(JCR_PROP_CONTENT_HASH))
+		{
+			return null;
+		}
+		String parts[] = getProperty(JCR_PROP_CONTENT_HASH).getString().split("/");
+		if (parts.length != 3 || !parts[0].equals(String.valueOf(getContentLength())))
+		{
+			return null;
+		}
+		JcrNode content = getContent();
+		if (!content.hasProperty("jcr:lastModified") ||
+				!parts[1].equals(String.valueOf(content.getProperty("jcr:lastModified").getDate()
+						.getTimeInMillis())))
+		{
+			return null;
+		}
+		return parts[2];
 	}
 
 	/**
@@ -46,7 +46,7 @@ public class BrixNode extends NodeWrapper
 	/**
 	 * Property for storing node type
 	 */
-	private static final String JCR_PROP_NODE_TYPE = Brix.NS_PREFIX + "nodeType";
+	public static final String JCR_PROP_NODE_TYPE = Brix.NS_PREFIX + "nodeType";
 
 	/**
 	 * Property for storing last modified date
@@ -95,6 +95,41 @@ public class BrixNode extends NodeWrapper
 		return Brix.get();
 	}
 
+	/**
+	 * Returns the UUID of this node or its path if the node is not referenceable, the same
+	 * identifier {@link brix.BrixNodeModel} keeps. The value is computed on first call and kept by
+	 * this wrapper, so that cache lookups keyed by nodes don't access the repository.
+	 * 
+	 * @return
+	 */
+	public String getNodeId()
+	{
+		if (nodeId == null)
+		{
+			nodeId = isNodeType("mix:referenceable") ? getUUID() : getPath();
+		}
+		return nodeId;
+	}
+
+	/**
+	 * Returns the name of workspace this node belongs to. The value is kept by this wrapper.
+	 * 
+	 * @see #getNodeId()
+	 * @return
+	 */
+	public String getWorkspaceName()
+	{
+		if (workspaceName == null)
+		{
+			workspaceName = getSession().getWorkspace().getName();
+		}
+		return workspaceName;
+	}
+
+	private String nodeId = null;
+
+	private String workspaceName = null;
+
 	/**
 	 * Returns the type of this node if it has any type assigned.
 	 * 
@@ -119,6 +154,12 @@ public class BrixNode extends NodeWrapper
 		setProperty(JCR_PROP_NODE_TYPE, type);
 	}
 
+	@Override
+	protected boolean isWrappingProperty(String name)
+	{
+		return JCR_PROP_NODE_TYPE.equals(name);
+	}
+
 	/**
 	 * Returns the user id of use that has created this node.
 	 * 
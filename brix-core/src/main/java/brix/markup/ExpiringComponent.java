@@ -0,0 +1,33 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.markup;
+
+import brix.markup.tag.ComponentTag;
+
+/**
+ * Optional interface for components created by {@link ComponentTag}s whose output can become out
+ * of date while the component stays in the hierarchy. {@link MarkupHelper} reuses existing tag
+ * components on each render; expired components are removed instead and the tag is asked for a
+ * new one.
+ */
+public interface ExpiringComponent
+{
+	/**
+	 * Returns whether the component should be replaced by a new one before it is rendered again.
+	 * 
+	 * @return
+	 */
+	public boolean isExpired();
+}
@@ -15,15 +15,27 @@
 package brix.markup;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import brix.markup.tag.Item;
+import brix.markup.tag.simple.SimpleComment;
+import brix.markup.tag.simple.SimpleTag;
+import brix.markup.tag.simple.SimpleText;
+import brix.markup.variable.VariableKeyProvider;
+import brix.markup.variable.VariableTag;
+import brix.plugin.site.page.tile.TileTag;
 
 /**
- * Contains list of generated markup items and expiration token.
- * 
- * TODO: Consider optimizing the list of items by grouping static items together
- * (as text).
+ * Contains list of generated markup items and expiration token. Runs of static
+ * items are merged into pre-rendered {@link StaticMarkup} chunks so that only
+ * the dynamic items (variables, components, tiles) need to be processed during
+ * rendering.
  * 
  * @author Matej Knopp
  */
@@ -35,6 +47,27 @@ class GeneratedMarkup
 	
 	final String doctype;
 
+	/**
+	 * Paths of nodes this markup depends on or <code>null</code> if unknown.
+	 */
+	final Collection<String> dependencies;
+
+	/**
+	 * Rough estimate of the memory (in bytes) retained by this markup. Used by
+	 * {@link MarkupCache} to bound the size of the cache.
+	 */
+	final long weight;
+
+	/**
+	 * Keys of variables used in the markup
+	 */
+	final Collection<String> variableKeys;
+
+	/**
+	 * IDs of tiles referenced from the markup
+	 */
+	final Collection<String> tileIDs;
+
 	/**
 	 * Creates new {@link GeneratedMarkup} instance from given
 	 * {@link MarkupSource}.
@@ -48,14 +81,108 @@ class GeneratedMarkup
 			throw new IllegalArgumentException("Argument 'markupSource' may not be null.");
 		}
 		this.expirationToken = markupSource.getExpirationToken();
-		items = new ArrayList<Item>();
+		List<Item> items = new ArrayList<Item>();
 		Item item = markupSource.nextMarkupItem();
 		while (item != null)
 		{
 			items.add(item);
 			item = markupSource.nextMarkupItem();
 		}
+		Set<String> variableKeys = new HashSet<String>();
+		Set<String> tileIDs = new HashSet<String>();
+		for (Item i : items)
+		{
+			if (i instanceof VariableKeyProvider)
+			{
+				Collection<String> keys = ((VariableKeyProvider) i).getVariableKeys();
+				if (keys != null)
+				{
+					variableKeys.addAll(keys);
+				}
+			}
+			Item tag = i;
+			while (tag instanceof VariableTag)
+			{
+				tag = ((VariableTag) tag).getDelegate();
+			}
+			if (tag instanceof TileTag)
+			{
+				tileIDs.add(((TileTag) tag).getTileName());
+			}
+		}
+		this.variableKeys = Collections.unmodifiableSet(variableKeys);
+		this.tileIDs = Collections.unmodifiableSet(tileIDs);
+		this.items = StaticMarkup.compile(items);
 		this.doctype = markupSource.getDoctype();
+		if (markupSource instanceof MarkupDependencyProvider)
+		{
+			this.dependencies = ((MarkupDependencyProvider) markupSource).getMarkupDependencies();
+		}
+		else
+		{
+			this.dependencies = null;
+		}
+		this.weight = estimateWeight(this.items, doctype);
+	}
+
+	/**
+	 * Per item overhead (object header, references, list slot)
+	 */
+	private static final int ITEM_OVERHEAD = 48;
+
+	/**
+	 * Per string overhead (object header, char array header, fields)
+	 */
+	private static final int STRING_OVERHEAD = 40;
+
+	private static long estimateWeight(String string)
+	{
+		return string != null ? STRING_OVERHEAD + 2 * string.length() : 0;
+	}
+
+	/**
+	 * Estimates the retained size of the given items. Only the static items are
+	 * inspected, dynamic items (variables, titles) would hit the repository
+	 * when asked for their content so they are only counted with the fixed
+	 * overhead.
+	 * 
+	 * @param items
+	 * @param doctype
+	 * @return
+	 */
+	private static long estimateWeight(List<Item> items, String doctype)
+	{
+		long result = estimateWeight(doctype);
+		for (Item item : items)
+		{
+			result += ITEM_OVERHEAD;
+			if (item instanceof StaticMarkup)
+			{
+				result += STRING_OVERHEAD + 2 * ((StaticMarkup) item).length();
+			}
+			else if (item instanceof SimpleText)
+			{
+				result += estimateWeight(((SimpleText) item).getText());
+			}
+			else if (item instanceof SimpleComment)
+			{
+				result += estimateWeight(((SimpleComment) item).getText());
+			}
+			else if (item instanceof SimpleTag)
+			{
+				SimpleTag tag = (SimpleTag) item;
+				result += estimateWeight(tag.getName());
+				Map<String, String> attributes = tag.getAttributeMap();
+				if (attributes != null)
+				{
+					for (Entry<String, String> e : attributes.entrySet())
+					{
+						result += ITEM_OVERHEAD + estimateWeight(e.getKey()) + estimateWeight(e.getValue());
+					}
+				}
+			}
+		}
+		return result;
 	}
 
 }
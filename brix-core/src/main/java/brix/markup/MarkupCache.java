@@ -14,11 +14,30 @@
 
 package brix.markup;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
 
 import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.model.IModel;
 
+import brix.BrixNodeModel;
+import brix.jcr.api.JcrNode;
+import brix.jcr.base.EventUtil;
+import brix.jcr.base.SaveEvent;
+import brix.jcr.base.SaveEventListener;
 import brix.jcr.wrapper.BrixNode;
 import brix.web.generic.IGenericComponent;
 
@@ -28,34 +47,104 @@ import brix.web.generic.IGenericComponent;
  * {@link MarkupSourceProvider} so that the cache can check if the
  * {@link GeneratedMarkup} is still valid and generate new one in case it is
  * not.
+ * <p>
+ * The cache is bounded both by the number of entries and by the estimated
+ * memory size of the cached markup. When either limit is exceeded the least
+ * recently used entries are evicted.
+ * <p>
+ * By default every access checks whether the cached markup is expired (see
+ * {@link Invalidation#CHECK_ON_ACCESS}). With {@link Invalidation#ON_SAVE} the
+ * cache instead listens to node save events and only checks entries that may
+ * have been affected by a save. The cache used by the site plugin checks on
+ * access unless configured otherwise, e.g.
+ * 
+ * <pre>
+ * SitePlugin.get(brix).getMarkupCache().setInvalidation(MarkupCache.Invalidation.ON_SAVE);
+ * </pre>
+ * 
+ * Cache keys are built from the node id and workspace name known to the
+ * {@link BrixNodeModel} of the container (or kept by the {@link BrixNode}
+ * wrapper), so lookups don't access the repository.
  * 
  * @author Matej Knopp
  */
 public class MarkupCache
 {
 	/**
-	 * Returns the string representation of cache key for the given container.
+	 * Default upper bound of the estimated cache size in bytes (32MB)
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 32L * 1024L * 1024L;
+
+	/**
+	 * Default upper bound of the number of cached entries
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 5000;
+
+	/**
+	 * Default period (in milliseconds) during which markup affected by a save
+	 * is still checked for expiration
+	 */
+	public static final long DEFAULT_REVALIDATION_PERIOD = 30000L;
+
+	/**
+	 * Determines how the cache finds out that markup is expired.
+	 */
+	public enum Invalidation
+	{
+		/**
+		 * {@link MarkupSource#isMarkupExpired(Object)} is called on every
+		 * access.
+		 */
+		CHECK_ON_ACCESS,
+
+		/**
+		 * Markup is invalidated when one of the nodes it depends on (see
+		 * {@link MarkupDependencyProvider}) is saved. Cache hits don't touch
+		 * the repository. Markup sources that don't provide dependencies are
+		 * still checked on every access.
+		 * <p>
+		 * Only saves performed through Brix sessions in this JVM are noticed;
+		 * content changed by other cluster nodes or by workspace level
+		 * operations (clone, import) requires calling {@link MarkupCache#clear()}.
+		 */
+		ON_SAVE
+	};
+
+	/**
+	 * Creates a cache with default limits.
+	 */
+	public MarkupCache()
+	{
+		this(DEFAULT_MAX_WEIGHT, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a cache with the given limits.
 	 * 
-	 * @param container
+	 * @param maxWeight
+	 *            maximal estimated size of cached markup in bytes
+	 * @param maxEntries
+	 *            maximal number of cached entries
+	 */
+	public MarkupCache(long maxWeight, int maxEntries)
+	{
+		setMaxWeight(maxWeight);
+		setMaxEntries(maxEntries);
+	}
+
+	/**
+	 * Returns the string representation of cache key for the given node and
+	 * markup source provider class.
+	 * 
+	 * @param providerClass
+	 * @param workspace
+	 * @param nodeId
+	 *            UUID or path of the node
 	 * @return
 	 */
-	private String getKey(IGenericComponent<BrixNode> container)
+	private String getKey(Class<?> providerClass, String workspace, String nodeId)
 	{
-		BrixNode node = container.getModelObject();
-		String nodeId = "";
-		if (node != null)
-		{
-			if (node.isNodeType("mix:referenceable"))
-			{
-				nodeId = node.getUUID();
-			}
-			else
-			{
-				nodeId = node.getPath();
-			}
-		}
-		String workspace = node.getSession().getWorkspace().getName();
-		return container.getClass().getName() + "-" + workspace + "-" + nodeId;
+		return providerClass.getName() + "-" + workspace + "-" + nodeId;
 	}
 
 	/**
@@ -74,24 +163,524 @@ public class MarkupCache
 			throw new IllegalArgumentException("Argument 'container' must implement MarkupSourceProvider");
 		}
 		MarkupSourceProvider provider = (MarkupSourceProvider) container;
-		final String key = getKey(container);
-		GeneratedMarkup markup = map.get(key);
-		if (markup != null)
+		IModel<BrixNode> model = container.getModel();
+		if (model instanceof BrixNodeModel && ((BrixNodeModel) model).getNodeId() != null)
 		{
-			// check if markup is still valid
-			if (provider.getMarkupSource().isMarkupExpired(markup.expirationToken))
+			// the model identifies the node without loading it
+			BrixNodeModel nodeModel = (BrixNodeModel) model;
+			return getMarkup(provider.getClass(), provider, nodeModel.getWorkspaceName(), nodeModel
+					.getNodeId());
+		}
+		BrixNode node = container.getModelObject();
+		return getMarkup(provider.getClass(), provider, node.getWorkspaceName(), node.getNodeId());
+	}
+
+	/**
+	 * Returns the collection of variable keys used in markup generated for the
+	 * given node. The keys are collected when the markup is generated and are
+	 * cached (and invalidated) together with it.
+	 * <p>
+	 * The markup is cached under the given provider class. Pass the class of
+	 * the component that renders the node, so that the markup generated during
+	 * rendering is reused. The provider is only used when there is no such
+	 * markup and must generate the same markup as the component.
+	 * 
+	 * @param providerClass
+	 * @param provider
+	 * @param node
+	 * @return unmodifiable collection of variable keys
+	 */
+	public Collection<String> getVariableKeys(Class<? extends MarkupSourceProvider> providerClass,
+			MarkupSourceProvider provider, BrixNode node)
+	{
+		return getMarkup(providerClass, provider, node.getWorkspaceName(), node.getNodeId()).variableKeys;
+	}
+
+	/**
+	 * Returns the collection of tile IDs referenced from markup generated for
+	 * the given node. The IDs are collected when the markup is generated and
+	 * are cached (and invalidated) together with it.
+	 * 
+	 * @see #getVariableKeys(Class, MarkupSourceProvider, BrixNode)
+	 * @param providerClass
+	 * @param provider
+	 * @param node
+	 * @return unmodifiable collection of tile IDs
+	 */
+	public Collection<String> getTileIDs(Class<? extends MarkupSourceProvider> providerClass,
+			MarkupSourceProvider provider, BrixNode node)
+	{
+		return getMarkup(providerClass, provider, node.getWorkspaceName(), node.getNodeId()).tileIDs;
+	}
+
+	private GeneratedMarkup getMarkup(Class<?> providerClass, MarkupSourceProvider provider,
+			String workspace, String nodeId)
+	{
+		final String key = getKey(providerClass, workspace, nodeId);
+		GeneratedMarkup markup = null;
+		CacheEntry entry = get(key);
+		if (entry != null)
+		{
+			if (isCheckRequired(entry))
+			{
+				// check if markup is still valid
+				if (!provider.getMarkupSource().isMarkupExpired(entry.markup.expirationToken))
+				{
+					markup = entry.markup;
+					if (entry.staleSince != 0 &&
+							System.currentTimeMillis() - entry.staleSince > revalidationPeriod)
+					{
+						// the save that marked the entry has been long finished
+						entry.staleSince = 0;
+					}
+				}
+			}
+			else
 			{
-				markup = null;
+				markup = entry.markup;
 			}
 		}
 		if (markup == null)
 		{
+			missCount.incrementAndGet();
+			final long invalidations = invalidationCount.get();
+			final long start = System.nanoTime();
 			markup = new GeneratedMarkup(provider.getMarkupSource());
-			map.put(key, markup);
+			totalLoadTime.addAndGet(System.nanoTime() - start);
+
+			entry = new CacheEntry(key, markup, getDependencyKeys(workspace, markup));
+			if (invalidation == Invalidation.ON_SAVE)
+			{
+				// the save event is raised before the data is actually
+				// persisted so markup generated shortly after a save might
+				// have been built from the old content
+				long now = System.currentTimeMillis();
+				if (invalidations != invalidationCount.get() ||
+						now - lastInvalidationTime < revalidationPeriod)
+				{
+					entry.staleSince = now;
+				}
+			}
+			put(entry);
+		}
+		else
+		{
+			hitCount.incrementAndGet();
 		}
 		return markup;
 	}
 
-	private Map<String, GeneratedMarkup> map = new ConcurrentHashMap<String, GeneratedMarkup>();
+	private boolean isCheckRequired(CacheEntry entry)
+	{
+		return invalidation == Invalidation.CHECK_ON_ACCESS || entry.dependencies == null ||
+				entry.staleSince != 0;
+	}
+
+	private String getDependencyKey(String workspace, String path)
+	{
+		return workspace + path;
+	}
+
+	private Collection<String> getDependencyKeys(String workspace, GeneratedMarkup markup)
+	{
+		if (markup.dependencies == null)
+		{
+			return null;
+		}
+		List<String> result = new ArrayList<String>(markup.dependencies.size());
+		for (String path : markup.dependencies)
+		{
+			result.add(getDependencyKey(workspace, path));
+		}
+		return result;
+	}
+
+	private CacheEntry get(String key)
+	{
+		synchronized (map)
+		{
+			return map.get(key);
+		}
+	}
+
+	private void put(CacheEntry entry)
+	{
+		synchronized (map)
+		{
+			CacheEntry old = map.put(entry.key, entry);
+			if (old != null)
+			{
+				removed(old);
+			}
+			weight += entry.markup.weight;
+			if (entry.dependencies != null)
+			{
+				for (String dependency : entry.dependencies)
+				{
+					Set<CacheEntry> entries = dependents.get(dependency);
+					if (entries == null)
+					{
+						entries = new HashSet<CacheEntry>();
+						dependents.put(dependency, entries);
+					}
+					entries.add(entry);
+				}
+			}
+			evict(entry.key);
+		}
+	}
+
+	/**
+	 * Updates the weight and dependency index after the entry has been removed
+	 * from {@link #map}. Must be called while holding lock on {@link #map}.
+	 * 
+	 * @param entry
+	 */
+	private void removed(CacheEntry entry)
+	{
+		weight -= entry.markup.weight;
+		if (entry.dependencies != null)
+		{
+			for (String dependency : entry.dependencies)
+			{
+				Set<CacheEntry> entries = dependents.get(dependency);
+				if (entries != null)
+				{
+					entries.remove(entry);
+					if (entries.isEmpty())
+					{
+						dependents.remove(dependency);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks all entries that depend on the node with given path or any of it's
+	 * descendants as stale. Stale entries are checked for expiration on next
+	 * access.
+	 * 
+	 * @param workspace
+	 * @param path
+	 */
+	public void invalidate(String workspace, String path)
+	{
+		final long now = System.currentTimeMillis();
+		final String key = getDependencyKey(workspace, path);
+		final String base = path.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+		synchronized (map)
+		{
+			lastInvalidationTime = now;
+			invalidationCount.incrementAndGet();
+			markStale(dependents.get(key), now);
+			// keys of descendants start with base + '/', '0' is the character
+			// that follows '/'
+			for (Set<CacheEntry> entries : dependents.subMap(base + "/", base + "0").values())
+			{
+				markStale(entries, now);
+			}
+		}
+	}
+
+	private void markStale(Set<CacheEntry> entries, long now)
+	{
+		if (entries != null)
+		{
+			for (CacheEntry entry : entries)
+			{
+				entry.staleSince = now;
+			}
+		}
+	}
+
+	/**
+	 * Removes least recently used entries until the cache fits into the
+	 * limits. The entry with given key (the one just stored) is never evicted.
+	 * Must be called while holding lock on {@link #map}.
+	 * 
+	 * @param keep
+	 *            key of entry that must not be evicted, may be
+	 *            <code>null</code>
+	 */
+	private void evict(String keep)
+	{
+		Iterator<Entry<String, CacheEntry>> i = map.entrySet().iterator();
+		while ((weight > maxWeight || map.size() > maxEntries) && i.hasNext())
+		{
+			Entry<String, CacheEntry> e = i.next();
+			if (!e.getKey().equals(keep))
+			{
+				i.remove();
+				removed(e.getValue());
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache. The statistics counters are kept.
+	 */
+	public void clear()
+	{
+		synchronized (map)
+		{
+			map.clear();
+			dependents.clear();
+			weight = 0;
+		}
+	}
+
+	/**
+	 * Sets the maximal estimated size of cached markup in bytes.
+	 * 
+	 * @param maxWeight
+	 */
+	public void setMaxWeight(long maxWeight)
+	{
+		if (maxWeight <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxWeight' must be positive.");
+		}
+		synchronized (map)
+		{
+			this.maxWeight = maxWeight;
+			evict(null);
+		}
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * Sets the maximal number of cached entries.
+	 * 
+	 * @param maxEntries
+	 */
+	public void setMaxEntries(int maxEntries)
+	{
+		if (maxEntries <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxEntries' must be positive.");
+		}
+		synchronized (map)
+		{
+			this.maxEntries = maxEntries;
+			evict(null);
+		}
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	/**
+	 * Sets how the cache detects expired markup. Switching to
+	 * {@link Invalidation#ON_SAVE} registers a save event listener, switching
+	 * back unregisters it.
+	 * 
+	 * @param invalidation
+	 */
+	public void setInvalidation(Invalidation invalidation)
+	{
+		if (invalidation == null)
+		{
+			throw new IllegalArgumentException("Argument 'invalidation' may not be null.");
+		}
+		synchronized (map)
+		{
+			if (invalidation == Invalidation.ON_SAVE && saveEventListener == null)
+			{
+				saveEventListener = new InvalidatingSaveEventListener();
+				EventUtil.registerSaveEventListener(saveEventListener);
+			}
+			else if (invalidation == Invalidation.CHECK_ON_ACCESS && saveEventListener != null)
+			{
+				EventUtil.unregisterSaveEventListener(saveEventListener);
+				saveEventListener = null;
+			}
+			this.invalidation = invalidation;
+		}
+	}
+
+	/**
+	 * Unregisters the save event listener (if any) and removes all entries.
+	 * The cache must not be used afterwards. Called by
+	 * {@link brix.plugin.site.SitePlugin#setMarkupCache(MarkupCache)} when the
+	 * cache is replaced and by {@link brix.plugin.site.SitePlugin#destroy()}.
+	 */
+	public void destroy()
+	{
+		synchronized (map)
+		{
+			if (saveEventListener != null)
+			{
+				EventUtil.unregisterSaveEventListener(saveEventListener);
+				saveEventListener = null;
+			}
+		}
+		clear();
+	}
+
+	public Invalidation getInvalidation()
+	{
+		return invalidation;
+	}
+
+	/**
+	 * Sets the period (in milliseconds) after a save during which affected
+	 * markup is still checked for expiration. Only used with
+	 * {@link Invalidation#ON_SAVE}.
+	 * 
+	 * @param revalidationPeriod
+	 */
+	public void setRevalidationPeriod(long revalidationPeriod)
+	{
+		if (revalidationPeriod < 0)
+		{
+			throw new IllegalArgumentException("Argument 'revalidationPeriod' may not be negative.");
+		}
+		this.revalidationPeriod = revalidationPeriod;
+	}
+
+	public long getRevalidationPeriod()
+	{
+		return revalidationPeriod;
+	}
+
+	/**
+	 * @return number of entries currently in cache
+	 */
+	public int getSize()
+	{
+		synchronized (map)
+		{
+			return map.size();
+		}
+	}
+
+	/**
+	 * @return estimated size of cached markup in bytes
+	 */
+	public long getWeight()
+	{
+		synchronized (map)
+		{
+			return weight;
+		}
+	}
+
+	/**
+	 * @return number of requests served from cache
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of requests that had to generate the markup (either
+	 *         because it was not in cache or because it was expired)
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of entries evicted because of the size limits
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return total time spent generating markup in nanoseconds
+	 */
+	public long getTotalLoadTime()
+	{
+		return totalLoadTime.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MarkupCache[size=" + getSize() + ", weight=" + getWeight() + ", hits=" + getHitCount() +
+				", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", loadTime=" +
+				(getTotalLoadTime() / 1000000L) + "ms]";
+	}
+
+	private static class CacheEntry
+	{
+		private final String key;
+
+		private final GeneratedMarkup markup;
+
+		private final Collection<String> dependencies;
+
+		/**
+		 * Time when the entry was marked as possibly expired or 0
+		 */
+		private volatile long staleSince = 0;
+
+		public CacheEntry(String key, GeneratedMarkup markup, Collection<String> dependencies)
+		{
+			this.key = key;
+			this.markup = markup;
+			this.dependencies = dependencies;
+		}
+	};
+
+	private class InvalidatingSaveEventListener implements SaveEventListener
+	{
+		public void onEvent(EventIterator events)
+		{
+			while (events.hasNext())
+			{
+				Event event = events.nextEvent();
+				if (event instanceof SaveEvent)
+				{
+					JcrNode node = ((SaveEvent) event).getNode();
+					invalidate(node.getSession().getWorkspace().getName(), node.getPath());
+				}
+			}
+		}
+	};
+
+	// access ordered so that iteration starts with least recently used entry
+	private final Map<String, CacheEntry> map = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+	// dependency key -> entries depending on it, sorted so that keys of a
+	// subtree form a range, guarded by map
+	private final SortedMap<String, Set<CacheEntry>> dependents = new TreeMap<String, Set<CacheEntry>>();
+
+	// guarded by map
+	private long weight = 0;
+
+	private SaveEventListener saveEventListener = null;
+
+	private volatile Invalidation invalidation = Invalidation.CHECK_ON_ACCESS;
+
+	private volatile long revalidationPeriod = DEFAULT_REVALIDATION_PERIOD;
+
+	private volatile long lastInvalidationTime = 0;
+
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private volatile long maxWeight;
+
+	private volatile int maxEntries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final AtomicLong totalLoadTime = new AtomicLong();
 
 }
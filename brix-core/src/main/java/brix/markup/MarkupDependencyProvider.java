@@ -0,0 +1,34 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.markup;
+
+import java.util.Collection;
+
+/**
+ * Optional interface for {@link MarkupSource}s that know which repository nodes the generated
+ * markup depends on. {@link MarkupCache} uses this information to invalidate cached markup when
+ * one of the nodes is saved instead of checking {@link MarkupSource#isMarkupExpired(Object)} on
+ * every access.
+ */
+public interface MarkupDependencyProvider
+{
+	/**
+	 * Returns absolute paths of nodes the markup depends on. This method is called after the
+	 * last markup item has been retrieved.
+	 * 
+	 * @return collection of node paths or <code>null</code> if the dependencies are not known
+	 */
+	public Collection<String> getMarkupDependencies();
+}
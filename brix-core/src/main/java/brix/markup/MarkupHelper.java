@@ -15,8 +15,10 @@
 package brix.markup;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,6 +29,7 @@ import brix.jcr.wrapper.BrixNode;
 import brix.markup.tag.ComponentTag;
 import brix.markup.tag.Tag;
 import brix.plugin.site.SitePlugin;
+import brix.plugin.site.page.tile.TilePrefetcher;
 import brix.web.generic.IGenericComponent;
 
 /**
@@ -69,21 +72,34 @@ public class MarkupHelper implements Serializable
 	}
 	
 	/**
-	 * Returns existing tag components on page.
+	 * Returns existing tag components on page. {@link ExpiringComponent}s that have expired are
+	 * removed so that they are created again.
 	 * @return
 	 */
 	private Set<String> getExistingComponents()
 	{
 		Set<String> result = new HashSet<String>();
+		List<Component> expired = new ArrayList<Component>();
 		Iterator<? extends Component> i = ((MarkupContainer)component).iterator();
 		while (i.hasNext())
 		{
 			Component c = i.next();
 			if (c.getId().startsWith(COMPONENT_PREFIX))
 			{
-				result.add(c.getId());
+				if (c instanceof ExpiringComponent && ((ExpiringComponent)c).isExpired())
+				{
+					expired.add(c);
+				}
+				else
+				{
+					result.add(c.getId());
+				}
 			}
 		}
+		for (Component c : expired)
+		{
+			c.remove();
+		}
 		return result;
 	}
 
@@ -97,9 +113,18 @@ public class MarkupHelper implements Serializable
 		final Set<String> existingComponents = getExistingComponents();
 		final Set<String> components = new HashSet<String>();
 		GeneratedMarkup markup = getMarkupCache().getMarkup(component);
+
+		// start fetching data of slow tiles before their components are created
+		TilePrefetcher.prefetch(markup.items, existingComponents);
 		
 		MarkupRenderer renderer = new MarkupRenderer(markup.items, markup.doctype)
 		{
+			@Override
+			boolean isPostprocessed(Tag tag)
+			{
+				return tag instanceof ComponentTag && tag.getType() != Tag.Type.CLOSE;
+			}
+
 			@Override
 			void postprocessTagAttributes(Tag tag, Map<String, String> attributes)
 			{
@@ -14,18 +14,23 @@
 
 package brix.markup;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import brix.exception.BrixException;
 import brix.markup.tag.Comment;
 import brix.markup.tag.Item;
 import brix.markup.tag.Tag;
 import brix.markup.tag.Text;
 
 /**
- * Renders the given list of items into an XHTML markup.
+ * Renders the given list of items into an XHTML markup. {@link MarkupHelper}
+ * renders to a string because wicket parses the component markup from a
+ * resource stream; {@link #render(Appendable)} is there for callers that can
+ * write the markup straight to an output.
  *  
  * @author Matej Knopp
  */
@@ -48,33 +53,55 @@ public abstract class MarkupRenderer
 	public String render()
 	{
 		StringBuilder builder = new StringBuilder();
-		
+		try
+		{
+			render(builder);
+		}
+		catch (IOException e)
+		{
+			// can't happen with StringBuilder
+			throw new BrixException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Renders the items to the given output.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 *             if writing to the output fails
+	 */
+	public void render(Appendable out) throws IOException
+	{
 		if (doctype != null)
 		{
-			builder.append(doctype);
+			out.append(doctype);
 		}
 
 		for (Item item : items)
 		{
-			render(item, builder);
+			render(item, out);
 		}
-
-		return builder.toString();
 	}
 
-	private void render(Item item, StringBuilder builder)
+	private void render(Item item, Appendable out) throws IOException
 	{
-		if (item instanceof Tag)
+		if (item instanceof StaticMarkup)
+		{
+			((StaticMarkup) item).appendTo(out);
+		}
+		else if (item instanceof Tag)
 		{
-			render((Tag) item, builder);
+			render((Tag) item, out);
 		}
 		else if (item instanceof Text)
 		{
-			render((Text) item, builder);
+			render((Text) item, out);
 		}
 		else if (item instanceof Comment)
 		{
-			render((Comment) item, builder);
+			render((Comment) item, out);
 		}
 		else
 		{
@@ -82,51 +109,113 @@ public abstract class MarkupRenderer
 		}
 	}
 
-	private void render(Tag tag, StringBuilder builder)
+	private void render(Tag tag, Appendable out) throws IOException
+	{
+		final Tag.Type type = tag.getType();
+		Map<String, String> attributeMap = null;
+		if (type == Tag.Type.OPEN || type == Tag.Type.OPEN_CLOSE)
+		{
+			attributeMap = tag.getAttributeMap();
+			if (isPostprocessed(tag))
+			{
+				// only copy the attributes when they are going to be modified
+				attributeMap = attributeMap != null ? new HashMap<String, String>(attributeMap)
+						: new HashMap<String, String>();
+				postprocessTagAttributes(tag, attributeMap);
+			}
+		}
+		render(tag, attributeMap, out);
+	}
+
+	private static void render(Tag tag, Map<String, String> attributeMap, Appendable out)
+			throws IOException
 	{
-		if (tag.getType() == Tag.Type.CLOSE)
+		final Tag.Type type = tag.getType();
+		if (type == Tag.Type.CLOSE)
 		{
-			builder.append("</");
+			out.append("</");
 		}
 		else
 		{
-			builder.append("<");
+			out.append("<");
 		}
-		builder.append(tag.getName());
+		out.append(tag.getName());
 
-		if (tag.getType() == Tag.Type.OPEN || tag.getType() == Tag.Type.OPEN_CLOSE)
+		if (attributeMap != null && type != Tag.Type.CLOSE)
 		{
-			Map<String, String> attributeMap = new HashMap<String, String>(tag.getAttributeMap());
-			postprocessTagAttributes(tag, attributeMap);
 			for (Entry<String, String> e : attributeMap.entrySet())
 			{
-				builder.append(" ");
-				builder.append(e.getKey());
-				builder.append("=\"");
-				builder.append(e.getValue());
-				builder.append("\"");
+				out.append(" ");
+				out.append(e.getKey());
+				out.append("=\"");
+				out.append(e.getValue());
+				out.append("\"");
 			}
 		}
 
-		if (tag.getType() == Tag.Type.OPEN_CLOSE)
+		if (type == Tag.Type.OPEN_CLOSE)
 		{
-			builder.append(" /");
+			out.append(" /");
 		}
 		
-		builder.append(">");
+		out.append(">");
+	}
+
+	/**
+	 * Renders item that doesn't need any processing during rendering (see
+	 * {@link StaticMarkup#isStatic(Item)}).
+	 * 
+	 * @param item
+	 * @param out
+	 * @throws IOException
+	 */
+	static void renderStatic(Item item, Appendable out) throws IOException
+	{
+		if (item instanceof Tag)
+		{
+			Tag tag = (Tag) item;
+			render(tag, tag.getType() != Tag.Type.CLOSE ? tag.getAttributeMap() : null, out);
+		}
+		else if (item instanceof Text)
+		{
+			render((Text) item, out);
+		}
+		else if (item instanceof Comment)
+		{
+			render((Comment) item, out);
+		}
+		else
+		{
+			throw new IllegalStateException("Unknown item type '" + item.getClass().getName() + "'");
+		}
+	}
+
+	/**
+	 * Returns whether the attributes of given tag need to be passed to
+	 * {@link #postprocessTagAttributes(Tag, Map)}. Tags for which this method
+	 * returns <code>false</code> are rendered with their attributes as they are.
+	 * Static tags merged into {@link StaticMarkup} chunks are never
+	 * postprocessed.
+	 * 
+	 * @param tag
+	 * @return
+	 */
+	boolean isPostprocessed(Tag tag)
+	{
+		return true;
 	}
-	
+
 	abstract void postprocessTagAttributes(Tag tag, Map<String, String> attributes);
 
-	private void render(Text text, StringBuilder builder)
+	private static void render(Text text, Appendable out) throws IOException
 	{
-		builder.append(text.getText());
+		out.append(text.getText());
 	}
 
-	private void render(Comment comment, StringBuilder builder)
+	private static void render(Comment comment, Appendable out) throws IOException
 	{
-		builder.append("<!-- ");
-		builder.append(comment.getText());
-		builder.append(" -->");
+		out.append("<!-- ");
+		out.append(comment.getText());
+		out.append(" -->");
 	}
 }
@@ -14,6 +14,8 @@
 
 package brix.markup;
 
+import java.util.Collection;
+
 import brix.markup.tag.Item;
 
 /**
@@ -22,7 +24,7 @@ import brix.markup.tag.Item;
  * 
  * @author Matej Knopp
  */
-public class MarkupSourceWrapper implements MarkupSource
+public class MarkupSourceWrapper implements MarkupSource, MarkupDependencyProvider
 {
 	private final MarkupSource delegate;
 
@@ -55,4 +57,16 @@ public class MarkupSourceWrapper implements MarkupSource
 	{
 		return delegate.getDoctype();
 	}
+
+	public Collection<String> getMarkupDependencies()
+	{
+		if (delegate instanceof MarkupDependencyProvider)
+		{
+			return ((MarkupDependencyProvider) delegate).getMarkupDependencies();
+		}
+		else
+		{
+			return null;
+		}
+	}
 }
@@ -0,0 +1,112 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.markup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import brix.exception.BrixException;
+import brix.markup.tag.Item;
+import brix.markup.tag.simple.SimpleComment;
+import brix.markup.tag.simple.SimpleTag;
+import brix.markup.tag.simple.SimpleText;
+
+/**
+ * Pre-rendered run of static markup items. {@link GeneratedMarkup} merges
+ * consecutive items that render the same way every time into one
+ * {@link StaticMarkup} so that {@link MarkupRenderer} only needs to copy the
+ * chunk instead of dispatching on each of the items.
+ */
+final class StaticMarkup implements Item
+{
+	private final String markup;
+
+	StaticMarkup(String markup)
+	{
+		this.markup = markup;
+	}
+
+	void appendTo(Appendable out) throws IOException
+	{
+		out.append(markup);
+	}
+
+	int length()
+	{
+		return markup.length();
+	}
+
+	/**
+	 * Returns whether the item always renders the same way. Only the simple
+	 * implementations are static; subclasses (e.g. tile tags) and other
+	 * implementations can carry components or variables.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	static boolean isStatic(Item item)
+	{
+		Class< ? > c = item.getClass();
+		return c == SimpleText.class || c == SimpleComment.class || c == SimpleTag.class;
+	}
+
+	/**
+	 * Merges all runs of static items in the given list into {@link StaticMarkup}
+	 * chunks. Dynamic items are kept as they are.
+	 * 
+	 * @param items
+	 * @return
+	 */
+	static List<Item> compile(List<Item> items)
+	{
+		ArrayList<Item> result = new ArrayList<Item>();
+		StringBuilder chunk = null;
+		try
+		{
+			for (Item item : items)
+			{
+				if (isStatic(item))
+				{
+					if (chunk == null)
+					{
+						chunk = new StringBuilder();
+					}
+					MarkupRenderer.renderStatic(item, chunk);
+				}
+				else
+				{
+					if (chunk != null)
+					{
+						result.add(new StaticMarkup(chunk.toString()));
+						chunk = null;
+					}
+					result.add(item);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// can't happen with StringBuilder
+			throw new BrixException(e);
+		}
+		if (chunk != null)
+		{
+			result.add(new StaticMarkup(chunk.toString()));
+		}
+		result.trimToSize();
+		return result;
+	}
+}
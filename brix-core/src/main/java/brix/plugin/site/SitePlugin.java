@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.jcr.Item;
 import javax.jcr.Node;
@@ -50,6 +51,7 @@ import brix.jcr.base.action.AbstractActionHandler;
 import brix.jcr.base.event.AddNodeEvent;
 import brix.jcr.base.event.Event;
 import brix.jcr.base.event.EventsListener;
+import brix.jcr.base.event.SetPropertyEvent;
 import brix.jcr.wrapper.BrixNode;
 import brix.jcr.wrapper.ResourceNode;
 import brix.markup.MarkupCache;
@@ -72,6 +74,7 @@ import brix.plugin.site.folder.FolderNodePlugin;
 import brix.plugin.site.page.AbstractContainer;
 import brix.plugin.site.page.PageNode;
 import brix.plugin.site.page.PageSiteNodePlugin;
+import brix.plugin.site.page.ParsedMarkupStore;
 import brix.plugin.site.page.TemplateNode;
 import brix.plugin.site.page.TemplateSiteNodePlugin;
 import brix.plugin.site.page.admin.MarkupEditorFactory;
@@ -79,7 +82,9 @@ import brix.plugin.site.page.admin.SimpleMarkupEditorFactory;
 import brix.plugin.site.page.global.GlobalContainerNode;
 import brix.plugin.site.page.global.GlobalTilesPanel;
 import brix.plugin.site.page.global.GlobalVariablesPanel;
+import brix.plugin.site.page.tile.PrefetchingTile;
 import brix.plugin.site.page.tile.TileContainerFacet;
+import brix.plugin.site.page.tile.TileFragmentCache;
 import brix.plugin.site.resource.ResourceNodePlugin;
 import brix.plugin.site.webdav.Rule;
 import brix.plugin.site.webdav.RulesNode;
@@ -582,18 +587,193 @@ public class SitePlugin implements SessionAwarePlugin
         }
     }
 
+    /**
+     * Stores the content hash of every resource in the site that doesn't have a valid one, e.g.
+     * because it was stored before hashes were kept or imported from XML. Such resources are
+     * served with weak entity tags until this maintenance task is run. The session is saved if any
+     * resource was updated.
+     * 
+     * @param workspaceSession
+     * @return number of updated resources
+     */
+    public int updateContentHashes(JcrSession workspaceSession)
+    {
+        int count = 0;
+        if (workspaceSession.itemExists(getSiteRootPath()))
+        {
+            count = updateContentHashes((JcrNode)workspaceSession.getItem(getSiteRootPath()));
+        }
+        if (count > 0)
+        {
+            workspaceSession.save();
+        }
+        return count;
+    }
+
+    private int updateContentHashes(JcrNode node)
+    {
+        int count = 0;
+        if (node instanceof ResourceNode && ((ResourceNode)node).getContentHash() == null)
+        {
+            ((ResourceNode)node).updateContentHash();
+            ++count;
+        }
+        JcrNodeIterator nodes = node.getNodes();
+        while (nodes.hasNext())
+        {
+            count += updateContentHashes(nodes.nextNode());
+        }
+        return count;
+    }
+
     public String pathForNode(JcrNode node)
     {
         return SitePlugin.get().fromRealWebNodePath(node.getPath());
     }
 
+    /**
+     * Returns the cache of markup generated for pages, templates and other containers. By default
+     * the cache checks whether markup is expired on every access; to skip the check until a node
+     * the markup depends on is saved, call
+     * <code>getMarkupCache().setInvalidation(MarkupCache.Invalidation.ON_SAVE)</code>.
+     * 
+     * @return
+     */
     public MarkupCache getMarkupCache()
     {
         return markupCache;
     }
 
+    /**
+     * Sets the markup cache. The previously set cache is destroyed.
+     * 
+     * @param markupCache
+     */
+    public void setMarkupCache(MarkupCache markupCache)
+    {
+        if (markupCache == null)
+        {
+            throw new IllegalArgumentException("Argument 'markupCache' may not be null.");
+        }
+        if (this.markupCache != markupCache)
+        {
+            this.markupCache.destroy();
+        }
+        this.markupCache = markupCache;
+    }
+
     private MarkupCache markupCache = new MarkupCache();
 
+    public TileFragmentCache getTileFragmentCache()
+    {
+        return tileFragmentCache;
+    }
+
+    /**
+     * Sets the cache of rendered tile output. The previously set cache is destroyed.
+     * 
+     * @param tileFragmentCache
+     */
+    public void setTileFragmentCache(TileFragmentCache tileFragmentCache)
+    {
+        if (tileFragmentCache == null)
+        {
+            throw new IllegalArgumentException("Argument 'tileFragmentCache' may not be null.");
+        }
+        if (this.tileFragmentCache != tileFragmentCache)
+        {
+            this.tileFragmentCache.destroy();
+        }
+        this.tileFragmentCache = tileFragmentCache;
+    }
+
+    private TileFragmentCache tileFragmentCache = new TileFragmentCache();
+
+    /**
+     * Releases the caches of this plugin, which otherwise stay registered for save events. Should
+     * be called when the application is destroyed.
+     */
+    public void destroy()
+    {
+        markupCache.destroy();
+        tileFragmentCache.destroy();
+    }
+
+    private ExecutorService markupParserExecutor = null;
+
+    /**
+     * Returns the executor used to parse the markup of templates concurrently or
+     * <code>null</code> if the markup is parsed on the requesting thread.
+     * 
+     * @return
+     */
+    public ExecutorService getMarkupParserExecutor()
+    {
+        return markupParserExecutor;
+    }
+
+    /**
+     * Sets the executor used to parse the markup of a page and it's templates concurrently. The
+     * executor should be bounded (e.g. {@link java.util.concurrent.Executors#newFixedThreadPool(int)}).
+     * Passing <code>null</code> disables concurrent parsing.
+     * 
+     * @param markupParserExecutor
+     */
+    public void setMarkupParserExecutor(ExecutorService markupParserExecutor)
+    {
+        this.markupParserExecutor = markupParserExecutor;
+    }
+
+    private ExecutorService tilePrefetchExecutor = null;
+
+    /**
+     * Returns the executor used to fetch data of {@link PrefetchingTile}s concurrently or
+     * <code>null</code> if the data is fetched by the tiles when they are rendered.
+     * 
+     * @return
+     */
+    public ExecutorService getTilePrefetchExecutor()
+    {
+        return tilePrefetchExecutor;
+    }
+
+    /**
+     * Sets the executor used to fetch data of {@link PrefetchingTile}s of a page concurrently
+     * before the page is rendered. The executor should be bounded (e.g.
+     * {@link java.util.concurrent.Executors#newFixedThreadPool(int)}). Passing <code>null</code>
+     * disables prefetching.
+     * 
+     * @param tilePrefetchExecutor
+     */
+    public void setTilePrefetchExecutor(ExecutorService tilePrefetchExecutor)
+    {
+        this.tilePrefetchExecutor = tilePrefetchExecutor;
+    }
+
+    private ParsedMarkupStore parsedMarkupStore = null;
+
+    /**
+     * Returns the store of tokenized page and template markup or <code>null</code> if the markup
+     * is always parsed.
+     * 
+     * @return
+     */
+    public ParsedMarkupStore getParsedMarkupStore()
+    {
+        return parsedMarkupStore;
+    }
+
+    /**
+     * Sets the store used to keep tokenized page and template markup across restarts. Passing
+     * <code>null</code> disables the store.
+     * 
+     * @param parsedMarkupStore
+     */
+    public void setParsedMarkupStore(ParsedMarkupStore parsedMarkupStore)
+    {
+        this.parsedMarkupStore = parsedMarkupStore;
+    }
+
     private NodeTreeContainer findContainer(Component component)
     {
         if (component instanceof NodeTreeContainer)
@@ -799,6 +979,7 @@ public class SitePlugin implements SessionAwarePlugin
         public void handleEventsBeforeSave(Session session, Item item, List<Event> events)
                 throws RepositoryException
         {
+            Set<String> changedData = new HashSet<String>();
             for (Event e : events)
             {
                 if (e instanceof AddNodeEvent)
@@ -811,6 +992,25 @@ public class SitePlugin implements SessionAwarePlugin
                         handleNewNode(node.getPath(), node, brix.wrapSession(session), false);
                     }
                 }
+                else if (e instanceof SetPropertyEvent &&
+                    "jcr:data".equals(((SetPropertyEvent)e).getPropertyName()))
+                {
+                    changedData.add(((SetPropertyEvent)e).getNode().getParent().getPath());
+                }
+            }
+
+            // store the hash of uploaded resources so that they are served with strong entity
+            // tags, the change is saved together with the data
+            for (String path : changedData)
+            {
+                if (session.itemExists(path))
+                {
+                    BrixNode node = wrapNode((Node)session.getItem(path));
+                    if (node instanceof ResourceNode)
+                    {
+                        ((ResourceNode)node).updateContentHash();
+                    }
+                }
             }
         }
 
@@ -17,31 +17,40 @@ package brix.plugin.site.page;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jcr.Node;
 
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.RequestCycle;
+
 import brix.Brix;
 import brix.exception.NodeNotFoundException;
 import brix.jcr.api.JcrNode;
+import brix.jcr.api.JcrProperty;
 import brix.jcr.api.JcrPropertyIterator;
 import brix.jcr.api.JcrSession;
 import brix.jcr.wrapper.BrixFileNode;
 import brix.jcr.wrapper.BrixNode;
-import brix.markup.tag.Item;
+import brix.markup.MarkupCache;
+import brix.markup.MarkupSource;
+import brix.markup.MarkupSourceProvider;
 import brix.markup.variable.VariableKeyProvider;
-import brix.markup.variable.VariableTransformer;
 import brix.markup.variable.VariableValueProvider;
 import brix.plugin.site.SitePlugin;
-import brix.plugin.site.page.tile.TileTag;
+import brix.plugin.site.page.tile.StatelessTile;
 import brix.plugin.site.page.tile.TileContainerFacet;
+import brix.web.nodepage.PageOutputCacheable;
 
 public abstract class AbstractContainer extends BrixFileNode
         implements
             VariableValueProvider,
-            VariableKeyProvider
+            VariableKeyProvider,
+            PageOutputCacheable
 {
 
     private final TileContainerFacet tileManager;
@@ -61,6 +70,7 @@ public abstract class AbstractContainer extends BrixFileNode
         public static final String TITLE = Brix.NS_PREFIX + "title";
         public static final String TEMPLATE = Brix.NS_PREFIX + "template";
         public static final String REQUIRES_SSL = Brix.NS_PREFIX + "requiresSSL";
+        public static final String OUTPUT_CACHED = Brix.NS_PREFIX + "outputCached";
     }
 
 
@@ -99,6 +109,7 @@ public abstract class AbstractContainer extends BrixFileNode
     public void setTemplate(BrixNode node)
     {
         setProperty(Properties.TEMPLATE, node);
+        clearResolvedVariables();
     }
 
     public void setTemplatePath(String path)
@@ -138,6 +149,66 @@ public abstract class AbstractContainer extends BrixFileNode
         }
     }
 
+    public void setOutputCached(boolean value)
+    {
+        if (value == false)
+        {
+            setProperty(Properties.OUTPUT_CACHED, (String)null);
+        }
+        else
+        {
+            setProperty(Properties.OUTPUT_CACHED, true);
+        }
+    }
+
+    /**
+     * Returns whether the output of this container has been explicitly marked as cacheable.
+     * 
+     * @return
+     */
+    public boolean isOutputCached()
+    {
+        if (hasProperty(Properties.OUTPUT_CACHED))
+        {
+            return getProperty(Properties.OUTPUT_CACHED).getBoolean();
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Page output is cacheable if the container has been marked as cacheable or if all tiles of
+     * the container, its templates and the global container are {@link StatelessTile}s.
+     */
+    public boolean isPageOutputCacheable()
+    {
+        if (isOutputCached())
+        {
+            return true;
+        }
+        for (AbstractContainer container = this; container != null; container = container
+            .getTemplate())
+        {
+            if (!container.tiles().isStateless())
+            {
+                return false;
+            }
+        }
+        AbstractContainer global = SitePlugin.get().getGlobalContainer(getSession());
+        return global == null || global.tiles().isStateless();
+    }
+
+    /**
+     * Container markup is not served as a resource, so no content hash is stored when it changes.
+     */
+    @Override
+    public boolean isContentHashed()
+    {
+        return false;
+    }
+
     private static final String VARIABLES_NODE_NAME = Brix.NS_PREFIX + "variables";
 
     public boolean requiresSSL()
@@ -177,6 +248,10 @@ public abstract class AbstractContainer extends BrixFileNode
 
     public String getVariableValue(String key, boolean followTemplate)
     {
+        if (followTemplate && RequestCycle.get() != null)
+        {
+            return getResolvedVariables().get(key);
+        }
         if (hasNode(VARIABLES_NODE_NAME))
         {
             JcrNode node = getNode(VARIABLES_NODE_NAME);
@@ -216,33 +291,128 @@ public abstract class AbstractContainer extends BrixFileNode
         {
             node = addNode(VARIABLES_NODE_NAME, "nt:unstructured");
         }
-        node.setProperty(key, value);        
+        node.setProperty(key, value);
+        clearResolvedVariables();
     }
 
     /**
-     * Returns collection of possible variable keys for this node.
+     * Request cycle metadata holding the resolved variables of containers accessed during the
+     * request, keyed by workspace and path.
      */
-    public Collection<String> getVariableKeys()
+    private static final MetaDataKey<Map<String, Map<String, String>>> RESOLVED_VARIABLES = new MetaDataKey<Map<String, Map<String, String>>>()
+    {
+        private static final long serialVersionUID = 1L;
+    };
+
+    /**
+     * Returns the variables visible from this container, i.e. the variables saved on this
+     * container, its templates and the global container. The map is built once per container
+     * and request, so that pages with many variables don't walk the template chain for every
+     * variable.
+     * 
+     * @return
+     */
+    private Map<String, String> getResolvedVariables()
     {
-        Set<String> keys = new HashSet<String>();
-        PageMarkupSource source = new PageMarkupSource(this);
-        VariableTransformer transfomer = new VariableTransformer(source, this);
-        Item i = transfomer.nextMarkupItem();
-        while (i != null)
+        RequestCycle requestCycle = RequestCycle.get();
+        Map<String, Map<String, String>> resolved = requestCycle.getMetaData(RESOLVED_VARIABLES);
+        if (resolved == null)
         {
-            if (i instanceof VariableKeyProvider)
+            resolved = new HashMap<String, Map<String, String>>();
+            requestCycle.setMetaData(RESOLVED_VARIABLES, resolved);
+        }
+        String key = getSession().getWorkspace().getName() + getPath();
+        Map<String, String> result = resolved.get(key);
+        if (result == null)
+        {
+            TemplateNode template = getTemplate();
+            if (template != null)
             {
-                Collection<String> k = ((VariableKeyProvider)i).getVariableKeys();
-                if (k != null)
+                result = new HashMap<String, String>(template.getResolvedVariables());
+            }
+            else
+            {
+                result = new HashMap<String, String>();
+                AbstractContainer global = SitePlugin.get().getGlobalContainer(getSession());
+                if (global != null)
+                {
+                    global.getSavedVariables(result);
+                }
+            }
+            getSavedVariables(result);
+            resolved.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the variables resolved during current request. Called when a variable value is
+     * changed.
+     */
+    private static void clearResolvedVariables()
+    {
+        RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle != null)
+        {
+            requestCycle.setMetaData(RESOLVED_VARIABLES, null);
+        }
+    }
+
+    /**
+     * Puts variables saved on this container to the given map.
+     * 
+     * @param result
+     */
+    private void getSavedVariables(Map<String, String> result)
+    {
+        if (hasNode(VARIABLES_NODE_NAME))
+        {
+            JcrNode node = getNode(VARIABLES_NODE_NAME);
+            JcrPropertyIterator i = node.getProperties();
+            while (i.hasNext())
+            {
+                JcrProperty property = i.nextProperty();
+                String name = property.getName();
+                // filter out jcr: properties (or other possible brix properties)
+                if (!name.contains(":") && !property.getDefinition().isMultiple())
                 {
-                    keys.addAll(k);
+                    result.put(name, property.getString());
                 }
             }
-            i = transfomer.nextMarkupItem();
         }
-        
+    }
+
+    /**
+     * Markup source provider used to collect variable keys and tile IDs of a container. It
+     * generates the same markup as {@link PageRenderingPage} and the keys are looked up in the
+     * {@link MarkupCache} under that class, so the markup generated when the container is
+     * rendered is reused.
+     */
+    private static class KeysMarkupSourceProvider implements MarkupSourceProvider
+    {
+        private final AbstractContainer container;
+
+        public KeysMarkupSourceProvider(AbstractContainer container)
+        {
+            this.container = container;
+        }
+
+        public MarkupSource getMarkupSource()
+        {
+            return PageRenderingPage.transform(new PageMarkupSource(container), container);
+        }
+    }
+
+    /**
+     * Returns collection of possible variable keys for this node.
+     */
+    public Collection<String> getVariableKeys()
+    {
+        Set<String> keys = new HashSet<String>(SitePlugin.get().getMarkupCache().getVariableKeys(
+            PageRenderingPage.class, new KeysMarkupSourceProvider(this), this));
+
         keys.addAll(SitePlugin.get().getGlobalVariableKeys(getSession()));
-        
+
         return keys;
     }
 
@@ -293,20 +463,11 @@ public abstract class AbstractContainer extends BrixFileNode
     
     public Collection<String> getTileIDs()
     {
-    	 Set<String> keys = new HashSet<String>();
-         PageMarkupSource source = new PageMarkupSource(this);         
-         Item i = source.nextMarkupItem();
-         while (i != null)
-         {
-        	 if (i instanceof TileTag)
-        	 {
-        		 keys.add(((TileTag)i).getTileName());
-        	 }
-        	 i = source.nextMarkupItem();
-         }
-         
-         keys.addAll(SitePlugin.get().getGlobalTileIDs(getSession()));
-        
-         return keys;
+        Set<String> keys = new HashSet<String>(SitePlugin.get().getMarkupCache().getTileIDs(
+            PageRenderingPage.class, new KeysMarkupSourceProvider(this), this));
+
+        keys.addAll(SitePlugin.get().getGlobalTileIDs(getSession()));
+
+        return keys;
     }
 }
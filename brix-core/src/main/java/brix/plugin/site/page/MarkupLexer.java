@@ -0,0 +1,507 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import brix.markup.tag.Tag;
+
+/**
+ * Lexer for the markup of Brix pages and templates. Unlike a generic HTML parser it only
+ * recognizes what {@link PageMarkupSource} needs: text, comments, the doctype declaration and
+ * tags with their attributes.
+ * <p>
+ * The lexer reads the content string in place. Calling {@link #next()} only records offsets of
+ * the current token; substrings are created only when the token content is requested through
+ * {@link #getText()}, {@link #getTagName()} or {@link #getAttributes()}.
+ * <p>
+ * Content of &lt;script&gt; and &lt;style&gt; elements is returned as a single text token.
+ * Anything that doesn't form a complete comment, declaration or tag (e.g. a lone
+ * <code>&lt;</code> or a processing instruction) is returned as text.
+ */
+public class MarkupLexer
+{
+    /**
+     * Type of token returned by {@link MarkupLexer#next()}
+     */
+    public enum Token
+    {
+        TEXT, COMMENT, DOCTYPE, TAG
+    };
+
+    private final String content;
+    private final int length;
+    private int position = 0;
+
+    private Token token;
+
+    // range of the whole token
+    private int start;
+    private int end;
+
+    // range of comment text or tag name
+    private int contentStart;
+    private int contentEnd;
+
+    private Tag.Type tagType;
+
+    // four entries per attribute: name start, name end, value start, value end
+    // value start is -1 for attributes without value
+    private int[] attributes = new int[32];
+    private int attributeCount = 0;
+
+    // name of element with raw text content (script, style) we are in
+    private String rawTextElement = null;
+
+    public MarkupLexer(String content)
+    {
+        this.content = content;
+        this.length = content.length();
+    }
+
+    /**
+     * Moves to the next token.
+     * 
+     * @return type of the token or <code>null</code> if the end of content has been reached
+     */
+    public Token next()
+    {
+        if (position >= length)
+        {
+            token = null;
+            return null;
+        }
+        start = position;
+
+        if (rawTextElement != null)
+        {
+            int close = indexOfCloseTag(position, rawTextElement);
+            rawTextElement = null;
+            if (close > position)
+            {
+                return text(close);
+            }
+        }
+
+        if (content.charAt(position) == '<' && scanMarkup(position))
+        {
+            position = end;
+            return token;
+        }
+
+        int i = position + 1;
+        while (i < length && !(content.charAt(i) == '<' && isMarkupStart(i)))
+        {
+            ++i;
+        }
+        return text(i);
+    }
+
+    private Token text(int textEnd)
+    {
+        token = Token.TEXT;
+        contentStart = start;
+        contentEnd = textEnd;
+        end = textEnd;
+        position = textEnd;
+        return token;
+    }
+
+    private static boolean isNameStart(char c)
+    {
+        return Character.isLetter(c) || c == '_' || c == ':';
+    }
+
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private boolean startsWith(int offset, String s)
+    {
+        if (offset + s.length() > length)
+        {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i)
+        {
+            if (Character.toLowerCase(content.charAt(offset + i)) != s.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(int offset, String s)
+    {
+        for (int i = offset; i + s.length() <= length; ++i)
+        {
+            if (startsWith(i, s))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(int offset, char c)
+    {
+        for (int i = offset; i < length; ++i)
+        {
+            if (content.charAt(i) == c)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfCloseTag(int offset, String name)
+    {
+        for (int i = indexOf(offset, "</"); i != -1; i = indexOf(i + 2, "</"))
+        {
+            int nameEnd = i + 2 + name.length();
+            if (startsWith(i + 2, name) &&
+                (nameEnd == length || isWhitespace(content.charAt(nameEnd)) ||
+                    content.charAt(nameEnd) == '>'))
+            {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns whether the character at given offset (which must be '&lt;') may start a comment,
+     * doctype or tag.
+     */
+    private boolean isMarkupStart(int offset)
+    {
+        if (offset + 1 >= length)
+        {
+            return false;
+        }
+        char c = content.charAt(offset + 1);
+        if (c == '!')
+        {
+            return startsWith(offset, "<!--") || startsWith(offset, "<!doctype");
+        }
+        else if (c == '/')
+        {
+            return offset + 2 < length && isNameStart(content.charAt(offset + 2));
+        }
+        else
+        {
+            return isNameStart(c);
+        }
+    }
+
+    private boolean scanMarkup(int offset)
+    {
+        if (!isMarkupStart(offset))
+        {
+            return false;
+        }
+        else if (startsWith(offset, "<!--"))
+        {
+            int close = indexOf(offset + 4, "-->");
+            token = Token.COMMENT;
+            contentStart = offset + 4;
+            contentEnd = close != -1 ? close : length;
+            end = close != -1 ? close + 3 : length;
+            return true;
+        }
+        else if (content.charAt(offset + 1) == '!')
+        {
+            int close = indexOf(offset, '>');
+            if (close == -1)
+            {
+                return false;
+            }
+            token = Token.DOCTYPE;
+            contentStart = offset;
+            contentEnd = close + 1;
+            end = close + 1;
+            return true;
+        }
+        else
+        {
+            return scanTag(offset);
+        }
+    }
+
+    private int skipWhitespace(int i)
+    {
+        while (i < length && isWhitespace(content.charAt(i)))
+        {
+            ++i;
+        }
+        return i;
+    }
+
+    private boolean isTagEnd(int i)
+    {
+        char c = content.charAt(i);
+        return c == '>' || (c == '/' && i + 1 < length && content.charAt(i + 1) == '>');
+    }
+
+    private boolean scanTag(int offset)
+    {
+        final boolean close = content.charAt(offset + 1) == '/';
+        int i = close ? offset + 2 : offset + 1;
+
+        contentStart = i;
+        while (i < length && !isWhitespace(content.charAt(i)) && !isTagEnd(i))
+        {
+            ++i;
+        }
+        contentEnd = i;
+        attributeCount = 0;
+
+        if (close)
+        {
+            int gt = indexOf(i, '>');
+            if (gt == -1)
+            {
+                return false;
+            }
+            token = Token.TAG;
+            tagType = Tag.Type.CLOSE;
+            end = gt + 1;
+            return true;
+        }
+
+        boolean openClose = false;
+        while (true)
+        {
+            i = skipWhitespace(i);
+            if (i >= length)
+            {
+                return false;
+            }
+            char c = content.charAt(i);
+            if (c == '>')
+            {
+                end = i + 1;
+                break;
+            }
+            else if (c == '/')
+            {
+                if (i + 1 < length && content.charAt(i + 1) == '>')
+                {
+                    openClose = true;
+                    end = i + 2;
+                    break;
+                }
+                ++i;
+                continue;
+            }
+
+            final int nameStart = i;
+            while (i < length && !isWhitespace(content.charAt(i)) && content.charAt(i) != '=' &&
+                !isTagEnd(i))
+            {
+                ++i;
+            }
+            final int nameEnd = i;
+            if (nameEnd == nameStart)
+            {
+                // stray '='
+                ++i;
+                continue;
+            }
+
+            int valueStart = -1;
+            int valueEnd = -1;
+            i = skipWhitespace(i);
+            if (i < length && content.charAt(i) == '=')
+            {
+                i = skipWhitespace(i + 1);
+                if (i >= length)
+                {
+                    return false;
+                }
+                char quote = content.charAt(i);
+                if (quote == '"' || quote == '\'')
+                {
+                    int closeQuote = indexOf(i + 1, quote);
+                    if (closeQuote == -1)
+                    {
+                        return false;
+                    }
+                    valueStart = i + 1;
+                    valueEnd = closeQuote;
+                    i = closeQuote + 1;
+                }
+                else
+                {
+                    valueStart = i;
+                    while (i < length && !isWhitespace(content.charAt(i)) &&
+                        content.charAt(i) != '>')
+                    {
+                        ++i;
+                    }
+                    valueEnd = i;
+                    if (valueEnd > valueStart && content.charAt(valueEnd - 1) == '/' &&
+                        i < length && content.charAt(i) == '>')
+                    {
+                        // <a href=foo/>
+                        --valueEnd;
+                        --i;
+                    }
+                }
+            }
+            else
+            {
+                // don't consume the whitespace, the next attribute name starts after it
+                i = nameEnd;
+            }
+            addAttribute(nameStart, nameEnd, valueStart, valueEnd);
+        }
+
+        token = Token.TAG;
+        tagType = openClose ? Tag.Type.OPEN_CLOSE : Tag.Type.OPEN;
+
+        if (!openClose)
+        {
+            if (isTagName("script"))
+            {
+                rawTextElement = "script";
+            }
+            else if (isTagName("style"))
+            {
+                rawTextElement = "style";
+            }
+        }
+        return true;
+    }
+
+    private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd)
+    {
+        int index = attributeCount * 4;
+        if (index + 4 > attributes.length)
+        {
+            int[] newAttributes = new int[attributes.length * 2];
+            System.arraycopy(attributes, 0, newAttributes, 0, attributes.length);
+            attributes = newAttributes;
+        }
+        attributes[index] = nameStart;
+        attributes[index + 1] = nameEnd;
+        attributes[index + 2] = valueStart;
+        attributes[index + 3] = valueEnd;
+        ++attributeCount;
+    }
+
+    /**
+     * @return type of current token
+     */
+    public Token getToken()
+    {
+        return token;
+    }
+
+    /**
+     * @return offset of the first character of current token
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return offset after the last character of current token
+     */
+    public int getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * Returns the text of current token. For text and doctype tokens this is the raw markup, for
+     * comments it is the text between <code>&lt;!--</code> and <code>--&gt;</code>, for tags
+     * the raw markup of whole tag.
+     * 
+     * @return
+     */
+    public String getText()
+    {
+        if (token == Token.TAG)
+        {
+            return content.substring(start, end);
+        }
+        return content.substring(contentStart, contentEnd);
+    }
+
+    /**
+     * @return lowercase name of current tag
+     */
+    public String getTagName()
+    {
+        return content.substring(contentStart, contentEnd).toLowerCase();
+    }
+
+    /**
+     * Returns whether the name of current tag equals (ignoring case) to the given lowercase name.
+     * Doesn't allocate any objects.
+     * 
+     * @param name
+     * @return
+     */
+    public boolean isTagName(String name)
+    {
+        return contentEnd - contentStart == name.length() && startsWith(contentStart, name);
+    }
+
+    /**
+     * @return type of current tag
+     */
+    public Tag.Type getTagType()
+    {
+        return tagType;
+    }
+
+    /**
+     * @return number of attributes of current tag
+     */
+    public int getAttributeCount()
+    {
+        return attributeCount;
+    }
+
+    /**
+     * Returns attributes of current tag. Attributes without value are mapped to
+     * <code>null</code>.
+     * 
+     * @return
+     */
+    public Map<String, String> getAttributes()
+    {
+        Map<String, String> result = new HashMap<String, String>();
+        for (int i = 0; i < attributeCount; ++i)
+        {
+            int index = i * 4;
+            String name = content.substring(attributes[index], attributes[index + 1]);
+            String value = null;
+            if (attributes[index + 2] != -1)
+            {
+                value = content.substring(attributes[index + 2], attributes[index + 3]);
+            }
+            result.put(name, value);
+        }
+        return result;
+    }
+}
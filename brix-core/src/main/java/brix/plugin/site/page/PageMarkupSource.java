@@ -18,20 +18,18 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
-import org.htmlparser.Attribute;
-import org.htmlparser.Node;
-import org.htmlparser.Remark;
-import org.htmlparser.Text;
-import org.htmlparser.lexer.Lexer;
-import org.htmlparser.util.ParserException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import brix.Brix;
 import brix.exception.BrixException;
+import brix.markup.MarkupDependencyProvider;
 import brix.markup.MarkupSource;
 import brix.markup.tag.Item;
 import brix.markup.tag.Tag;
@@ -39,6 +37,7 @@ import brix.markup.tag.Tag.Type;
 import brix.markup.tag.simple.SimpleComment;
 import brix.markup.tag.simple.SimpleTag;
 import brix.markup.tag.simple.SimpleText;
+import brix.plugin.site.SitePlugin;
 import brix.plugin.site.page.tile.TileTag;
 
 /**
@@ -48,7 +47,7 @@ import brix.plugin.site.page.tile.TileTag;
  * @author Matej Knopp
  * 
  */
-public class PageMarkupSource implements MarkupSource
+public class PageMarkupSource implements MarkupSource, MarkupDependencyProvider
 {
     private final AbstractContainer node;
 
@@ -127,119 +126,298 @@ public class PageMarkupSource implements MarkupSource
             nodes.add(0, n);
         }
 
-        parseNode(nodes, 0, items);
+        dependencies = new ArrayList<String>(nodes.size());
+        for (AbstractContainer container : nodes)
+        {
+            dependencies.add(container.getPath());
+        }
+
+        List<List<Item>> tokens = tokenize(nodes);
+        mergeNode(nodes, tokens, 0, items);
     }
 
-    private void parseNode(List<AbstractContainer> nodes, int current, List<Item> items)
+    private List<String> dependencies = null;
+
+    /**
+     * Returns paths of the container and all it's templates.
+     */
+    public Collection<String> getMarkupDependencies()
     {
-        AbstractContainer node = nodes.get(current);
-        final String content = node.getDataAsString();
-        final Lexer lexer = new Lexer(content);
-        Node cursor = null;
-        
-        try
+        return dependencies;
+    }
+
+    /**
+     * Tokenizes the content of all given nodes. If {@link SitePlugin#getParsedMarkupStore()} is
+     * set, tokens of nodes that haven't changed since they were stored are loaded from it. The
+     * content is always read on the calling thread (the JCR session is not thread safe), the
+     * lexing itself is done concurrently if {@link SitePlugin#getMarkupParserExecutor()} is set.
+     * 
+     * @param nodes
+     * @return list of tokens for each node
+     */
+    private List<List<Item>> tokenize(List<AbstractContainer> nodes)
+    {
+        final int count = nodes.size();
+        final SitePlugin plugin = SitePlugin.get();
+        final ParsedMarkupStore store = plugin.getParsedMarkupStore();
+        final String workspace = store != null ? node.getSession().getWorkspace().getName() : null;
+
+        // tokens of nodes found in store, null for nodes that need to be parsed
+        final List<List<Item>> result = new ArrayList<List<Item>>(count);
+        final List<String> contents = new ArrayList<String>(count);
+        final List<Date> lastModified = new ArrayList<Date>(count);
+        int missing = 0;
+        for (AbstractContainer container : nodes)
         {
-            while ((cursor = lexer.nextNode()) != null)
+            List<Item> tokens = null;
+            Date date = null;
+            if (store != null)
             {
-                if (cursor instanceof Remark)
+                date = container.getLastModified();
+                if (date != null)
                 {
-                    items.add(new SimpleComment(cursor.getText()));
+                    tokens = store.load(workspace, container.getPath(), date.getTime());
                 }
-                else if (cursor instanceof Text)
+            }
+            result.add(tokens);
+            lastModified.add(date);
+            if (tokens == null)
+            {
+                contents.add(container.getDataAsString());
+                ++missing;
+            }
+            else
+            {
+                contents.add(null);
+            }
+        }
+
+        ExecutorService executor = missing > 1 ? plugin.getMarkupParserExecutor() : null;
+        if (executor == null)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                if (contents.get(i) != null)
+                {
+                    result.set(i, tokenize(contents.get(i), nodes.get(i).getPath()));
+                }
+            }
+        }
+        else
+        {
+            List<Future<List<Item>>> futures = new ArrayList<Future<List<Item>>>(count);
+            int first = -1;
+            for (int i = 0; i < count; ++i)
+            {
+                final String content = contents.get(i);
+                final String path = content != null ? nodes.get(i).getPath() : null;
+                if (content == null || first == -1)
                 {
-                    items.add(new SimpleText(cursor.toHtml()));
+                    if (content != null)
+                    {
+                        first = i;
+                    }
+                    futures.add(null);
+                    continue;
                 }
-                else if (cursor instanceof org.htmlparser.Tag)
+                Future<List<Item>> future;
+                try
                 {
-                    processTag(nodes, current, items, (org.htmlparser.Tag)cursor);
+                    future = executor.submit(new Callable<List<Item>>()
+                    {
+                        public List<Item> call() throws Exception
+                        {
+                            return tokenize(content, path);
+                        }
+                    });
                 }
-                else
+                catch (RejectedExecutionException e)
                 {
-                    throw new BrixException("Unknown node type " + cursor.getClass().getName());
+                    // executor is saturated or shut down
+                    result.set(i, tokenize(content, path));
+                    future = null;
                 }
+                futures.add(future);
             }
 
+            // the first node is tokenized on current thread
+            result.set(first, tokenize(contents.get(first), nodes.get(first).getPath()));
+
+            for (int i = 0; i < count; ++i)
+            {
+                if (futures.get(i) != null)
+                {
+                    result.set(i, getTokens(futures.get(i), nodes.get(i).getPath()));
+                }
+            }
         }
-        catch (ParserException e)
+
+        if (store != null)
         {
-            throw new BrixException("Couldn't parse node content: '" + node.getPath() + "'", e);
+            for (int i = 0; i < count; ++i)
+            {
+                if (contents.get(i) != null && lastModified.get(i) != null)
+                {
+                    store.store(workspace, nodes.get(i).getPath(), lastModified.get(i).getTime(),
+                        result.get(i));
+                }
+            }
         }
-
+        return result;
     }
 
-    private boolean isKnownBrixTag(String tagName)
+    private static List<Item> getTokens(Future<List<Item>> future, String path)
     {
-        if (!tagName.startsWith(Brix.NS_PREFIX))
+        try
         {
-            return false;
+            return future.get();
         }
-        String simpleTagName = tagName.substring(Brix.NS_PREFIX.length());
-        return TemplateNode.CONTENT_TAG.equals(tagName) || "tile".equals(simpleTagName) ||
-            "fragment".equals(simpleTagName);
-    }
-
-    private boolean isOpenClose(org.htmlparser.Tag tag)
-    {
-        if (tag.getRawTagName().endsWith("/"))
+        catch (InterruptedException e)
         {
-            return true;
+            Thread.currentThread().interrupt();
+            throw new BrixException("Interrupted while parsing markup", e);
         }
-        else
+        catch (ExecutionException e)
         {
-            List< ? > atts = tag.getAttributesEx();
-            Attribute a = (Attribute)atts.get(atts.size() - 1);
-            return a.getName() != null && a.getName().equals("/");
+            if (e.getCause() instanceof BrixException)
+            {
+                throw (BrixException)e.getCause();
+            }
+            throw new BrixException("Couldn't parse node content: '" + path + "'", e.getCause());
         }
     }
 
-    private void processTag(List<AbstractContainer> nodes, int current, List<Item> items,
-            org.htmlparser.Tag tag)
+    private static List<Item> tokenize(String content, String path)
     {
-        final Tag.Type type;
-        final String rawName = tag.getRawTagName();
-        if (rawName.startsWith("/"))
+        try
         {
-            type = Tag.Type.CLOSE;
+            return tokenize(content);
         }
-        else if (isOpenClose(tag))
+        catch (RuntimeException e)
         {
-            type = Tag.Type.OPEN_CLOSE;
+            throw new BrixException("Couldn't parse node content: '" + path + "'", e);
         }
-        else
+    }
+
+    /**
+     * Marker for the doctype declaration found in markup.
+     */
+    static class Doctype implements Item
+    {
+        final String html;
+
+        Doctype(String html)
         {
-            type = Tag.Type.OPEN;
+            this.html = html;
         }
+    };
 
-        final String tagName = tag.getTagName().toLowerCase();
+    /**
+     * Converts the given content to list of items. Known brix tags are kept as {@link SimpleTag}s
+     * to be processed by {@link #mergeNode(List, List, int, List)}, their closing tags are
+     * dropped. This method doesn't access the repository so that it can be called concurrently.
+     * 
+     * @param content
+     * @return
+     */
+    private static List<Item> tokenize(String content)
+    {
+        final List<Item> items = new ArrayList<Item>();
+        final MarkupLexer lexer = new MarkupLexer(content);
+        MarkupLexer.Token token;
 
-        if ("!doctype".equals(tagName))
+        while ((token = lexer.next()) != null)
         {
-            this.doctype = tag.toHtml();
+            switch (token)
+            {
+                case TEXT :
+                    items.add(new SimpleText(lexer.getText()));
+                    break;
+                case COMMENT :
+                    items.add(new SimpleComment(lexer.getText()));
+                    break;
+                case DOCTYPE :
+                    items.add(new Doctype(lexer.getText()));
+                    break;
+                case TAG :
+                    Item item = processTag(lexer);
+                    if (item != null)
+                    {
+                        items.add(item);
+                    }
+                    break;
+            }
         }
-        else if (type == Tag.Type.CLOSE)
+        return items;
+    }
+
+    /**
+     * Adds items of node with given index to the result list, replacing the known brix tags.
+     * 
+     * @param nodes
+     * @param tokens
+     * @param current
+     * @param items
+     */
+    private void mergeNode(List<AbstractContainer> nodes, List<List<Item>> tokens, int current,
+            List<Item> items)
+    {
+        for (Item item : tokens.get(current))
         {
-            if (!isKnownBrixTag(tagName))
+            if (item instanceof Doctype)
             {
-                Map<String, String> attributes = Collections.emptyMap();
-                items.add(new SimpleTag(tagName, type, attributes));
+                this.doctype = ((Doctype)item).html;
+            }
+            else if (item instanceof SimpleTag && isKnownBrixTag(((SimpleTag)item).getName()))
+            {
+                SimpleTag tag = (SimpleTag)item;
+                processBrixTag(nodes, tokens, current, items, tag.getName(), tag.getAttributeMap(),
+                    tag.getType());
+            }
+            else
+            {
+                items.add(item);
             }
         }
-        else
+    }
+
+    private static boolean isKnownBrixTag(String tagName)
+    {
+        if (!tagName.startsWith(Brix.NS_PREFIX))
         {
-            Map<String, String> attributes = getAttributes(tag);
-            if (isKnownBrixTag(tagName))
+            return false;
+        }
+        String simpleTagName = tagName.substring(Brix.NS_PREFIX.length());
+        return TemplateNode.CONTENT_TAG.equals(tagName) || "tile".equals(simpleTagName) ||
+            "fragment".equals(simpleTagName);
+    }
+
+    private static Item processTag(MarkupLexer lexer)
+    {
+        final Tag.Type type = lexer.getTagType();
+        final String tagName = lexer.getTagName();
+
+        if (type == Tag.Type.CLOSE)
+        {
+            if (!isKnownBrixTag(tagName))
             {
-                processBrixTag(nodes, current, items, tagName, getAttributes(tag), type);
+                Map<String, String> attributes = Collections.emptyMap();
+                return new SimpleTag(tagName, type, attributes);
             }
             else
             {
-                items.add(new SimpleTag(tagName, type, attributes));
+                return null;
             }
         }
+        else
+        {
+            return new SimpleTag(tagName, type, lexer.getAttributes());
+        }
     }
 
-    private void processBrixTag(List<AbstractContainer> nodes, int current, List<Item> items,
-            String tagName, Map<String, String> attributes, Tag.Type type)
+    private void processBrixTag(List<AbstractContainer> nodes, List<List<Item>> tokens,
+            int current, List<Item> items, String tagName, Map<String, String> attributes,
+            Tag.Type type)
     {
         AbstractContainer node = nodes.get(current);
         final String simpleTagName = tagName.substring(Brix.NS_PREFIX.length());
@@ -247,7 +425,7 @@ public class PageMarkupSource implements MarkupSource
         {
             if (current != nodes.size() - 1)
             {
-                parseNode(nodes, current + 1, items);
+                mergeNode(nodes, tokens, current + 1, items);
             }
         }
         else if ("tile".equals(simpleTagName))
@@ -260,26 +438,6 @@ public class PageMarkupSource implements MarkupSource
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, String> getAttributes(org.htmlparser.Tag tag)
-    {
-        Map<String, String> result = new HashMap<String, String>();
-
-        List< ? > original = tag.getAttributesEx();
-        List<Attribute> list = new ArrayList<Attribute>((Collection< ? extends Attribute>)original
-            .subList(1, original.size()));
-
-        for (Attribute a : list)
-        {
-            if (a.getName() != null && !a.getName().equals("/") && !a.isWhitespace())
-            {
-                result.put(a.getName(), a.getValue());
-            }
-        }
-
-        return result;
-    }
-
     private Iterator<Item> iterator;
 
     private String doctype = null;
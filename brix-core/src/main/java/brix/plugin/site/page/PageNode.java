@@ -14,6 +14,9 @@
 
 package brix.plugin.site.page;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import javax.jcr.Node;
 import javax.jcr.Session;
 
@@ -36,6 +39,12 @@ public class PageNode extends AbstractContainer
             return PageSiteNodePlugin.TYPE.equals(getNodeType(node));
         }
 
+        @Override
+        public Collection<String> getNodeTypes()
+        {
+            return Collections.singleton(PageSiteNodePlugin.TYPE);
+        }
+
         @Override
         public JcrNode wrap(Brix brix, Node node, JcrSession session)
         {
@@ -0,0 +1,395 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brix.markup.tag.Item;
+import brix.markup.tag.Tag;
+import brix.markup.tag.simple.SimpleComment;
+import brix.markup.tag.simple.SimpleTag;
+import brix.markup.tag.simple.SimpleText;
+
+/**
+ * Stores the tokenized markup of page and template nodes in a local directory so that a freshly
+ * started node doesn't have to parse the HTML again. Each entry is stored in a compact binary
+ * file together with the last modification date of the node it was created from; the entry is
+ * only used while the date still matches.
+ * <p>
+ * The store is optional, see {@link brix.plugin.site.SitePlugin#setParsedMarkupStore(ParsedMarkupStore)}.
+ * I/O errors are logged and treated as a missing entry.
+ */
+public class ParsedMarkupStore
+{
+    private static final Logger log = LoggerFactory.getLogger(ParsedMarkupStore.class);
+
+    private static final int MAGIC = 0x42524d4b;
+
+    private static final int VERSION = 1;
+
+    private static final byte TEXT = 1;
+    private static final byte COMMENT = 2;
+    private static final byte DOCTYPE = 3;
+    private static final byte TAG = 4;
+
+    private static final String SUFFIX = ".markup";
+
+    private final File directory;
+
+    /**
+     * Creates the store in given directory. The directory is created if it doesn't exist.
+     * 
+     * @param directory
+     */
+    public ParsedMarkupStore(File directory)
+    {
+        if (directory == null)
+        {
+            throw new IllegalArgumentException("Argument 'directory' may not be null.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IllegalArgumentException("Couldn't create directory '" + directory + "'.");
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    private File getFile(String workspace, String path)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest((workspace + "\n" + path).getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash)
+            {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            name.append(SUFFIX);
+            return new File(directory, name.toString());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads the tokens of given node.
+     * 
+     * @param workspace
+     * @param path
+     * @param lastModified
+     *            last modification date of the node
+     * @return tokens or <code>null</code> if there is no entry for the node or the entry is
+     *         outdated
+     */
+    public List<Item> load(String workspace, String path, long lastModified)
+    {
+        File file = getFile(workspace, path);
+        if (!file.isFile())
+        {
+            return null;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return null;
+            }
+            if (!workspace.equals(in.readUTF()) || !path.equals(in.readUTF()) ||
+                in.readLong() != lastModified)
+            {
+                return null;
+            }
+            // no length read from the file can exceed its size
+            long limit = file.length();
+            int count = in.readInt();
+            if (count < 0 || count > limit)
+            {
+                throw new IOException("Invalid item count " + count);
+            }
+            List<Item> items = new ArrayList<Item>(count);
+            for (int i = 0; i < count; ++i)
+            {
+                items.add(readItem(in, limit));
+            }
+            return items;
+        }
+        catch (IOException e)
+        {
+            log.warn("Couldn't read parsed markup from " + file, e);
+            close(in);
+            in = null;
+            // the file is corrupted, don't try to read it again
+            file.delete();
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores the tokens of given node. Supported items are {@link SimpleText},
+     * {@link SimpleComment}, {@link SimpleTag} and the doctype declaration.
+     * 
+     * @param workspace
+     * @param path
+     * @param lastModified
+     *            last modification date of the node
+     * @param items
+     */
+    public void store(String workspace, String path, long lastModified, List<Item> items)
+    {
+        File file = getFile(workspace, path);
+        File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() +
+            ".tmp");
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(workspace);
+            out.writeUTF(path);
+            out.writeLong(lastModified);
+            out.writeInt(items.size());
+            for (Item item : items)
+            {
+                writeItem(out, item);
+            }
+            out.close();
+            out = null;
+
+            // rename is atomic, readers never see partially written file
+            if (!temp.renameTo(file))
+            {
+                file.delete();
+                if (!temp.renameTo(file))
+                {
+                    throw new IOException("Couldn't rename " + temp + " to " + file);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Couldn't store parsed markup to " + file, e);
+        }
+        finally
+        {
+            close(out);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Removes all stored entries.
+     */
+    public void clear()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.getName().endsWith(SUFFIX))
+                {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void writeItem(DataOutputStream out, Item item) throws IOException
+    {
+        if (item instanceof PageMarkupSource.Doctype)
+        {
+            out.writeByte(DOCTYPE);
+            writeString(out, ((PageMarkupSource.Doctype)item).html);
+        }
+        else if (item.getClass() == SimpleText.class)
+        {
+            out.writeByte(TEXT);
+            writeString(out, ((SimpleText)item).getText());
+        }
+        else if (item.getClass() == SimpleComment.class)
+        {
+            out.writeByte(COMMENT);
+            writeString(out, ((SimpleComment)item).getText());
+        }
+        else if (item.getClass() == SimpleTag.class)
+        {
+            SimpleTag tag = (SimpleTag)item;
+            out.writeByte(TAG);
+            writeString(out, tag.getName());
+            out.writeByte(tag.getType().ordinal());
+            Map<String, String> attributes = tag.getAttributeMap();
+            if (attributes == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(attributes.size());
+                for (Entry<String, String> e : attributes.entrySet())
+                {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue());
+                }
+            }
+        }
+        else
+        {
+            throw new IOException("Unsupported item type '" + item.getClass().getName() + "'");
+        }
+    }
+
+    private Item readItem(DataInputStream in, long limit) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case TEXT :
+                return new SimpleText(readRequiredString(in, limit));
+            case COMMENT :
+                return new SimpleComment(readRequiredString(in, limit));
+            case DOCTYPE :
+                return new PageMarkupSource.Doctype(readRequiredString(in, limit));
+            case TAG :
+                String name = readRequiredString(in, limit);
+                int ordinal = in.readByte();
+                if (ordinal < 0 || ordinal >= Tag.Type.values().length)
+                {
+                    throw new IOException("Unknown tag type " + ordinal);
+                }
+                Tag.Type tagType = Tag.Type.values()[ordinal];
+                int count = in.readInt();
+                if (count < -1 || count > limit)
+                {
+                    throw new IOException("Invalid attribute count " + count);
+                }
+                Map<String, String> attributes;
+                if (count == -1)
+                {
+                    attributes = null;
+                }
+                else if (count == 0)
+                {
+                    attributes = Collections.emptyMap();
+                }
+                else
+                {
+                    attributes = new HashMap<String, String>();
+                    for (int i = 0; i < count; ++i)
+                    {
+                        String key = readRequiredString(in, limit);
+                        attributes.put(key, readString(in, limit));
+                    }
+                }
+                return new SimpleTag(name, tagType, attributes);
+            default :
+                throw new IOException("Unknown item type " + type);
+        }
+    }
+
+    // writeUTF is limited to 64k, markup text can be longer
+    private void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private String readString(DataInputStream in, long limit) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1)
+        {
+            return null;
+        }
+        if (length < 0 || length > limit)
+        {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private String readRequiredString(DataInputStream in, long limit) throws IOException
+    {
+        String string = readString(in, limit);
+        if (string == null)
+        {
+            throw new IOException("Unexpected null string");
+        }
+        return string;
+    }
+
+    private void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+        }
+    }
+}
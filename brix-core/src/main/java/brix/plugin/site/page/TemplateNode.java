@@ -14,6 +14,9 @@
 
 package brix.plugin.site.page;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import javax.jcr.Node;
 import javax.jcr.Session;
 
@@ -35,6 +38,12 @@ public class TemplateNode extends AbstractContainer
             return TemplateSiteNodePlugin.TYPE.equals(getNodeType(node));
         }
 
+        @Override
+        public Collection<String> getNodeTypes()
+        {
+            return Collections.singleton(TemplateSiteNodePlugin.TYPE);
+        }
+
         @Override
         public JcrNode wrap(Brix brix, Node node, JcrSession session)
         {
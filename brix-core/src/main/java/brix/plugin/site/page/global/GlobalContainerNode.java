@@ -14,6 +14,9 @@
 
 package brix.plugin.site.page.global;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import javax.jcr.Node;
 import javax.jcr.Session;
 
@@ -38,6 +41,12 @@ public class GlobalContainerNode extends AbstractContainer
             return TYPE.equals(getNodeType(node));
         }
 
+        @Override
+        public Collection<String> getNodeTypes()
+        {
+            return Collections.singleton(TYPE);
+        }
+
         @Override
         public JcrNode wrap(Brix brix, Node node, JcrSession session)
         {
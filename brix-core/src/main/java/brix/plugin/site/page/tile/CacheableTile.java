@@ -0,0 +1,39 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import org.apache.wicket.model.IModel;
+
+import brix.jcr.wrapper.BrixNode;
+
+/**
+ * {@link Tile} whose rendered output can be cached. When the tile returns a
+ * {@link TileCachePolicy} the output of its viewer is stored in {@link TileFragmentCache} and
+ * subsequent requests are served from the cache without creating the viewer component.
+ * <p>
+ * Cached fragments are written as they are, so the viewer of a cacheable tile must not contribute
+ * to the page header and must not contain stateful components.
+ */
+public interface CacheableTile extends Tile
+{
+	/**
+	 * Returns the cache policy for given tile node or <code>null</code> if the output of the tile
+	 * should not be cached.
+	 * 
+	 * @param tileNode
+	 * @return
+	 */
+	TileCachePolicy getCachePolicy(IModel<BrixNode> tileNode);
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.html.WebComponent;
+
+/**
+ * Component that writes given markup instead of its own tag.
+ */
+class MarkupFragment extends WebComponent
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String markup;
+
+	public MarkupFragment(String id, String markup)
+	{
+		super(id);
+		this.markup = markup;
+	}
+
+	@Override
+	protected void onRender(MarkupStream markupStream)
+	{
+		if (markup != null)
+		{
+			getResponse().write(markup);
+		}
+		markupStream.skipComponent();
+	}
+}
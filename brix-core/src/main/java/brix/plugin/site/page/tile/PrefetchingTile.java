@@ -0,0 +1,63 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import java.util.concurrent.Callable;
+
+import org.apache.wicket.model.IModel;
+
+import brix.jcr.wrapper.BrixNode;
+import brix.web.nodepage.BrixPageParameters;
+
+/**
+ * {@link Tile} that fetches data from a slow backend. The fetch is started for all such tiles of
+ * a page concurrently before the page is rendered, so the page takes about as long as the slowest
+ * tile. The viewer obtains the fetched data with
+ * {@link TilePrefetcher#getResult(PrefetchingTile, IModel)}.
+ * <p>
+ * If the data is not fetched within the timeout the viewer is not created and the fallback markup
+ * is rendered instead.
+ * 
+ * @see brix.plugin.site.SitePlugin#setTilePrefetchExecutor(java.util.concurrent.ExecutorService)
+ */
+public interface PrefetchingTile extends Tile
+{
+	/**
+	 * Creates the task that fetches the data for the tile. The task is created on the request
+	 * thread but may run on another thread, so it must not access the repository, the Wicket
+	 * session or the request cycle. Everything it needs has to be read here.
+	 * 
+	 * @param tileNode
+	 * @param pageParameters
+	 * @return task or <code>null</code> if there is nothing to fetch
+	 */
+	Callable<?> newPrefetchTask(IModel<BrixNode> tileNode, BrixPageParameters pageParameters);
+
+	/**
+	 * Returns how long (in milliseconds) the page rendering waits for the data.
+	 * 
+	 * @param tileNode
+	 * @return
+	 */
+	long getPrefetchTimeout(IModel<BrixNode> tileNode);
+
+	/**
+	 * Returns the markup rendered instead of the tile when the data couldn't be fetched in time.
+	 * 
+	 * @param tileNode
+	 * @return
+	 */
+	String getFallbackMarkup(IModel<BrixNode> tileNode);
+}
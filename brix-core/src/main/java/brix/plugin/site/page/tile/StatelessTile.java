@@ -0,0 +1,29 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import brix.web.nodepage.PageOutputCache;
+
+/**
+ * Marker interface for {@link Tile}s whose viewer output only depends on the tile node and the
+ * page parameters. Pages that only contain such tiles can be served from the
+ * {@link PageOutputCache}.
+ * 
+ * @see TileContainerFacet#isStateless()
+ */
+public interface StatelessTile extends Tile
+{
+
+}
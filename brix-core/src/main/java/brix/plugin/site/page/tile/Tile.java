@@ -15,6 +15,8 @@
 package brix.plugin.site.page.tile;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
@@ -73,15 +75,59 @@ public interface Tile
 
 		public static Tile getTileOfType(String type, Brix brix)
 		{
-			for (Tile t : getTiles(brix))
+			Tile tile = type != null ? brix.getConfig().getTileTypeIndex().get(type) : null;
+			return tile != null ? tile : UnknownTile.INSTANCE;
+		}
+
+		/**
+		 * Keeps type name -> tile map up to date with tile registrations. The map is replaced
+		 * on every change so that lookups don't need to lock. An instance is owned by
+		 * {@link brix.config.BrixConfig} and listens to its registry.
+		 */
+		public static class TypeIndex implements ExtensionPointRegistry.Listener
+		{
+			private volatile Map<String, Tile> tiles = new HashMap<String, Tile>();
+
+			/**
+			 * Returns the tile registered with given type name or <code>null</code>.
+			 * 
+			 * @param type
+			 * @return
+			 */
+			public Tile get(String type)
+			{
+				return tiles.get(type);
+			}
+
+			public synchronized void registered(ExtensionPoint<?> point, Object extension)
 			{
-				if (t.getTypeName().equals(type))
+				if (Tile.POINT.getUuid().equals(point.getUuid()))
 				{
-					return t;
+					Tile tile = (Tile)extension;
+					// first registered tile of given type wins
+					if (!tiles.containsKey(tile.getTypeName()))
+					{
+						Map<String, Tile> copy = new HashMap<String, Tile>(tiles);
+						copy.put(tile.getTypeName(), tile);
+						tiles = copy;
+					}
 				}
 			}
-			return UnknownTile.INSTANCE;
-		}
+
+			public synchronized void unregistered(ExtensionPoint<?> point, Object extension)
+			{
+				if (Tile.POINT.getUuid().equals(point.getUuid()))
+				{
+					Tile tile = (Tile)extension;
+					if (tiles.get(tile.getTypeName()) == tile)
+					{
+						Map<String, Tile> copy = new HashMap<String, Tile>(tiles);
+						copy.remove(tile.getTypeName());
+						tiles = copy;
+					}
+				}
+			}
+		};
 
 	}
 
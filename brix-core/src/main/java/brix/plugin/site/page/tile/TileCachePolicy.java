@@ -0,0 +1,100 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+/**
+ * Describes how the rendered output of a {@link CacheableTile} can be cached.
+ * <p>
+ * The cached fragment is always specific to the tile node and the session locale. It is
+ * discarded when the time to live elapses or when the tile node (or its container) is saved.
+ * Subclasses can override {@link #getVariation()} to keep separate fragments e.g. for each user
+ * role.
+ * 
+ * @see TileFragmentCache
+ */
+public class TileCachePolicy
+{
+	private final long timeToLive;
+
+	private boolean varyByPage = false;
+
+	private boolean varyByPageParameters = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param timeToLive
+	 *            how long (in milliseconds) the fragment can be served from cache. Zero or
+	 *            negative value means that the fragment is kept until the tile node changes.
+	 */
+	public TileCachePolicy(long timeToLive)
+	{
+		this.timeToLive = timeToLive;
+	}
+
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+
+	/**
+	 * Sets whether separate fragments should be cached for each page the tile is rendered on.
+	 * Tiles placed in templates or in the global container that render something specific to
+	 * the current page (such as menus) need to set this to <code>true</code>.
+	 * 
+	 * @param varyByPage
+	 * @return this
+	 */
+	public TileCachePolicy setVaryByPage(boolean varyByPage)
+	{
+		this.varyByPage = varyByPage;
+		return this;
+	}
+
+	public boolean isVaryByPage()
+	{
+		return varyByPage;
+	}
+
+	/**
+	 * Sets whether separate fragments should be cached for different page parameters. Tiles
+	 * whose output depends on indexed or query parameters need to set this to
+	 * <code>true</code>.
+	 * 
+	 * @param varyByPageParameters
+	 * @return this
+	 */
+	public TileCachePolicy setVaryByPageParameters(boolean varyByPageParameters)
+	{
+		this.varyByPageParameters = varyByPageParameters;
+		return this;
+	}
+
+	public boolean isVaryByPageParameters()
+	{
+		return varyByPageParameters;
+	}
+
+	/**
+	 * Returns string that distinguishes variants of the fragment for the current request, e.g.
+	 * the role of the current user. The default implementation returns <code>null</code>.
+	 * 
+	 * @return
+	 */
+	public String getVariation()
+	{
+		return null;
+	}
+}
@@ -15,13 +15,21 @@
 package brix.plugin.site.page.tile;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.jcr.observation.EventIterator;
+
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.RequestCycle;
 import org.apache.wicket.model.IModel;
 
 import brix.Brix;
 import brix.BrixNodeModel;
 import brix.jcr.api.JcrNodeIterator;
+import brix.jcr.base.EventUtil;
+import brix.jcr.base.SaveEventListener;
 import brix.jcr.wrapper.BrixNode;
 
 /**
@@ -61,6 +69,11 @@ public class TileContainerFacet
         {
             throw new IllegalArgumentException("tile id cannot be null");
         }
+        Map<String, BrixNode> index = getTileIndex();
+        if (index != null)
+        {
+            return index.get(id);
+        }
         JcrNodeIterator iterator = container.getNodes(TILE_NODE_NAME);
         while (iterator.hasNext())
         {
@@ -73,6 +86,74 @@ public class TileContainerFacet
         return null;
     }
 
+    /**
+     * Request cycle metadata holding tile id -> tile node maps of containers accessed during the
+     * request, keyed by workspace and container path.
+     */
+    private static final MetaDataKey<Map<String, Map<String, BrixNode>>> TILE_INDEX = new MetaDataKey<Map<String, Map<String, BrixNode>>>()
+    {
+        private static final long serialVersionUID = 1L;
+    };
+
+    static
+    {
+        // tiles might have been added or removed
+        EventUtil.registerSaveEventListener(new SaveEventListener()
+        {
+            public void onEvent(EventIterator events)
+            {
+                clearTileIndex();
+            }
+        });
+    }
+
+    /**
+     * Returns the tile id -> tile node map of this container. The map is built once per request so
+     * that resolving tiles doesn't read the id of every tile node. Returns <code>null</code>
+     * outside of request cycle.
+     * 
+     * @return
+     */
+    private Map<String, BrixNode> getTileIndex()
+    {
+        RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle == null)
+        {
+            return null;
+        }
+        Map<String, Map<String, BrixNode>> indexes = requestCycle.getMetaData(TILE_INDEX);
+        if (indexes == null)
+        {
+            indexes = new HashMap<String, Map<String, BrixNode>>();
+            requestCycle.setMetaData(TILE_INDEX, indexes);
+        }
+        String key = container.getSession().getWorkspace().getName() + container.getPath();
+        Map<String, BrixNode> index = indexes.get(key);
+        if (index == null)
+        {
+            index = new HashMap<String, BrixNode>();
+            for (BrixNode node : getTileNodes())
+            {
+                String id = getTileId(node);
+                if (id != null && !index.containsKey(id))
+                {
+                    index.put(id, node);
+                }
+            }
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    private static void clearTileIndex()
+    {
+        RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle != null)
+        {
+            requestCycle.setMetaData(TILE_INDEX, null);
+        }
+    }
+
     public static String getTileId(BrixNode tile)
     {
         if (tile.hasProperty(Properties.TILE_ID))
@@ -139,6 +220,8 @@ public class TileContainerFacet
         tile.setProperty(Properties.TILE_ID, tileId);
         tile.setProperty(Properties.TILE_CLASS, typeName);
 
+        clearTileIndex();
+
         return tile;
     }
 
@@ -169,5 +252,23 @@ public class TileContainerFacet
         return false;
     };
 
+    /**
+     * Returns true if all tiles of the container are {@link StatelessTile}s.
+     * 
+     * @return
+     */
+    public boolean isStateless()
+    {
+        for (BrixNode tileNode : getTileNodes())
+        {
+            String className = TileContainerFacet.getTileClassName(tileNode);
+            if (!(Tile.Helper.getTileOfType(className, container.getBrix()) instanceof StatelessTile))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
 
 }
@@ -0,0 +1,534 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.RequestCycle;
+import org.apache.wicket.Response;
+import org.apache.wicket.Session;
+import org.apache.wicket.behavior.AbstractBehavior;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.response.StringResponse;
+
+import brix.jcr.api.JcrNode;
+import brix.jcr.base.EventUtil;
+import brix.jcr.base.SaveEvent;
+import brix.jcr.base.SaveEventListener;
+import brix.jcr.wrapper.BrixNode;
+import brix.markup.ExpiringComponent;
+import brix.plugin.site.SitePlugin;
+import brix.web.nodepage.BrixPageParameters;
+
+/**
+ * Cache of rendered output of {@link CacheableTile}s. When a cached fragment is found the tile
+ * viewer is not created at all, a lightweight component that writes the fragment is used
+ * instead. Otherwise the viewer output is captured during rendering and stored in the cache.
+ * <p>
+ * Fragments expire after the time to live specified by {@link TileCachePolicy} and are removed
+ * when the tile node or any of its ancestors is saved. The component that writes a cached
+ * fragment is an {@link ExpiringComponent}, so a page that keeps it in its hierarchy replaces it
+ * with a new viewer once the fragment is no longer current.
+ * 
+ * @see TileTag#getComponent(String, IModel)
+ */
+public class TileFragmentCache
+{
+	/**
+	 * Default maximal number of characters retained by cached fragments
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 4L * 1024L * 1024L;
+
+	/**
+	 * Default maximal number of cached fragments
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 2000;
+
+	/**
+	 * Default period (in milliseconds) after a save during which rendered fragments are not
+	 * cached.
+	 */
+	public static final long DEFAULT_QUIET_PERIOD = 30000L;
+
+	public TileFragmentCache()
+	{
+		this(DEFAULT_MAX_WEIGHT, DEFAULT_MAX_ENTRIES);
+	}
+
+	public TileFragmentCache(long maxWeight, int maxEntries)
+	{
+		if (maxWeight <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxWeight' must be greater than 0.");
+		}
+		if (maxEntries <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxEntries' must be greater than 0.");
+		}
+		this.maxWeight = maxWeight;
+		this.maxEntries = maxEntries;
+		EventUtil.registerSaveEventListener(saveEventListener);
+	}
+
+	/**
+	 * Unregisters the save event listener and drops all fragments. The cache must not be used
+	 * afterwards. Called by {@link SitePlugin#setTileFragmentCache(TileFragmentCache)} when the
+	 * cache is replaced and by {@link SitePlugin#destroy()}.
+	 */
+	public void destroy()
+	{
+		EventUtil.unregisterSaveEventListener(saveEventListener);
+		clear();
+	}
+
+	/**
+	 * Creates the viewer component for given tile. If there is a valid cached fragment for the
+	 * tile node, the returned component only writes the fragment. Otherwise the tile viewer is
+	 * created and its output is stored in the cache once it is rendered.
+	 * 
+	 * @param tile
+	 * @param id
+	 * @param tileNode
+	 * @param pageNode
+	 *            node of the page the tile is rendered on
+	 * @param policy
+	 * @return
+	 */
+	public Component newViewer(Tile tile, String id, IModel<BrixNode> tileNode,
+			IModel<BrixNode> pageNode, TileCachePolicy policy)
+	{
+		BrixNode node = tileNode.getObject();
+		String workspace = node.getSession().getWorkspace().getName();
+		String path = node.getPath();
+		String key = getKey(workspace, path, pageNode, policy);
+
+		Entry entry = get(key);
+		if (entry != null)
+		{
+			return new CachedFragment(id, key, entry.markup);
+		}
+		else
+		{
+			Component viewer = tile.newViewer(id, tileNode);
+			if (viewer != null)
+			{
+				long expiresAt = policy.getTimeToLive() > 0 ? System.currentTimeMillis() +
+						policy.getTimeToLive() : 0;
+				viewer.add(new CapturingBehavior(key, workspace + path, expiresAt,
+						invalidationCount.get()));
+			}
+			return viewer;
+		}
+	}
+
+	private String getKey(String workspace, String path, IModel<BrixNode> pageNode,
+			TileCachePolicy policy)
+	{
+		StringBuilder key = new StringBuilder();
+		key.append(workspace).append(path);
+		Session session = Session.get();
+		key.append('-').append(session.getLocale());
+		key.append('-').append(session.getStyle());
+		if (policy.isVaryByPage())
+		{
+			key.append('-').append(pageNode.getObject().getPath());
+		}
+		if (policy.isVaryByPageParameters())
+		{
+			key.append('-').append(BrixPageParameters.getCurrent().toNormalizedString());
+		}
+		String variation = policy.getVariation();
+		if (variation != null)
+		{
+			key.append('-').append(variation.length()).append(':').append(variation);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the fragment for given key or <code>null</code> if there is no fragment or it has
+	 * expired.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	Entry get(String key)
+	{
+		Entry entry;
+		synchronized (map)
+		{
+			entry = map.get(key);
+			if (entry != null && entry.isExpired())
+			{
+				map.remove(key);
+				weight -= entry.markup.length();
+				entry = null;
+			}
+		}
+		if (entry != null)
+		{
+			hitCount.incrementAndGet();
+		}
+		else
+		{
+			missCount.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns whether the given markup is still the valid cached fragment for the key.
+	 * 
+	 * @param key
+	 * @param markup
+	 * @return
+	 */
+	boolean isCurrent(String key, String markup)
+	{
+		synchronized (map)
+		{
+			Entry entry = map.get(key);
+			return entry != null && entry.markup.equals(markup) && !entry.isExpired();
+		}
+	}
+
+	long getInvalidationCount()
+	{
+		return invalidationCount.get();
+	}
+
+	/**
+	 * Stores the fragment unless there has been a save since the viewer was created or shortly
+	 * before rendering. The save event is raised before the data is persisted so fragments
+	 * rendered shortly after a save might contain old content.
+	 */
+	void put(String key, Entry entry, long invalidations, long renderStart)
+	{
+		synchronized (map)
+		{
+			if (invalidations != invalidationCount.get() ||
+					renderStart - lastInvalidationTime < quietPeriod)
+			{
+				return;
+			}
+			Entry old = map.put(key, entry);
+			if (old != null)
+			{
+				weight -= old.markup.length();
+			}
+			weight += entry.markup.length();
+
+			Iterator<Entry> i = map.values().iterator();
+			while ((weight > maxWeight || map.size() > maxEntries) && i.hasNext())
+			{
+				Entry e = i.next();
+				if (e != entry)
+				{
+					i.remove();
+					weight -= e.markup.length();
+					evictionCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes fragments of tile nodes on given path and its descendants, as well as fragments of
+	 * tile nodes that are ancestors of the path.
+	 * 
+	 * @param workspace
+	 * @param path
+	 */
+	public void invalidate(String workspace, String path)
+	{
+		String prefix = workspace + path;
+		synchronized (map)
+		{
+			invalidationCount.incrementAndGet();
+			lastInvalidationTime = System.currentTimeMillis();
+			Iterator<Entry> i = map.values().iterator();
+			while (i.hasNext())
+			{
+				Entry e = i.next();
+				if (isAncestorOrSelf(prefix, e.node) || isAncestorOrSelf(e.node, prefix))
+				{
+					i.remove();
+					weight -= e.markup.length();
+				}
+			}
+		}
+	}
+
+	private static boolean isAncestorOrSelf(String ancestor, String path)
+	{
+		return path.startsWith(ancestor) &&
+				(path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/');
+	}
+
+	/**
+	 * Removes all fragments from the cache.
+	 */
+	public void clear()
+	{
+		synchronized (map)
+		{
+			invalidationCount.incrementAndGet();
+			map.clear();
+			weight = 0;
+		}
+	}
+
+	public void setQuietPeriod(long quietPeriod)
+	{
+		this.quietPeriod = quietPeriod;
+	}
+
+	public long getQuietPeriod()
+	{
+		return quietPeriod;
+	}
+
+	/**
+	 * @return number of cached fragments
+	 */
+	public int getSize()
+	{
+		synchronized (map)
+		{
+			return map.size();
+		}
+	}
+
+	/**
+	 * @return number of characters retained by cached fragments
+	 */
+	public long getWeight()
+	{
+		synchronized (map)
+		{
+			return weight;
+		}
+	}
+
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TileFragmentCache[size=" + getSize() + ", weight=" + getWeight() + ", hits=" +
+				getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() +
+				"]";
+	}
+
+	static class Entry
+	{
+		private final String node;
+
+		private final String markup;
+
+		private final long expiresAt;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param node
+		 *            workspace name followed by the tile node path
+		 * @param markup
+		 * @param expiresAt
+		 *            time after which the fragment is no longer valid, zero if it only expires
+		 *            when the node is saved
+		 */
+		public Entry(String node, String markup, long expiresAt)
+		{
+			this.node = node;
+			this.markup = markup;
+			this.expiresAt = expiresAt;
+		}
+
+		String getMarkup()
+		{
+			return markup;
+		}
+
+		boolean isExpired()
+		{
+			return expiresAt != 0 && expiresAt < System.currentTimeMillis();
+		}
+	};
+
+	/**
+	 * Writes the cached fragment. Expires when the fragment is invalidated, replaced or its time
+	 * to live elapses so that the page creates the tile viewer again instead of writing stale
+	 * markup.
+	 */
+	private static class CachedFragment extends MarkupFragment implements ExpiringComponent
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private final String markup;
+
+		public CachedFragment(String id, String key, String markup)
+		{
+			super(id, markup);
+			this.key = key;
+			this.markup = markup;
+		}
+
+		public boolean isExpired()
+		{
+			return !SitePlugin.get().getTileFragmentCache().isCurrent(key, markup);
+		}
+	};
+
+	/**
+	 * Redirects the output of the tile viewer to a buffer and stores it in the cache once the
+	 * viewer is rendered.
+	 */
+	private static class CapturingBehavior extends AbstractBehavior
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private final String node;
+
+		private final long expiresAt;
+
+		private final long invalidations;
+
+		private boolean captured = false;
+
+		private transient long start;
+
+		private transient Response original;
+
+		private transient StringResponse buffer;
+
+		public CapturingBehavior(String key, String node, long expiresAt, long invalidations)
+		{
+			this.key = key;
+			this.node = node;
+			this.expiresAt = expiresAt;
+			this.invalidations = invalidations;
+		}
+
+		@Override
+		public void beforeRender(Component component)
+		{
+			if (!captured)
+			{
+				RequestCycle requestCycle = component.getRequestCycle();
+				start = System.currentTimeMillis();
+				original = requestCycle.getResponse();
+				buffer = new StringResponse();
+				requestCycle.setResponse(buffer);
+			}
+		}
+
+		@Override
+		public void afterRender(Component component)
+		{
+			if (buffer != null)
+			{
+				String markup = buffer.toString();
+				restore(component);
+				original.write(markup);
+				original = null;
+				captured = true;
+				SitePlugin.get().getTileFragmentCache().put(key, new Entry(node, markup, expiresAt),
+						invalidations, start);
+			}
+		}
+
+		@Override
+		public void onException(Component component, RuntimeException exception)
+		{
+			if (buffer != null)
+			{
+				restore(component);
+				original = null;
+			}
+		}
+
+		private void restore(Component component)
+		{
+			component.getRequestCycle().setResponse(original);
+			buffer = null;
+		}
+	};
+
+	private class InvalidatingSaveEventListener implements SaveEventListener
+	{
+		public void onEvent(EventIterator events)
+		{
+			while (events.hasNext())
+			{
+				Event event = events.nextEvent();
+				if (event instanceof SaveEvent)
+				{
+					JcrNode node = ((SaveEvent) event).getNode();
+					invalidate(node.getSession().getWorkspace().getName(), node.getPath());
+				}
+			}
+		}
+	};
+
+	// access ordered so that iteration starts with least recently used entry
+	private final Map<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	// guarded by map
+	private long weight = 0;
+
+	// guarded by map
+	private long lastInvalidationTime = 0;
+
+	private volatile long quietPeriod = DEFAULT_QUIET_PERIOD;
+
+	private final long maxWeight;
+
+	private final int maxEntries;
+
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final SaveEventListener saveEventListener = new InvalidatingSaveEventListener();
+}
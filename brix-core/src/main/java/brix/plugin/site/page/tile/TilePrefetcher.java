@@ -0,0 +1,245 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.RequestCycle;
+import org.apache.wicket.model.IModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brix.BrixNodeModel;
+import brix.exception.BrixException;
+import brix.jcr.wrapper.BrixNode;
+import brix.markup.MarkupHelper;
+import brix.markup.tag.ComponentTag;
+import brix.markup.tag.Item;
+import brix.markup.tag.Tag;
+import brix.markup.variable.VariableTag;
+import brix.plugin.site.SitePlugin;
+import brix.web.nodepage.BrixPageParameters;
+
+/**
+ * Starts the data fetch of {@link PrefetchingTile}s of a page on the executor set with
+ * {@link SitePlugin#setTilePrefetchExecutor(ExecutorService)} and keeps the pending results for
+ * the rest of the request.
+ */
+public class TilePrefetcher
+{
+	private static final Logger log = LoggerFactory.getLogger(TilePrefetcher.class);
+
+	private TilePrefetcher()
+	{
+
+	}
+
+	private static class Prefetch
+	{
+		private final Future<?> future;
+
+		private final long deadline;
+
+		public Prefetch(Future<?> future, long deadline)
+		{
+			this.future = future;
+			this.deadline = deadline;
+		}
+	};
+
+	private static final MetaDataKey<Map<String, Prefetch>> PREFETCHES = new MetaDataKey<Map<String, Prefetch>>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private static String getKey(BrixNode tileNode)
+	{
+		return tileNode.getSession().getWorkspace().getName() + tileNode.getPath();
+	}
+
+	private static Map<String, Prefetch> getPrefetches(boolean create)
+	{
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle == null)
+		{
+			return null;
+		}
+		Map<String, Prefetch> prefetches = requestCycle.getMetaData(PREFETCHES);
+		if (prefetches == null && create)
+		{
+			prefetches = new HashMap<String, Prefetch>();
+			requestCycle.setMetaData(PREFETCHES, prefetches);
+		}
+		return prefetches;
+	}
+
+	/**
+	 * Starts fetching data of {@link PrefetchingTile}s referenced by the given markup items. Tiles
+	 * whose components already exist are skipped.
+	 * 
+	 * @param items
+	 *            markup items
+	 * @param existingComponents
+	 *            ids of components that already exist
+	 */
+	public static void prefetch(List<Item> items, Set<String> existingComponents)
+	{
+		ExecutorService executor = SitePlugin.get().getTilePrefetchExecutor();
+		if (executor == null)
+		{
+			return;
+		}
+		for (Item item : items)
+		{
+			if (item instanceof ComponentTag && ((Tag)item).getType() != Tag.Type.CLOSE &&
+				!existingComponents.contains(MarkupHelper.getComponentID((ComponentTag)item)))
+			{
+				Item tag = item;
+				while (tag instanceof VariableTag)
+				{
+					tag = ((VariableTag)tag).getDelegate();
+				}
+				if (tag instanceof TileTag)
+				{
+					BrixNode tileNode = ((TileTag)tag).getTileNode();
+					if (tileNode != null)
+					{
+						prefetch(executor, tileNode);
+					}
+				}
+			}
+		}
+	}
+
+	private static void prefetch(ExecutorService executor, BrixNode tileNode)
+	{
+		Tile tile = Tile.Helper.getTileOfType(TileContainerFacet.getTileClassName(tileNode),
+			tileNode.getBrix());
+		if (tile instanceof PrefetchingTile)
+		{
+			PrefetchingTile prefetchingTile = (PrefetchingTile)tile;
+			IModel<BrixNode> tileNodeModel = new BrixNodeModel(tileNode);
+			Callable<?> task = prefetchingTile.newPrefetchTask(tileNodeModel, BrixPageParameters
+				.getCurrent());
+			if (task != null)
+			{
+				long deadline = System.currentTimeMillis() +
+					prefetchingTile.getPrefetchTimeout(tileNodeModel);
+				Future<?> future;
+				try
+				{
+					future = executor.submit(task);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// executor is saturated or shut down, getResult runs the task when the tile
+					// is rendered
+					log.debug("Prefetch of tile {} rejected", tileNode.getPath());
+					return;
+				}
+				getPrefetches(true).put(getKey(tileNode), new Prefetch(future, deadline));
+			}
+		}
+	}
+
+	/**
+	 * Waits for the data of given tile. Returns <code>false</code> if the fetch failed or didn't
+	 * finish before the tile timeout, in which case the fallback markup should be rendered. If no
+	 * fetch has been started for the tile the method returns <code>true</code>.
+	 * 
+	 * @param tileNode
+	 * @return
+	 */
+	static boolean await(BrixNode tileNode)
+	{
+		Map<String, Prefetch> prefetches = getPrefetches(false);
+		Prefetch prefetch = prefetches != null ? prefetches.get(getKey(tileNode)) : null;
+		if (prefetch == null)
+		{
+			return true;
+		}
+		try
+		{
+			long remaining = Math.max(prefetch.deadline - System.currentTimeMillis(), 0);
+			prefetch.future.get(remaining, TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch (TimeoutException e)
+		{
+			log.warn("Prefetch of tile {} timed out", tileNode.getPath());
+		}
+		catch (ExecutionException e)
+		{
+			log.warn("Prefetch of tile " + tileNode.getPath() + " failed", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		prefetch.future.cancel(true);
+		prefetches.remove(getKey(tileNode));
+		return false;
+	}
+
+	/**
+	 * Returns the data fetched for given tile. If no fetch has been started in this request (e.g.
+	 * there is no executor or the tile is being rendered by a listener request), the fetch task is
+	 * run on the current thread.
+	 * 
+	 * @param <T>
+	 * @param tile
+	 * @param tileNode
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T getResult(PrefetchingTile tile, IModel<BrixNode> tileNode)
+	{
+		Map<String, Prefetch> prefetches = getPrefetches(false);
+		Prefetch prefetch = prefetches != null ? prefetches.get(getKey(tileNode.getObject()))
+			: null;
+		try
+		{
+			if (prefetch != null && prefetch.future.isDone() && !prefetch.future.isCancelled())
+			{
+				return (T)prefetch.future.get();
+			}
+			Callable<?> task = tile.newPrefetchTask(tileNode, BrixPageParameters.getCurrent());
+			return task != null ? (T)task.call() : null;
+		}
+		catch (ExecutionException e)
+		{
+			throw new BrixException(e.getCause());
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new BrixException(e);
+		}
+	}
+}
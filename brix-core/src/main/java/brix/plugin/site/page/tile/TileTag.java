@@ -26,6 +26,7 @@ import brix.jcr.wrapper.BrixNode;
 import brix.markup.tag.ComponentTag;
 import brix.markup.tag.simple.SimpleTag;
 import brix.markup.variable.VariableKeyProvider;
+import brix.plugin.site.SitePlugin;
 import brix.plugin.site.page.AbstractContainer;
 
 /**
@@ -77,17 +78,40 @@ public class TileTag extends SimpleTag
         return tileName;
     }
 
+    /**
+     * @return node of the tile this tag is attached to or <code>null</code> if there is no such
+     *         tile
+     */
+    BrixNode getTileNode()
+    {
+        return getTileContainer().getTileNode(tileName);
+    }
+
     /** {@inheritDoc} */
     public Component getComponent(String id, IModel<BrixNode> pageNodeModel)
     {
-        AbstractContainer container = getTileContainer();
-        BrixNode tileNode = container.getTileNode(tileName);
+        BrixNode tileNode = getTileNode();
 
         if (tileNode != null)
         {
             Tile tile = Tile.Helper.getTileOfType(TileContainerFacet.getTileClassName(tileNode),
-                tileNode.getBrix());            
-            return tile.newViewer(id, new BrixNodeModel(tileNode));
+                tileNode.getBrix());
+            IModel<BrixNode> tileNodeModel = new BrixNodeModel(tileNode);
+            if (tile instanceof PrefetchingTile && !TilePrefetcher.await(tileNode))
+            {
+                return new MarkupFragment(id, ((PrefetchingTile)tile)
+                    .getFallbackMarkup(tileNodeModel));
+            }
+            if (tile instanceof CacheableTile)
+            {
+                TileCachePolicy policy = ((CacheableTile)tile).getCachePolicy(tileNodeModel);
+                if (policy != null)
+                {
+                    return SitePlugin.get().getTileFragmentCache().newViewer(tile, id,
+                        tileNodeModel, pageNodeModel, policy);
+                }
+            }
+            return tile.newViewer(id, tileNodeModel);
         }
         else
         {
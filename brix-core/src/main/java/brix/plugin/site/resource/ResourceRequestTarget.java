@@ -57,6 +57,14 @@ public class ResourceRequestTarget implements IRequestTarget
         this.save = save;
     }
 
+    /**
+     * @return model of the served resource node
+     */
+    public IModel<BrixNode> getNodeModel()
+    {
+        return node;
+    }
+
     public void detach(RequestCycle requestCycle)
     {
         node.detach();
@@ -75,36 +83,34 @@ public class ResourceRequestTarget implements IRequestTarget
         }
 
         WebResponse response = (WebResponse)requestCycle.getResponse();
-        
-        response.setContentType(node.getMimeType());
-    
-        Date lastModified = node.getLastModified();        
-        response.setLastModifiedTime(Time.valueOf(lastModified));        
-        
+
+        String mimeType = node.getMimeType();
+        response.setContentType(mimeType);
+
+        Date lastModified = node.getLastModified();
+        response.setLastModifiedTime(Time.valueOf(lastModified));
+
         try
-        {   
-        	HttpServletRequest r = ((WebRequest)requestCycle.getRequest()).getHttpServletRequest();
-        	String since = r.getHeader("If-Modified-Since");
-        	if (!save && since != null) 
-        	{
-        		Date d = new Date(r.getDateHeader("If-Modified-Since"));        	        		
-        		        	
-        		// the weird toString comparison is to prevent comparing milliseconds
-        		if (d.after(lastModified) || d.toString().equals(lastModified.toString()))
-        		{        	
-        			response.setContentLength(node.getContentLength());
-        			response.getHttpServletResponse().setStatus(HttpServletResponse.SC_NOT_MODIFIED);        			
-        			return;
-        				
-        		}        		
-        	}
-        	String fileName = node.getName();
-        	long length = node.getContentLength();
-        	HttpServletRequest httpServletRequest = ((WebRequest)requestCycle.getRequest()).getHttpServletRequest();
-        	HttpServletResponse httpServletResponse = response.getHttpServletResponse();
-        	InputStream stream = node.getDataAsStream(); 
-        	
-            new Streamer(length, stream, fileName, save, httpServletRequest, httpServletResponse).stream();
+        {
+            HttpServletRequest r = ((WebRequest)requestCycle.getRequest()).getHttpServletRequest();
+            HttpServletResponse httpServletResponse = response.getHttpServletResponse();
+            long length = node.getContentLength();
+
+            String entityTag = getEntityTag(node, length, lastModified);
+            httpServletResponse.setHeader("ETag", entityTag);
+
+            // revalidation is answered from node properties only, the data is not touched
+            if (!save && isNotModified(r, entityTag, lastModified))
+            {
+                httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            String fileName = node.getName();
+            InputStream stream = node.getDataAsStream();
+
+            new Streamer(length, stream, fileName, mimeType, entityTag, lastModified,
+                save, r, httpServletResponse).stream();
         }
         catch (Exception e)
         {
@@ -112,6 +118,78 @@ public class ResourceRequestTarget implements IRequestTarget
         }
     }
 
+    /**
+     * Returns the entity tag for the node. If the content hash is known this is a strong tag
+     * derived from it, otherwise a weak tag derived from content length and modification time.
+     * Serving a resource never stores its hash; resources stored before hashes were kept can be
+     * updated by {@link SitePlugin#updateContentHashes(brix.jcr.api.JcrSession)}.
+     * 
+     * @param node
+     * @param length
+     * @param lastModified
+     * @return entity tag including quotes
+     */
+    protected String getEntityTag(BrixFileNode node, long length, Date lastModified)
+    {
+        String hash = node.getContentHash();
+        if (hash != null)
+        {
+            return "\"" + hash + "\"";
+        }
+        else
+        {
+            return "W/\"" + length + "-" + (lastModified != null ? lastModified.getTime() : 0) +
+                "\"";
+        }
+    }
+
+    private static boolean matches(String entityTag, String header)
+    {
+        // weak comparison, as required for If-None-Match
+        String tag = entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+        for (String s : header.split(","))
+        {
+            s = s.trim();
+            if (s.equals("*"))
+            {
+                return true;
+            }
+            if (s.startsWith("W/"))
+            {
+                s = s.substring(2);
+            }
+            if (s.equals(tag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isNotModified(HttpServletRequest request, String entityTag, Date lastModified)
+    {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+        {
+            // If-Modified-Since is ignored when If-None-Match is present
+            return matches(entityTag, ifNoneMatch);
+        }
+        if (lastModified != null && request.getHeader("If-Modified-Since") != null)
+        {
+            try
+            {
+                long since = request.getDateHeader("If-Modified-Since");
+                // http dates have second precision
+                return since != -1 && lastModified.getTime() / 1000 <= since / 1000;
+            }
+            catch (IllegalArgumentException e)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
     private static final Logger log = LoggerFactory.getLogger(ResourceRequestTarget.class);
 
     public static final String SAVE_PARAMETER = Brix.NS_PREFIX + "save";
@@ -12,17 +12,34 @@
  * limitations under the License.
  */
 
+
 package brix.plugin.site.resource;
 
-import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Responds stream with support for Content-Range header.
+ * Responds stream with support for Range and If-Range headers. Multiple ranges are sent as
+ * <code>multipart/byteranges</code>.
+ * <p>
+ * Data is copied through pooled buffers without flushing the response after each chunk. Streams
+ * backed by a file are positioned using their {@link FileChannel} instead of being skipped, and
+ * transferred directly if the container's output stream is a {@link WritableByteChannel}.
  * 
  * @author Matej Knopp
  */
@@ -31,104 +48,278 @@ class Streamer
 	private final long length;
 	private final InputStream inputStream;
 	private final String fileName;
+	private final String contentType;
+	private final String entityTag;
+	private final Date lastModified;
 	private final boolean attachment;
 	private final HttpServletRequest request;
 	private final HttpServletResponse response;
 
-	public Streamer(long length, InputStream inputStream, String fileName, boolean attachment,
-			HttpServletRequest request, HttpServletResponse response)
+	/**
+	 * Construct.
+	 * 
+	 * @param length
+	 * @param inputStream
+	 * @param fileName
+	 * @param contentType
+	 * @param entityTag
+	 *            entity tag of the content (including quotes), used to evaluate If-Range header
+	 * @param lastModified
+	 *            last modification date, used to evaluate If-Range header, may be
+	 *            <code>null</code>
+	 * @param attachment
+	 * @param request
+	 * @param response
+	 */
+	public Streamer(long length, InputStream inputStream, String fileName, String contentType,
+			String entityTag, Date lastModified, boolean attachment, HttpServletRequest request,
+			HttpServletResponse response)
 	{
 		this.length = length;
 		this.inputStream = inputStream;
 		this.fileName = fileName;
+		this.contentType = contentType;
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
 		this.response = response;
 		this.request = request;
 		this.attachment = attachment;
 	}
 
-	private static class Range
+	static class Range implements Comparable<Range>
 	{
-		final Long start;
-		final Long end;
+		final long start;
+		final long end;
 
-		public Range(Long start, Long end)
+		public Range(long start, long end)
 		{
 			this.start = start;
 			this.end = end;
 		}
 
+		public long getLength()
+		{
+			return end - start + 1;
+		}
+
+		public int compareTo(Range o)
+		{
+			return start < o.start ? -1 : (start == o.start ? 0 : 1);
+		}
+
+		@Override
+		public String toString()
+		{
+			return start + "-" + end;
+		}
 	};
 
-	private boolean isEmpty(String s)
+	private static boolean isEmpty(String s)
 	{
 		return s == null || s.length() == 0;
 	}
 
-	private Range parseRange(String range, long length)
+	/**
+	 * Parses the value of Range header. Returns <code>null</code> if the header is missing or
+	 * malformed (in which case the whole content is sent) or list of satisfiable ranges, sorted
+	 * and with overlapping or adjacent ranges merged. Empty list means that none of the ranges
+	 * can be satisfied.
+	 * 
+	 * @param header
+	 * @param length
+	 * @return
+	 */
+	static List<Range> parseRanges(String header, long length)
 	{
-		if (isEmpty(range))
-		{
-			return new Range(null, null);
-		}
-		String p[] = range.split("=");
-
-		if (p.length != 1 && (p.length != 2 || !"bytes".equals(p[0])))
+		if (isEmpty(header) || !header.startsWith("bytes="))
 		{
-			return new Range(0l, length - 1);
+			return null;
 		}
-		else
+		List<Range> ranges = new ArrayList<Range>();
+		for (String spec : header.substring("bytes=".length()).split(","))
 		{
-			p = p[p.length - 1].split("-");
-			if (p.length == 1)
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash == -1)
+			{
+				return null;
+			}
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			try
 			{
-				p = new String[] { p[0], "" };
+				if (isEmpty(first))
+				{
+					if (isEmpty(last))
+					{
+						return null;
+					}
+					// suffix range - last n bytes
+					long suffix = Long.parseLong(last);
+					if (suffix < 0)
+					{
+						return null;
+					}
+					start = Math.max(length - suffix, 0);
+					end = suffix > 0 ? length - 1 : -1;
+				}
+				else
+				{
+					start = Long.parseLong(first);
+					if (isEmpty(last))
+					{
+						end = length - 1;
+					}
+					else
+					{
+						end = Long.parseLong(last);
+						if (end < start)
+						{
+							return null;
+						}
+						end = Math.min(end, length - 1);
+					}
+				}
 			}
-			if (p.length != 2)
+			catch (NumberFormatException e)
 			{
-				return new Range(0l, length - 1);
+				return null;
 			}
-			if (isEmpty(p[0]) && isEmpty(p[1]))
+			if (start < 0)
 			{
-				return new Range(0l, length - 1);
+				return null;
 			}
-			else if (isEmpty(p[0]))
+			if (start < length && start <= end)
 			{
-				return new Range(length - Long.valueOf(p[1]), length - 1);
+				ranges.add(new Range(start, end));
 			}
-			else if (isEmpty(p[1]))
+		}
+
+		// clients must handle parts by their Content-Range, so the ranges can be sent in order
+		// of the stream and overlapping ranges can be coalesced
+		Collections.sort(ranges);
+		List<Range> result = new ArrayList<Range>(ranges.size());
+		for (Range range : ranges)
+		{
+			Range previous = result.isEmpty() ? null : result.get(result.size() - 1);
+			if (previous != null && range.start <= previous.end + 1)
 			{
-				return new Range(Long.valueOf(p[0]), length - 1);
+				result.set(result.size() - 1, new Range(previous.start, Math.max(previous.end,
+						range.end)));
 			}
 			else
 			{
-				return new Range(Long.valueOf(p[0]), Long.valueOf(p[1]));
+				result.add(range);
 			}
 		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the Range header should be honored according to the If-Range header. The
+	 * range is only sent if the If-Range validator matches current content, otherwise the whole
+	 * content is sent.
+	 * 
+	 * @return
+	 */
+	private boolean isIfRangeSatisfied()
+	{
+		String ifRange = request.getHeader("If-Range");
+		if (isEmpty(ifRange))
+		{
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+		{
+			// requires strong comparison
+			return entityTag != null && !entityTag.startsWith("W/") && entityTag.equals(ifRange);
+		}
+		else
+		{
+			try
+			{
+				long date = request.getDateHeader("If-Range");
+				return lastModified != null && date != -1 &&
+						lastModified.getTime() / 1000 == date / 1000;
+			}
+			catch (IllegalArgumentException e)
+			{
+				return false;
+			}
+		}
+	}
+
+	private static final String BOUNDARY = "BRIX_BYTERANGES_BOUNDARY";
+
+	private String getPartHeader(Range range)
+	{
+		return "\r\n--" + BOUNDARY + "\r\n" + "Content-Type: " + contentType + "\r\n" +
+				"Content-Range: bytes " + range + "/" + length + "\r\n\r\n";
+	}
+
+	private static final String LAST_BOUNDARY = "\r\n--" + BOUNDARY + "--\r\n";
+
+	private static byte[] ascii(String s)
+	{
+		try
+		{
+			return s.getBytes("US-ASCII");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e);
+		}
 	}
 
 	public void stream()
 	{
-		Range range = parseRange(request.getHeader("Range"), length);
-		Long first = range.start;
-		Long last = range.end;
+		List<Range> ranges = parseRanges(request.getHeader("Range"), length);
+		if (ranges != null && !isIfRangeSatisfied())
+		{
+			ranges = null;
+		}
+
+		response.addHeader("Accept-Ranges", "bytes");
+
+		if (ranges != null && ranges.isEmpty())
+		{
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.addHeader("Content-Range", "bytes */" + length);
+			response.addHeader("Content-Length", "0");
+			close(inputStream);
+			return;
+		}
+
 		long contentLength = length;
-		
-		if (first != null && last != null)
+
+		if (ranges == null)
+		{
+			response.setStatus(HttpServletResponse.SC_OK);
+			ranges = Collections.singletonList(new Range(0, length - 1));
+		}
+		else if (ranges.size() == 1)
 		{
+			Range range = ranges.get(0);
 			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-			response.addHeader("Content-Range", "bytes " + first + "-" + last + "/" + length);
-
-			contentLength = last - first + 1;
+			response.addHeader("Content-Range", "bytes " + range + "/" + length);
+			contentLength = range.getLength();
 		}
 		else
 		{
-			response.setStatus(HttpServletResponse.SC_OK);
-			first = 0l;
-			last = length - 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setContentType("multipart/byteranges; boundary=" + BOUNDARY);
+			contentLength = LAST_BOUNDARY.length();
+			for (Range range : ranges)
+			{
+				contentLength += getPartHeader(range).length() + range.getLength();
+			}
 		}
 
 		response.addHeader("Content-Length", "" + contentLength);
-		
+
 		if (!attachment)
 		{
 			response.addHeader("Content-Disposition", "inline; filename=\"" + fileName + "\";");
@@ -137,40 +328,47 @@ class Streamer
 		{
 			response.addHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\";");
 		}
-		response.addHeader("Accept-Range", "bytes");
 		response.addHeader("Connection", "close");
 
-		InputStream s = null;
+		InputStream s = inputStream;
 
 		try
 		{
-			s = new BufferedInputStream(inputStream);
-
-			s.skip(first);
-
-			final int bufferSize = 1024 * 10;
-			long left = contentLength;
-			while (left > 0)
+			OutputStream out = response.getOutputStream();
+			FileChannel channel = (s instanceof FileInputStream) ? ((FileInputStream)s)
+					.getChannel() : null;
+			boolean multipart = ranges.size() > 1;
+			long position = 0;
+			for (Range range : ranges)
 			{
-				int howMuch = bufferSize;
-				if (howMuch > left)
+				if (multipart)
 				{
-					howMuch = (int) left;
+					out.write(ascii(getPartHeader(range)));
 				}
-
-				byte[] buf = new byte[howMuch];
-				int numRead = s.read(buf);
-
-				response.getOutputStream().write(buf, 0, numRead);
-				response.flushBuffer();
-
-				if (numRead == -1)
+				if (channel != null && out instanceof WritableByteChannel)
 				{
-					break;
+					transfer(channel, range.start, range.getLength(), (WritableByteChannel)out);
 				}
-
-				left -= numRead;
+				else
+				{
+					if (channel != null)
+					{
+						channel.position(range.start);
+					}
+					else
+					{
+						skip(s, range.start - position);
+					}
+					copy(s, range.getLength(), out);
+				}
+				position = range.end + 1;
+			}
+			if (multipart)
+			{
+				out.write(ascii(LAST_BOUNDARY));
 			}
+			// let the container decide when to flush until the content is complete
+			response.flushBuffer();
 		}
 		catch (Exception e)
 		{
@@ -185,16 +383,105 @@ class Streamer
 		}
 		finally
 		{
-			if (s != null)
+			close(s);
+		}
+	}
+
+	private static void close(InputStream s)
+	{
+		if (s != null)
+		{
+			try
+			{
+				s.close();
+			}
+			catch (IOException ignore)
+			{
+			}
+		}
+	}
+	private static void skip(InputStream s, long count) throws IOException
+	{
+		while (count > 0)
+		{
+			long skipped = s.skip(count);
+			if (skipped <= 0)
 			{
-				try
+				// skip is allowed to do nothing, make sure we are not at the end
+				if (s.read() == -1)
 				{
-					s.close();
+					return;
 				}
-				catch (IOException ignore)
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+	private static void transfer(FileChannel channel, long position, long count,
+			WritableByteChannel out) throws IOException
+	{
+		while (count > 0)
+		{
+			long transferred = channel.transferTo(position, count, out);
+			if (transferred <= 0)
+			{
+				break;
+			}
+			position += transferred;
+			count -= transferred;
+		}
+	}
+
+	private static void copy(InputStream s, long count, OutputStream out) throws IOException
+	{
+		byte[] buf = borrowBuffer();
+		try
+		{
+			while (count > 0)
+			{
+				int numRead = s.read(buf, 0, (int)Math.min(buf.length, count));
+				if (numRead == -1)
 				{
+					break;
 				}
+				out.write(buf, 0, numRead);
+				count -= numRead;
 			}
 		}
+		finally
+		{
+			returnBuffer(buf);
+		}
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 16;
+
+	// buffers are large enough to be expensive to allocate for every request
+	private static final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+	private static byte[] borrowBuffer()
+	{
+		byte[] buf = buffers.poll();
+		if (buf != null)
+		{
+			pooledBuffers.decrementAndGet();
+			return buf;
+		}
+		return new byte[BUFFER_SIZE];
+	}
+
+	private static void returnBuffer(byte[] buf)
+	{
+		if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS)
+		{
+			buffers.offer(buf);
+		}
+		else
+		{
+			pooledBuffers.decrementAndGet();
+		}
 	}
 }
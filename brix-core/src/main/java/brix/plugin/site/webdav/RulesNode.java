@@ -15,6 +15,7 @@
 package brix.plugin.site.webdav;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -159,6 +160,12 @@ public class RulesNode extends BrixNode
 			return TYPE.equals(getNodeType(node));
 		}
 
+		@Override
+		public Collection<String> getNodeTypes()
+		{
+			return Collections.singleton(TYPE);
+		}
+
 		@Override
 		public JcrNode wrap(Brix brix, Node node, JcrSession session)
 		{
@@ -17,18 +17,22 @@ package brix.registry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import brix.registry.ExtensionPoint.Multiplicity;
 import brix.registry.ExtensionPointRegistry.Callback.Status;
 
+/**
+ * Registry of extensions. Each extension point maps to an immutable snapshot of its
+ * extensions. Registrations (which are rare) are serialized and publish a new snapshot, lookups
+ * (which happen on every request) take no lock and return the snapshot itself.
+ */
 public class ExtensionPointRegistry
 {
-	private final Map<ExtensionPoint<?>, Collection<?>> registrations = new HashMap<ExtensionPoint<?>, Collection<?>>();
+	private final Map<ExtensionPoint<?>, Collection<?>> registrations = new ConcurrentHashMap<ExtensionPoint<?>, Collection<?>>();
 
 	private final List<Listener> listeners = new ArrayList<Listener>();
 
@@ -83,35 +87,45 @@ public class ExtensionPointRegistry
 
 	public synchronized <T> void register(ExtensionPoint<T> point, T extension)
 	{
-		Collection<T> extensions = get(point);
-		if (extensions == null)
-		{
-			extensions = new LinkedList<T>();
-			registrations.put(point, extensions);
-		}
+		Collection<T> current = get(point);
+		List<T> extensions = new ArrayList<T>();
 
 		final Multiplicity multiplicity = point.getMultiplicity();
 		switch (multiplicity)
 		{
 			case SINGLETON :
-				for (Object removed : extensions)
+				if (current != null)
 				{
-					for (Listener listener : listeners)
+					for (Object removed : current)
 					{
-						listener.unregistered(point, removed);
+						for (Listener listener : listeners)
+						{
+							listener.unregistered(point, removed);
+						}
 					}
 				}
-				extensions.clear();
 				break;
 			case COLLECTION :
+				if (current != null)
+				{
+					extensions.addAll(current);
+				}
 				break;
 
 		}
 
 		extensions.add(extension);
+
+		// publish new snapshot
+		registrations.put(point, Collections.unmodifiableList(extensions));
+
+		for (Listener listener : listeners)
+		{
+			listener.registered(point, extension);
+		}
 	}
 
-	private synchronized <T> Collection<T> lookup(ExtensionPoint<T> point)
+	private <T> Collection<T> lookup(ExtensionPoint<T> point)
 	{
 		Collection<T> extensions = get(point);
 		if (extensions == null)
@@ -120,13 +134,12 @@ public class ExtensionPointRegistry
 		}
 		else
 		{
-			ArrayList<T> copy = new ArrayList<T>(extensions.size());
-			copy.addAll(extensions);
-			return Collections.unmodifiableCollection(copy);
+			// the snapshot is immutable, no need to copy it
+			return extensions;
 		}
 	}
 
-	public synchronized <T> Collection<T> lookupCollection(ExtensionPoint<T> point)
+	public <T> Collection<T> lookupCollection(ExtensionPoint<T> point)
 	{
 		// check multiplicity
 		switch (point.getMultiplicity())
@@ -143,7 +156,7 @@ public class ExtensionPointRegistry
 		return extensions;
 	}
 
-	public synchronized <T> void lookupCollection(ExtensionPoint<T> point, Callback<T> callback)
+	public <T> void lookupCollection(ExtensionPoint<T> point, Callback<T> callback)
 	{
 		Collection<T> extensions = lookupCollection(point);
 		for (T extension : extensions)
@@ -156,7 +169,7 @@ public class ExtensionPointRegistry
 		}
 	}
 
-	public synchronized <T> T lookupSingleton(ExtensionPoint<T> point)
+	public <T> T lookupSingleton(ExtensionPoint<T> point)
 	{
 		// check multiplicity
 		switch (point.getMultiplicity())
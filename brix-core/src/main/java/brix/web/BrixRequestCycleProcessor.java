@@ -23,6 +23,7 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.wicket.IRequestTarget;
 import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.RequestCycle;
+import org.apache.wicket.model.IModel;
 import org.apache.wicket.protocol.http.WebRequest;
 import org.apache.wicket.protocol.http.WebRequestCycle;
 import org.apache.wicket.protocol.http.WebResponse;
@@ -30,6 +31,7 @@ import org.apache.wicket.protocol.https.HttpsConfig;
 import org.apache.wicket.protocol.https.HttpsRequestCycleProcessor;
 import org.apache.wicket.request.IRequestCodingStrategy;
 import org.apache.wicket.request.RequestParameters;
+import org.apache.wicket.request.target.component.listener.IListenerInterfaceRequestTarget;
 import org.apache.wicket.util.string.Strings;
 
 import brix.Brix;
@@ -38,6 +40,8 @@ import brix.config.BrixConfig;
 import brix.jcr.api.JcrSession;
 import brix.jcr.wrapper.BrixNode;
 import brix.plugin.site.SitePlugin;
+import brix.plugin.site.resource.ResourceRequestTarget;
+import brix.web.nodepage.BrixNodePageRequestTarget;
 import brix.workspace.Workspace;
 
 public class BrixRequestCycleProcessor extends HttpsRequestCycleProcessor
@@ -243,6 +247,60 @@ public class BrixRequestCycleProcessor extends HttpsRequestCycleProcessor
         return (workspace != null) ? workspace.getId() : null;
     }
 
+    @Override
+    public IRequestTarget resolve(RequestCycle requestCycle, RequestParameters requestParameters)
+    {
+        IRequestTarget target = super.resolve(requestCycle, requestParameters);
+        if (brix.getConfig().isReadOnlyPresentation() && isReadOnlyTarget(target))
+        {
+            brix.setCurrentRequestReadOnly(true);
+
+            // the type of target is only known after decoding, which loaded the target node
+            // through a writable session; reload it through the read-only one so that the
+            // request doesn't mix writable and read-only wrappers of the node
+            IModel<BrixNode> nodeModel = getNodeModel(target);
+            if (nodeModel != null)
+            {
+                nodeModel.detach();
+            }
+        }
+        return target;
+    }
+
+    private static IModel<BrixNode> getNodeModel(IRequestTarget target)
+    {
+        if (target instanceof BrixNodePageRequestTarget)
+        {
+            return ((BrixNodePageRequestTarget)target).getNodeModel();
+        }
+        else if (target instanceof ResourceRequestTarget)
+        {
+            return ((ResourceRequestTarget)target).getNodeModel();
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the request target only displays content, in which case the rest of the
+     * request uses read-only sessions if {@link BrixConfig#isReadOnlyPresentation()} is enabled.
+     * By default this is true for rendering node pages and for serving resources.
+     * <p>
+     * Nodes loaded while decoding the request are loaded through a writable session. The node
+     * model of node page and resource targets is detached so that the target node is reloaded
+     * read-only; a custom read-only target must not keep other nodes loaded during decoding.
+     * 
+     * @param target
+     * @return
+     */
+    protected boolean isReadOnlyTarget(IRequestTarget target)
+    {
+        if (target instanceof BrixNodePageRequestTarget)
+        {
+            return !(target instanceof IListenerInterfaceRequestTarget);
+        }
+        return target instanceof ResourceRequestTarget;
+    }
+
     @Override
     protected IRequestCodingStrategy newRequestCodingStrategy()
     {
@@ -14,14 +14,23 @@
 
 package brix.web.nodepage;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.wicket.Application;
 import org.apache.wicket.IRequestTarget;
 import org.apache.wicket.Page;
 import org.apache.wicket.RequestCycle;
 import org.apache.wicket.Session;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.protocol.http.WebRequest;
 import org.apache.wicket.protocol.http.WebResponse;
 import org.apache.wicket.request.target.component.IPageRequestTarget;
 
+import brix.Brix;
+import brix.exception.BrixException;
 import brix.jcr.wrapper.BrixNode;
 
 public class BrixNodePageRequestTarget
@@ -50,6 +59,14 @@ public class BrixNodePageRequestTarget
 	}
 
 
+	/**
+	 * @return model of the node the page is rendered for
+	 */
+	public IModel<BrixNode> getNodeModel()
+	{
+		return node;
+	}
+
 	public Page getPage()
 	{
 		if (page == null && pageFactory != null)
@@ -62,7 +79,8 @@ public class BrixNodePageRequestTarget
 
 	public void detach(RequestCycle requestCycle)
 	{
-		if (getPage() != null)
+		// don't construct the page just to detach it when the output came from cache
+		if (!servedFromCache && getPage() != null)
 		{
 			getPage().detach();
 		}
@@ -72,6 +90,26 @@ public class BrixNodePageRequestTarget
 
 	public final void respond(RequestCycle requestCycle)
 	{
+		if (page == null && isOutputCacheable(requestCycle))
+		{
+			PageOutputCache cache = Brix.get().getConfig().getPageOutputCache();
+			Session session = Session.get();
+			String key = cache.getKey(node.getObject(), getPageParameters(), session.getLocale(),
+					session.getStyle());
+			PageOutputCache.Entry entry = cache.get(key);
+			if (entry != null)
+			{
+				respondFromCache(requestCycle, entry);
+				servedFromCache = true;
+				return;
+			}
+			// checking the node walks all its tiles, only do it when the output is going to be
+			// stored; entries are dropped on save so a cached page is known to be cacheable
+			if (cache.isCacheable(node.getObject()))
+			{
+				outputCacheKey = key;
+			}
+		}
 		if (page == null)
 		{
 			page = pageFactory.newPage();
@@ -119,10 +157,132 @@ public class BrixNodePageRequestTarget
 			// can contribute lastmodified dates and we take the latest...
 			// response.setLastModifiedTime(Time.valueOf(node.getObject().getLastModified()));
 
+			if (outputCacheKey != null)
+			{
+				renderPageToCache(requestCycle, response);
+			}
+			else
+			{
+				getPage().renderPage();
+			}
+		}
+	}
+
+	/**
+	 * Cache key of the page output if the output can be cached, <code>null</code> otherwise
+	 */
+	private String outputCacheKey = null;
+
+	private boolean servedFromCache = false;
+
+	/**
+	 * Returns whether the page output can be looked up in the {@link PageOutputCache}. Only
+	 * newly constructed pages requested by GET from visitors without session are cached,
+	 * listener invocations are never cached. Whether the node itself is cacheable is checked
+	 * separately on cache miss.
+	 * 
+	 * @param requestCycle
+	 * @return
+	 */
+	private boolean isOutputCacheable(RequestCycle requestCycle)
+	{
+		PageOutputCache cache = Brix.get().getConfig().getPageOutputCache();
+		if (cache == null || pageFactory == null || this instanceof BrixNodePageListenerRequestTarget)
+		{
+			return false;
+		}
+		if (Session.exists() && !Session.get().isTemporary())
+		{
+			return false;
+		}
+		HttpServletRequest request = ((WebRequest)requestCycle.getRequest())
+				.getHttpServletRequest();
+		return "GET".equals(request.getMethod());
+	}
+
+	private void respondFromCache(RequestCycle requestCycle, PageOutputCache.Entry entry)
+	{
+		WebResponse response = (WebResponse)requestCycle.getResponse();
+		response.setCharacterEncoding(entry.encoding);
+		response.setContentType(entry.contentType);
+		response.setContentLength(entry.content.length);
+		try
+		{
+			response.getOutputStream().write(entry.content);
+		}
+		catch (IOException e)
+		{
+			throw new BrixException(e);
+		}
+	}
+
+	/**
+	 * Renders the page to a buffer, writes it to the response and stores it in the
+	 * {@link PageOutputCache} if the page turned out to be stateless.
+	 * 
+	 * @param requestCycle
+	 * @param response
+	 */
+	private void renderPageToCache(RequestCycle requestCycle, WebResponse response)
+	{
+		final long start = System.currentTimeMillis();
+		CapturingWebResponse capture = new CapturingWebResponse(response);
+		requestCycle.setResponse(capture);
+		try
+		{
 			getPage().renderPage();
 		}
+		finally
+		{
+			requestCycle.setResponse(response);
+		}
+		String output = capture.getOutput();
+		response.write(output);
+
+		boolean temporarySession = !Session.exists() || Session.get().isTemporary();
+		if (!capture.isRedirect() && getPage().isPageStateless() && temporarySession)
+		{
+			String encoding = Application.get().getRequestCycleSettings()
+					.getResponseRequestEncoding();
+			try
+			{
+				byte[] content = output.getBytes(encoding);
+				String workspace = node.getObject().getSession().getWorkspace().getName();
+				PageOutputCache.Entry entry = new PageOutputCache.Entry(workspace, content,
+						"text/html; charset=" + encoding, encoding);
+				Brix.get().getConfig().getPageOutputCache().put(outputCacheKey, entry, start);
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				throw new BrixException(e);
+			}
+		}
 	}
 
+	/**
+	 * Web response that passes headers to the real response but collects the written markup.
+	 */
+	private static class CapturingWebResponse extends WebResponse
+	{
+		private final StringBuilder output = new StringBuilder();
+
+		public CapturingWebResponse(WebResponse original)
+		{
+			super(original.getHttpServletResponse());
+		}
+
+		@Override
+		public void write(CharSequence string)
+		{
+			output.append(string);
+		}
+
+		public String getOutput()
+		{
+			return output.toString();
+		}
+	};
+
 
 	public static interface PageFactory
 	{
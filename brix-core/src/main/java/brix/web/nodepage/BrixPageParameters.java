@@ -341,6 +341,49 @@ public class BrixPageParameters implements Serializable
         return true;
     }
 
+    /**
+     * Returns string representation of the parameters that doesn't depend on the order of query
+     * parameters with different names. Unlike {@link #equals(Object)}, repeated values of a query
+     * parameter are kept in their order. Every name and value is length-prefixed so that different
+     * parameters never produce the same string and the result can be used as (part of) cache key.
+     * 
+     * @return
+     */
+    public String toNormalizedString()
+    {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < getIndexedParamsCount(); ++i)
+        {
+            result.append('/');
+            appendNormalized(result, indexedParameters.get(i));
+        }
+        result.append('?');
+        // query parameter keys are sorted
+        for (String name : getQueryParamKeys())
+        {
+            for (StringValue value : getQueryParams(name))
+            {
+                appendNormalized(result, name);
+                result.append('=');
+                appendNormalized(result, value.toString());
+                result.append('&');
+            }
+        }
+        return result.toString();
+    }
+
+    private static void appendNormalized(StringBuilder builder, String value)
+    {
+        if (value != null)
+        {
+            builder.append(value.length()).append(':').append(value);
+        }
+        else
+        {
+            builder.append("-1:");
+        }
+    }
+
     static BrixNodeWebPage getCurrentPage()
     {
         IRequestTarget target = RequestCycle.get().getRequestTarget();
@@ -0,0 +1,357 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.web.nodepage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import brix.jcr.base.EventUtil;
+import brix.jcr.base.SaveEvent;
+import brix.jcr.base.SaveEventListener;
+import brix.jcr.wrapper.BrixNode;
+
+/**
+ * Cache of rendered output of anonymous stateless {@link BrixNodeWebPage}s. The entries are
+ * keyed by workspace, session locale and style, node and normalized {@link BrixPageParameters}
+ * and contain the encoded page output that can be written to response without constructing and
+ * rendering the page.
+ * <p>
+ * Only nodes that implement {@link PageOutputCacheable} and return <code>true</code> from
+ * {@link PageOutputCacheable#isPageOutputCacheable()} are cached. Because the output of a page
+ * can depend on any node of the workspace (templates, tiles, menus, global container), all
+ * entries of a workspace are dropped whenever a node in that workspace is saved.
+ * <p>
+ * The cache is disabled unless set with {@link brix.config.BrixConfig#setPageOutputCache(PageOutputCache)}.
+ * 
+ * @see BrixNodePageRequestTarget
+ */
+public class PageOutputCache
+{
+	/**
+	 * Default maximal amount of bytes retained by cached pages
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 16L * 1024L * 1024L;
+
+	/**
+	 * Default maximal number of cached pages
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	/**
+	 * Default period (in milliseconds) after a save during which rendered pages are not cached.
+	 */
+	public static final long DEFAULT_QUIET_PERIOD = 30000L;
+
+	public PageOutputCache()
+	{
+		this(DEFAULT_MAX_WEIGHT, DEFAULT_MAX_ENTRIES);
+	}
+
+	public PageOutputCache(long maxWeight, int maxEntries)
+	{
+		if (maxWeight <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxWeight' must be greater than 0.");
+		}
+		if (maxEntries <= 0)
+		{
+			throw new IllegalArgumentException("Argument 'maxEntries' must be greater than 0.");
+		}
+		this.maxWeight = maxWeight;
+		this.maxEntries = maxEntries;
+		EventUtil.registerSaveEventListener(saveEventListener);
+	}
+
+	/**
+	 * Unregisters the save event listener and drops all entries. The cache must not be used
+	 * afterwards. Called by {@link brix.config.BrixConfig#setPageOutputCache(PageOutputCache)}
+	 * when the cache is replaced.
+	 */
+	public void destroy()
+	{
+		EventUtil.unregisterSaveEventListener(saveEventListener);
+		clear();
+	}
+
+	/**
+	 * Cached page output
+	 */
+	static final class Entry
+	{
+		final String workspace;
+
+		final byte[] content;
+
+		final String contentType;
+
+		final String encoding;
+
+		public Entry(String workspace, byte[] content, String contentType, String encoding)
+		{
+			this.workspace = workspace;
+			this.content = content;
+			this.contentType = contentType;
+			this.encoding = encoding;
+		}
+	};
+
+	/**
+	 * Returns true if output of the page for given node can be cached.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public boolean isCacheable(BrixNode node)
+	{
+		return node instanceof PageOutputCacheable &&
+				((PageOutputCacheable) node).isPageOutputCacheable();
+	}
+
+	/**
+	 * Builds the cache key for given node, page parameters, locale and style. Query parameters
+	 * are sorted so that their order in the URL doesn't matter.
+	 * 
+	 * @param node
+	 * @param parameters
+	 * @param locale
+	 *            locale of the session, may be <code>null</code>
+	 * @param style
+	 *            style of the session, may be <code>null</code>
+	 * @return
+	 */
+	String getKey(BrixNode node, BrixPageParameters parameters, Locale locale, String style)
+	{
+		StringBuilder key = new StringBuilder();
+		key.append(node.getSession().getWorkspace().getName());
+		key.append('-');
+		key.append(locale);
+		key.append('-');
+		key.append(style);
+		key.append('-');
+		if (node.isNodeType("mix:referenceable"))
+		{
+			key.append(node.getUUID());
+		}
+		else
+		{
+			key.append(node.getPath());
+		}
+		if (parameters != null)
+		{
+			key.append(parameters.toNormalizedString());
+		}
+		return key.toString();
+	}
+
+	Entry get(String key)
+	{
+		Entry entry;
+		synchronized (map)
+		{
+			entry = map.get(key);
+		}
+		if (entry != null)
+		{
+			hitCount.incrementAndGet();
+		}
+		else
+		{
+			missCount.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores the entry unless a node has been saved recently. The save event is raised before
+	 * the data is persisted so pages rendered shortly after a save might contain old content.
+	 * 
+	 * @param key
+	 * @param entry
+	 * @param renderStart
+	 *            time when the rendering of the page started
+	 */
+	void put(String key, Entry entry, long renderStart)
+	{
+		synchronized (map)
+		{
+			if (renderStart - lastInvalidationTime < quietPeriod)
+			{
+				return;
+			}
+			Entry old = map.put(key, entry);
+			if (old != null)
+			{
+				weight -= old.content.length;
+			}
+			weight += entry.content.length;
+
+			Iterator<Entry> i = map.values().iterator();
+			while ((weight > maxWeight || map.size() > maxEntries) && i.hasNext())
+			{
+				Entry e = i.next();
+				if (e != entry)
+				{
+					i.remove();
+					weight -= e.content.length;
+					evictionCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all pages of the given workspace from cache.
+	 * 
+	 * @param workspace
+	 */
+	public void invalidate(String workspace)
+	{
+		synchronized (map)
+		{
+			lastInvalidationTime = System.currentTimeMillis();
+			Iterator<Entry> i = map.values().iterator();
+			while (i.hasNext())
+			{
+				Entry e = i.next();
+				if (e.workspace.equals(workspace))
+				{
+					i.remove();
+					weight -= e.content.length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear()
+	{
+		synchronized (map)
+		{
+			map.clear();
+			weight = 0;
+		}
+	}
+
+	public void setQuietPeriod(long quietPeriod)
+	{
+		this.quietPeriod = quietPeriod;
+	}
+
+	public long getQuietPeriod()
+	{
+		return quietPeriod;
+	}
+
+	/**
+	 * @return number of cached pages
+	 */
+	public int getSize()
+	{
+		synchronized (map)
+		{
+			return map.size();
+		}
+	}
+
+	/**
+	 * @return number of bytes retained by cached pages
+	 */
+	public long getWeight()
+	{
+		synchronized (map)
+		{
+			return weight;
+		}
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PageOutputCache[size=" + getSize() + ", weight=" + getWeight() + ", hits=" +
+				getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() +
+				"]";
+	}
+
+	private final SaveEventListener saveEventListener = new InvalidatingSaveEventListener();
+
+	private class InvalidatingSaveEventListener implements SaveEventListener
+	{
+		public void onEvent(EventIterator events)
+		{
+			while (events.hasNext())
+			{
+				Event event = events.nextEvent();
+				if (event instanceof SaveEvent)
+				{
+					invalidate(((SaveEvent) event).getNode().getSession().getWorkspace().getName());
+				}
+			}
+		}
+	};
+
+	// access ordered so that iteration starts with least recently used entry
+	private final Map<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	// guarded by map
+	private long weight = 0;
+
+	// guarded by map
+	private long lastInvalidationTime = 0;
+
+	private volatile long quietPeriod = DEFAULT_QUIET_PERIOD;
+
+	private final long maxWeight;
+
+	private final int maxEntries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+}
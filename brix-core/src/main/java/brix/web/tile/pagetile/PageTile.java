@@ -26,10 +26,10 @@ import brix.Path;
 import brix.jcr.api.JcrNode;
 import brix.jcr.wrapper.BrixNode;
 import brix.plugin.site.page.AbstractContainer;
-import brix.plugin.site.page.tile.Tile;
+import brix.plugin.site.page.tile.StatelessTile;
 import brix.plugin.site.page.tile.admin.TileEditorPanel;
 
-public class PageTile implements Tile
+public class PageTile implements StatelessTile
 {
     public static String TYPE_NAME = PageTile.class.getName();
 
@@ -0,0 +1,278 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.jackrabbit.api.JackrabbitRepository;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledSessionFactoryTest
+{
+	private static final String WORKSPACE = "default";
+
+	private Repository repo;
+	private PooledSessionFactory factory;
+
+	private File home;
+
+	private static void delete(File file)
+	{
+		if (!file.exists())
+		{
+			return;
+		}
+		if (file.isDirectory())
+		{
+			for (File child : file.listFiles())
+			{
+				delete(child);
+			}
+		}
+		if (!file.delete())
+		{
+			throw new RuntimeException("Could not delete file: " + file.getAbsolutePath());
+		}
+	}
+
+	@Before
+	public void setupFactory() throws IOException, RepositoryException
+	{
+		String temp = System.getProperty("java.io.tmpdir");
+		home = new File(temp, getClass().getName());
+		delete(home);
+		home.deleteOnExit();
+
+		if (!home.mkdirs())
+		{
+			throw new RuntimeException("Could not create directory: " + home.getAbsolutePath());
+		}
+
+		InputStream configStream = getClass().getResourceAsStream("repository.xml");
+		RepositoryConfig config = RepositoryConfig.create(configStream, home.getAbsolutePath());
+		repo = RepositoryImpl.create(config);
+
+		factory = new PooledSessionFactory(repo, new SimpleCredentials("admin", "admin"
+			.toCharArray()));
+	}
+
+	@After
+	public void cleanup()
+	{
+		factory.cleanup();
+		factory.close();
+		((JackrabbitRepository)repo).shutdown();
+		delete(home);
+	}
+
+	/**
+	 * Borrows a session on another thread, optionally returning it before the thread ends.
+	 */
+	private Session borrowInOtherThread(final boolean giveBack) throws InterruptedException
+	{
+		final Session[] result = new Session[1];
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				result[0] = factory.getCurrentSession(WORKSPACE);
+				if (giveBack)
+				{
+					factory.cleanup();
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		return result[0];
+	}
+
+	@Test
+	public void reuseAfterCleanup() throws RepositoryException
+	{
+		Session session = factory.getCurrentSession(WORKSPACE);
+		assertSame(session, factory.getCurrentSession(WORKSPACE));
+		assertEquals(1, factory.getBorrowedCount(WORKSPACE));
+
+		session.getRootNode().addNode("unsaved");
+		factory.cleanup();
+		assertEquals(0, factory.getBorrowedCount(WORKSPACE));
+		assertEquals(1, factory.getIdleCount(WORKSPACE));
+
+		// the same session is handed out again, without the unsaved changes
+		Session reused = factory.getCurrentSession(WORKSPACE);
+		assertSame(session, reused);
+		assertTrue(reused.isLive());
+		assertFalse(reused.getRootNode().hasNode("unsaved"));
+	}
+
+	@Test
+	public void maxActiveTimeout() throws InterruptedException
+	{
+		factory.setMaxActive(1);
+		factory.setMaxWait(100);
+		factory.getCurrentSession(WORKSPACE);
+
+		final Exception[] error = new Exception[1];
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					factory.getCurrentSession(WORKSPACE);
+				}
+				catch (CannotOpenJcrSessionException e)
+				{
+					error[0] = e;
+				}
+			}
+		};
+		long start = System.currentTimeMillis();
+		thread.start();
+		thread.join();
+
+		assertTrue(error[0] instanceof CannotOpenJcrSessionException);
+		assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+
+	@Test
+	public void maxActiveWait() throws InterruptedException
+	{
+		factory.setMaxActive(1);
+		factory.setMaxWait(10000);
+		Session session = factory.getCurrentSession(WORKSPACE);
+
+		final Session[] result = new Session[1];
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				result[0] = factory.getCurrentSession(WORKSPACE);
+				factory.cleanup();
+			}
+		};
+		thread.start();
+		Thread.sleep(100);
+		assertTrue(thread.isAlive());
+
+		// returning the session wakes up the waiting thread
+		factory.cleanup();
+		thread.join(10000);
+		assertSame(session, result[0]);
+	}
+
+	@Test
+	public void maxIdle() throws InterruptedException
+	{
+		factory.setMaxIdle(1);
+		Session session = factory.getCurrentSession(WORKSPACE);
+		Session other = borrowInOtherThread(true);
+		assertNotSame(session, other);
+		assertEquals(1, factory.getIdleCount(WORKSPACE));
+
+		// the pool is full, the session is logged out
+		factory.cleanup();
+		assertEquals(1, factory.getIdleCount(WORKSPACE));
+		assertFalse(session.isLive());
+		assertTrue(other.isLive());
+	}
+
+	@Test
+	public void evict() throws InterruptedException
+	{
+		factory.setIdleTimeout(50);
+		Session session = factory.getCurrentSession(WORKSPACE);
+		factory.cleanup();
+		assertEquals(1, factory.getIdleCount(WORKSPACE));
+
+		Thread.sleep(100);
+		factory.evict();
+		assertEquals(0, factory.getIdleCount(WORKSPACE));
+		assertFalse(session.isLive());
+
+		// idle sessions are logged in up to minIdle, regardless of the timeout
+		factory.setMinIdle(2);
+		factory.evict();
+		assertEquals(2, factory.getIdleCount(WORKSPACE));
+		Thread.sleep(100);
+		factory.evict();
+		assertEquals(2, factory.getIdleCount(WORKSPACE));
+	}
+
+	@Test
+	public void evictBehindNewSession() throws InterruptedException
+	{
+		factory.setIdleTimeout(200);
+		Session session = factory.getCurrentSession(WORKSPACE);
+		Session other = borrowInOtherThread(true);
+		factory.cleanup();
+		assertEquals(2, factory.getIdleCount(WORKSPACE));
+
+		Thread.sleep(100);
+		factory.setMinIdle(3);
+		factory.evict();
+		assertEquals(3, factory.getIdleCount(WORKSPACE));
+
+		// the sessions returned before the one logged in by evict() expire
+		Thread.sleep(150);
+		factory.setMinIdle(1);
+		factory.evict();
+		assertEquals(1, factory.getIdleCount(WORKSPACE));
+		assertFalse(session.isLive());
+		assertFalse(other.isLive());
+	}
+
+	@Test
+	public void discardDeadSession() throws InterruptedException
+	{
+		// dead borrowed session
+		Session session = factory.getCurrentSession(WORKSPACE);
+		session.logout();
+		Session replacement = factory.getCurrentSession(WORKSPACE);
+		assertNotSame(session, replacement);
+		assertTrue(replacement.isLive());
+		assertEquals(1, factory.getBorrowedCount(WORKSPACE));
+
+		// dead idle session
+		factory.cleanup();
+		replacement.logout();
+		Session other = borrowInOtherThread(false);
+		assertNotSame(replacement, other);
+		assertTrue(other.isLive());
+		assertEquals(0, factory.getIdleCount(WORKSPACE));
+		other.logout();
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page;
+
+import org.htmlparser.Node;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.util.ParserException;
+
+/**
+ * Compares the throughput of {@link MarkupLexer} with the htmlparser {@link Lexer} previously
+ * used by {@link PageMarkupSource}. Run the main method; it is not a unit test.
+ */
+public class MarkupLexerBenchmark
+{
+    private static String createMarkup(int tags)
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\">\n");
+        b.append("<html><head><title>Benchmark</title></head><body>\n");
+        for (int i = 0; i < tags; ++i)
+        {
+            b.append("<div class=\"item\" id=\"item").append(i).append("\">");
+            b.append("<!-- item ").append(i).append(" -->");
+            b.append("<a href=\"/page/").append(i).append("\" title='Item'>Some text &amp; more</a>");
+            b.append("<br/>");
+            if (i % 200 == 0)
+            {
+                b.append("<brix:tile id=\"tile").append(i).append("\"/>");
+            }
+            b.append("</div>\n");
+        }
+        b.append("</body></html>");
+        return b.toString();
+    }
+
+    private static long htmlParser(String markup) throws ParserException
+    {
+        long sum = 0;
+        Lexer lexer = new Lexer(markup);
+        Node node;
+        while ((node = lexer.nextNode()) != null)
+        {
+            if (node instanceof org.htmlparser.Tag)
+            {
+                sum += ((org.htmlparser.Tag)node).getAttributesEx().size();
+            }
+            else
+            {
+                sum += node.toHtml().length();
+            }
+        }
+        return sum;
+    }
+
+    private static long markupLexer(String markup)
+    {
+        long sum = 0;
+        MarkupLexer lexer = new MarkupLexer(markup);
+        MarkupLexer.Token token;
+        while ((token = lexer.next()) != null)
+        {
+            if (token == MarkupLexer.Token.TAG)
+            {
+                sum += lexer.getTagName().length();
+                sum += lexer.getAttributes().size();
+            }
+            else
+            {
+                sum += lexer.getText().length();
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        final String markup = createMarkup(2000);
+        final int iterations = 200;
+
+        // the sum is printed so that the JIT can not eliminate the calls
+        long sum = 0;
+        for (int round = 0; round < 3; ++round)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i)
+            {
+                sum += htmlParser(markup);
+            }
+            long htmlParserTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i)
+            {
+                sum += markupLexer(markup);
+            }
+            long lexerTime = System.nanoTime() - start;
+
+            System.out.println("round " + round + ": htmlparser " +
+                (htmlParserTime / iterations / 1000) + "us/page, MarkupLexer " +
+                (lexerTime / iterations / 1000) + "us/page");
+        }
+        System.out.println("(" + sum + ")");
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import brix.markup.tag.Tag;
+import brix.plugin.site.page.MarkupLexer.Token;
+
+public class MarkupLexerTest
+{
+    private void assertTag(MarkupLexer lexer, String name, Tag.Type type)
+    {
+        assertEquals(Token.TAG, lexer.next());
+        assertEquals(name, lexer.getTagName());
+        assertEquals(type, lexer.getTagType());
+    }
+
+    private void assertText(MarkupLexer lexer, Token token, String text)
+    {
+        assertEquals(token, lexer.next());
+        assertEquals(text, lexer.getText());
+    }
+
+    @Test
+    public void textCommentsAndTags()
+    {
+        MarkupLexer lexer = new MarkupLexer("<!DOCTYPE html><HTML><!-- c -->a &amp; b</html>");
+        assertText(lexer, Token.DOCTYPE, "<!DOCTYPE html>");
+        assertTag(lexer, "html", Tag.Type.OPEN);
+        assertText(lexer, Token.COMMENT, " c ");
+        assertText(lexer, Token.TEXT, "a &amp; b");
+        assertTag(lexer, "html", Tag.Type.CLOSE);
+        assertNull(lexer.next());
+    }
+
+    @Test
+    public void attributes()
+    {
+        MarkupLexer lexer = new MarkupLexer("<div class=\"a b\" id='x' disabled data=z title=\"a>b\">");
+        assertTag(lexer, "div", Tag.Type.OPEN);
+        Map<String, String> attributes = lexer.getAttributes();
+        assertEquals(5, attributes.size());
+        assertEquals("a b", attributes.get("class"));
+        assertEquals("x", attributes.get("id"));
+        assertTrue(attributes.containsKey("disabled"));
+        assertNull(attributes.get("disabled"));
+        assertEquals("z", attributes.get("data"));
+        assertEquals("a>b", attributes.get("title"));
+        assertNull(lexer.next());
+    }
+
+    @Test
+    public void openCloseTags()
+    {
+        MarkupLexer lexer = new MarkupLexer("<br/><brix:tile id=\"t\" /><a href=foo/>");
+        assertTag(lexer, "br", Tag.Type.OPEN_CLOSE);
+        assertTag(lexer, "brix:tile", Tag.Type.OPEN_CLOSE);
+        assertEquals("t", lexer.getAttributes().get("id"));
+        assertTag(lexer, "a", Tag.Type.OPEN_CLOSE);
+        assertEquals("foo", lexer.getAttributes().get("href"));
+        assertNull(lexer.next());
+    }
+
+    @Test
+    public void scriptContentIsText()
+    {
+        MarkupLexer lexer = new MarkupLexer("<script>if (a<b) x='<div>';</script>");
+        assertTag(lexer, "script", Tag.Type.OPEN);
+        assertText(lexer, Token.TEXT, "if (a<b) x='<div>';");
+        assertTag(lexer, "script", Tag.Type.CLOSE);
+        assertNull(lexer.next());
+    }
+
+    @Test
+    public void incompleteMarkupIsText()
+    {
+        MarkupLexer lexer = new MarkupLexer("a < b <?xml x?><div");
+        assertText(lexer, Token.TEXT, "a < b <?xml x?>");
+        assertText(lexer, Token.TEXT, "<div");
+        assertNull(lexer.next());
+    }
+}
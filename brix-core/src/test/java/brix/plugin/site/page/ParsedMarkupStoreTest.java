@@ -0,0 +1,161 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import brix.markup.tag.Item;
+import brix.markup.tag.Tag;
+import brix.markup.tag.simple.SimpleComment;
+import brix.markup.tag.simple.SimpleTag;
+import brix.markup.tag.simple.SimpleText;
+
+public class ParsedMarkupStoreTest
+{
+    private File directory;
+
+    private ParsedMarkupStore store;
+
+    @Before
+    public void createStore() throws Exception
+    {
+        directory = File.createTempFile("brix-markup", "");
+        directory.delete();
+        store = new ParsedMarkupStore(directory);
+    }
+
+    @After
+    public void deleteStore()
+    {
+        store.clear();
+        directory.delete();
+    }
+
+    private List<Item> createItems()
+    {
+        List<Item> items = new ArrayList<Item>();
+        items.add(new PageMarkupSource.Doctype("<!DOCTYPE html>"));
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("class", "a");
+        attributes.put("disabled", null);
+        items.add(new SimpleTag("div", Tag.Type.OPEN, attributes));
+        items.add(new SimpleText("text \u00e1"));
+        items.add(new SimpleComment(" comment "));
+        Map<String, String> empty = Collections.emptyMap();
+        items.add(new SimpleTag("div", Tag.Type.CLOSE, empty));
+        return items;
+    }
+
+    @Test
+    public void storeAndLoad()
+    {
+        store.store("ws", "/brix:root/page", 10, createItems());
+
+        List<Item> items = store.load("ws", "/brix:root/page", 10);
+        assertEquals(5, items.size());
+        assertEquals("<!DOCTYPE html>", ((PageMarkupSource.Doctype)items.get(0)).html);
+
+        SimpleTag open = (SimpleTag)items.get(1);
+        assertEquals("div", open.getName());
+        assertEquals(Tag.Type.OPEN, open.getType());
+        assertEquals("a", open.getAttributeMap().get("class"));
+        assertTrue(open.getAttributeMap().containsKey("disabled"));
+
+        assertEquals("text \u00e1", ((SimpleText)items.get(2)).getText());
+        assertEquals(" comment ", ((SimpleComment)items.get(3)).getText());
+        assertEquals(Tag.Type.CLOSE, ((SimpleTag)items.get(4)).getType());
+    }
+
+    @Test
+    public void outdatedEntry()
+    {
+        store.store("ws", "/brix:root/page", 10, createItems());
+        assertNull(store.load("ws", "/brix:root/page", 11));
+        assertNull(store.load("ws2", "/brix:root/page", 10));
+        assertNull(store.load("ws", "/brix:root/other", 10));
+    }
+
+    @Test
+    public void corruptedEntry() throws Exception
+    {
+        store.store("ws", "/brix:root/page", 10, createItems());
+        File file = directory.listFiles()[0];
+        byte[] content = readFile(file);
+
+        // truncated file is deleted
+        writeFile(file, content, content.length / 2);
+        assertNull(store.load("ws", "/brix:root/page", 10));
+        assertFalse(file.exists());
+
+        // damaged lengths, counts or types must not make the load fail
+        byte[] values = new byte[] { (byte)0x7f, (byte)0xff };
+        for (int i = 0; i < content.length; ++i)
+        {
+            for (byte value : values)
+            {
+                byte[] damaged = content.clone();
+                damaged[i] = value;
+                writeFile(file, damaged, damaged.length);
+                store.load("ws", "/brix:root/page", 10);
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException
+    {
+        byte[] content = new byte[(int)file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            in.readFully(content);
+        }
+        finally
+        {
+            in.close();
+        }
+        return content;
+    }
+
+    private static void writeFile(File file, byte[] content, int length) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content, 0, length);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.page.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileFragmentCacheTest
+{
+    private static final String KEY = "ws/brix:root/page/tiles/time-en";
+
+    private static final String NODE = "ws/brix:root/page/tiles/time";
+
+    private TileFragmentCache cache;
+
+    @Before
+    public void createCache()
+    {
+        cache = new TileFragmentCache();
+        cache.setQuietPeriod(0);
+    }
+
+    @After
+    public void destroyCache()
+    {
+        cache.destroy();
+    }
+
+    private void put(String markup, long expiresAt)
+    {
+        cache.put(KEY, new TileFragmentCache.Entry(NODE, markup, expiresAt), cache
+            .getInvalidationCount(), System.currentTimeMillis());
+    }
+
+    @Test
+    public void hit()
+    {
+        put("<span>10:00</span>", 0);
+
+        TileFragmentCache.Entry entry = cache.get(KEY);
+        assertEquals("<span>10:00</span>", entry.getMarkup());
+        assertEquals(1, cache.getHitCount());
+        assertTrue(cache.isCurrent(KEY, "<span>10:00</span>"));
+    }
+
+    @Test
+    public void expiry() throws Exception
+    {
+        put("<span>10:00</span>", System.currentTimeMillis() + 50);
+        assertTrue(cache.isCurrent(KEY, "<span>10:00</span>"));
+
+        Thread.sleep(100);
+
+        // the component serving the fragment must be replaced
+        assertFalse(cache.isCurrent(KEY, "<span>10:00</span>"));
+        assertNull(cache.get(KEY));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidation()
+    {
+        put("<span>10:00</span>", 0);
+
+        cache.invalidate("ws", "/brix:root/page/tiles/other");
+        assertTrue(cache.isCurrent(KEY, "<span>10:00</span>"));
+
+        // saving the tile container invalidates its tiles
+        cache.invalidate("ws", "/brix:root/page");
+        assertFalse(cache.isCurrent(KEY, "<span>10:00</span>"));
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void replaced()
+    {
+        put("<span>10:00</span>", 0);
+        put("<span>10:01</span>", 0);
+
+        assertFalse(cache.isCurrent(KEY, "<span>10:00</span>"));
+        assertTrue(cache.isCurrent(KEY, "<span>10:01</span>"));
+    }
+
+    @Test
+    public void notStoredAfterInvalidation()
+    {
+        long invalidations = cache.getInvalidationCount();
+        cache.invalidate("ws", "/brix:root/page");
+
+        // the viewer was created before the save, its output might be stale
+        cache.put(KEY, new TileFragmentCache.Entry(NODE, "<span>10:00</span>", 0), invalidations,
+            System.currentTimeMillis());
+        assertNull(cache.get(KEY));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.plugin.site.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class StreamerTest
+{
+    private static final byte[] DATA = "0123456789abcdefghij".getBytes();
+
+    private final Map<String, String> requestHeaders = new HashMap<String, String>();
+    private final Map<String, Object> responseHeaders = new HashMap<String, Object>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private String stream(String entityTag)
+    {
+        HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class[] { HttpServletRequest.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        if (method.getName().equals("getDateHeader"))
+                        {
+                            return -1L;
+                        }
+                        return requestHeaders.get(args[0]);
+                    }
+                });
+        final ServletOutputStream out = new ServletOutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                body.write(b);
+            }
+        };
+        HttpServletResponse response = (HttpServletResponse)Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class[] { HttpServletResponse.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        String name = method.getName();
+                        if (name.equals("getOutputStream"))
+                        {
+                            return out;
+                        }
+                        else if (name.equals("setStatus"))
+                        {
+                            responseHeaders.put("status", args[0]);
+                        }
+                        else if (name.endsWith("Header") || name.equals("setContentType"))
+                        {
+                            responseHeaders.put(args.length > 1 ? (String)args[0] : name,
+                                    args[args.length - 1]);
+                        }
+                        return null;
+                    }
+                });
+        new Streamer(DATA.length, new ByteArrayInputStream(DATA), "file", "text/plain",
+                entityTag, null, false, request, response).stream();
+        return new String(body.toByteArray());
+    }
+
+    @Test
+    public void parseRanges()
+    {
+        assertNull(Streamer.parseRanges(null, 100));
+        assertNull(Streamer.parseRanges("bytes=5-2", 100));
+        assertNull(Streamer.parseRanges("items=0-1", 100));
+
+        List<Streamer.Range> ranges = Streamer.parseRanges("bytes=90-, -5, 0-9, 5-19", 100);
+        assertEquals("[0-19, 90-99]", ranges.toString());
+
+        assertTrue(Streamer.parseRanges("bytes=100-", 100).isEmpty());
+    }
+
+    @Test
+    public void singleRange()
+    {
+        requestHeaders.put("Range", "bytes=2-4");
+        assertEquals("234", stream("\"tag\""));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, responseHeaders.get("status"));
+        assertEquals("bytes 2-4/20", responseHeaders.get("Content-Range"));
+    }
+
+    @Test
+    public void multipleRanges()
+    {
+        requestHeaders.put("Range", "bytes=15-,0-1");
+        String result = stream("\"tag\"");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, responseHeaders.get("status"));
+        assertTrue(((String)responseHeaders.get("setContentType"))
+                .startsWith("multipart/byteranges"));
+        assertEquals(String.valueOf(result.length()), responseHeaders.get("Content-Length"));
+        assertTrue(result.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+        assertTrue(result.contains("Content-Range: bytes 15-19/20\r\n\r\nfghij\r\n"));
+    }
+
+    @Test
+    public void ifRange()
+    {
+        requestHeaders.put("Range", "bytes=2-4");
+        requestHeaders.put("If-Range", "\"other\"");
+        assertEquals(new String(DATA), stream("\"tag\""));
+        assertEquals(HttpServletResponse.SC_OK, responseHeaders.get("status"));
+    }
+
+    @Test
+    public void unsatisfiableRange()
+    {
+        requestHeaders.put("Range", "bytes=50-60");
+        assertEquals("", stream("\"tag\""));
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, responseHeaders
+                .get("status"));
+        assertEquals("bytes */20", responseHeaders.get("Content-Range"));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import brix.registry.ExtensionPoint.Multiplicity;
+
+public class ExtensionPointRegistryTest
+{
+    private static ExtensionPoint<String> newPoint(final Multiplicity multiplicity)
+    {
+        return new ExtensionPoint<String>()
+        {
+            public Multiplicity getMultiplicity()
+            {
+                return multiplicity;
+            }
+
+            public String getUuid()
+            {
+                return "test-" + multiplicity;
+            }
+        };
+    }
+
+    @Test
+    public void collectionSnapshot()
+    {
+        ExtensionPointRegistry registry = new ExtensionPointRegistry();
+        ExtensionPoint<String> point = newPoint(Multiplicity.COLLECTION);
+
+        assertTrue(registry.lookupCollection(point).isEmpty());
+
+        registry.register(point, "a");
+        Collection<String> first = registry.lookupCollection(point);
+        assertSame(first, registry.lookupCollection(point));
+
+        registry.register(point, "b");
+        Collection<String> second = registry.lookupCollection(point);
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertEquals("b", new ArrayList<String>(second).get(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsImmutable()
+    {
+        ExtensionPointRegistry registry = new ExtensionPointRegistry();
+        ExtensionPoint<String> point = newPoint(Multiplicity.COLLECTION);
+        registry.register(point, "a");
+        registry.lookupCollection(point).add("b");
+    }
+
+    @Test
+    public void singletonReplacement()
+    {
+        ExtensionPointRegistry registry = new ExtensionPointRegistry();
+        ExtensionPoint<String> point = newPoint(Multiplicity.SINGLETON);
+        final List<String> events = new ArrayList<String>();
+        registry.register(new ExtensionPointRegistry.Listener()
+        {
+            public void registered(ExtensionPoint<?> point, Object extension)
+            {
+                events.add("+" + extension);
+            }
+
+            public void unregistered(ExtensionPoint<?> point, Object extension)
+            {
+                events.add("-" + extension);
+            }
+        }, true);
+
+        assertNull(registry.lookupSingleton(point));
+        registry.register(point, "a");
+        registry.register(point, "b");
+        assertEquals("b", registry.lookupSingleton(point));
+        assertEquals("[+a, -a, +b]", events.toString());
+    }
+}
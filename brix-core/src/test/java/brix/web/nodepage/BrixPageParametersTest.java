@@ -0,0 +1,74 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.web.nodepage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class BrixPageParametersTest
+{
+    private static String key(BrixPageParameters parameters)
+    {
+        return parameters.toNormalizedString();
+    }
+
+    private static BrixPageParameters indexed(String... values)
+    {
+        BrixPageParameters parameters = new BrixPageParameters();
+        for (int i = 0; i < values.length; ++i)
+        {
+            parameters.setIndexedParam(i, values[i]);
+        }
+        return parameters;
+    }
+
+    private static BrixPageParameters query(String... namesAndValues)
+    {
+        BrixPageParameters parameters = new BrixPageParameters();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            parameters.addQueryParam(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return parameters;
+    }
+
+    @Test
+    public void indexedParams()
+    {
+        assertEquals(key(indexed("a", "b")), key(indexed("a", "b")));
+        assertFalse(key(indexed("a/b")).equals(key(indexed("a", "b"))));
+        assertFalse(key(indexed("a", null)).equals(key(indexed("a", ""))));
+        assertFalse(key(indexed("a")).equals(key(query("a", ""))));
+    }
+
+    @Test
+    public void queryParamNamesAreSorted()
+    {
+        assertEquals(key(query("a", "1", "b", "2")), key(query("b", "2", "a", "1")));
+        assertFalse(key(query("a", "1=b")).equals(key(query("a", "1", "b", ""))));
+        assertFalse(key(query("a&b", "1")).equals(key(query("a", "", "b", "1"))));
+    }
+
+    @Test
+    public void repeatedQueryValuesKeepOrder()
+    {
+        assertFalse(key(query("a", "1", "a", "1")).equals(key(query("a", "1"))));
+        assertFalse(key(query("a", "1", "a", "2")).equals(key(query("a", "2", "a", "1"))));
+        assertEquals(key(query("a", "1", "b", "3", "a", "2")), key(query("b", "3", "a", "1", "a",
+            "2")));
+    }
+}
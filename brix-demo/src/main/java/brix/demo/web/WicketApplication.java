@@ -30,6 +30,7 @@ import brix.config.UriMapper;
 import brix.demo.web.admin.AdminPage;
 import brix.jcr.JcrSessionFactory;
 import brix.jcr.api.JcrSession;
+import brix.markup.MarkupCache;
 import brix.plugin.site.SitePlugin;
 import brix.web.BrixRequestCycleProcessor;
 import brix.web.nodepage.BrixNodePageUrlCodingStrategy;
@@ -110,6 +111,11 @@ public final class WicketApplication extends AbstractWicketApplication
             // create brix instance and attach it to this application
             brix = new DemoBrix(config);
             brix.attachTo(this);
+
+            // the repository is only modified through brix in this application, so generated
+            // markup only needs to be checked after saves
+            SitePlugin.get(brix).getMarkupCache().setInvalidation(MarkupCache.Invalidation.ON_SAVE);
+
             initializeRepository();
             initDefaultWorkspace();
         }
@@ -149,6 +155,9 @@ public final class WicketApplication extends AbstractWicketApplication
 
                 brix.initWorkspace(w, session);
 
+                // imported resources have no content hash yet
+                sp.updateContentHashes(session);
+
                 session.save();
             }
 
@@ -159,6 +168,17 @@ public final class WicketApplication extends AbstractWicketApplication
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void onDestroy()
+    {
+        if (brix != null)
+        {
+            SitePlugin.get(brix).destroy();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Allow Brix to perform repository initialization
      */
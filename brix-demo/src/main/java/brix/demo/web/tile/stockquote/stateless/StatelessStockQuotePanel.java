@@ -18,9 +18,13 @@ import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.PropertyModel;
 
-import brix.demo.web.tile.stockquote.StockQuoteRequest;
+import brix.jcr.wrapper.BrixNode;
+import brix.plugin.site.page.tile.PrefetchingTile;
+import brix.plugin.site.page.tile.Tile;
+import brix.plugin.site.page.tile.TilePrefetcher;
 import brix.web.nodepage.BrixPageParameters;
 import brix.web.nodepage.PageParametersAware;
 import brix.web.nodepage.PageParametersForm;
@@ -51,14 +55,19 @@ public class StatelessStockQuotePanel extends Panel implements PageParametersAwa
     /** value of stock symbol */
     private String value;
 
+    /** tile node */
+    private final IModel<BrixNode> tileNode;
+
     /**
      * Constructor
      * 
      * @param id
+     * @param tileNode
      */
-    public StatelessStockQuotePanel(String id)
+    public StatelessStockQuotePanel(String id, IModel<BrixNode> tileNode)
     {
         super(id);
+        this.tileNode = tileNode;
 
         // display value of stock symbol
         add(new Label("value", new PropertyModel(this, "value")));
@@ -90,8 +99,17 @@ public class StatelessStockQuotePanel extends Panel implements PageParametersAwa
         // restore symbol from url
         symbol = params.getQueryParam("symbol").toString(null);
 
-        // restore value by looking it up
-        value = new StockQuoteRequest(symbol).getQuote();
+        // restore value by looking it up (or by using the prefetched value)
+        PrefetchingTile tile = (PrefetchingTile)Tile.Helper.getTileOfType(
+            StatelessStockQuoteTile.TYPE_NAME, tileNode.getObject().getBrix());
+        value = TilePrefetcher.getResult(tile, tileNode);
+    }
+
+    @Override
+    protected void onDetach()
+    {
+        tileNode.detach();
+        super.onDetach();
     }
 
 
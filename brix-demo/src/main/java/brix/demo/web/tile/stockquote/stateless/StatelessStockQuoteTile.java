@@ -14,14 +14,18 @@
 
 package brix.demo.web.tile.stockquote.stateless;
 
+import java.util.concurrent.Callable;
+
 import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
 
+import brix.demo.web.tile.stockquote.StockQuoteRequest;
 import brix.demo.web.tile.stockquote.stateful.StatefulStockQuoteTile;
 import brix.jcr.wrapper.BrixNode;
-import brix.plugin.site.page.tile.Tile;
+import brix.plugin.site.page.tile.PrefetchingTile;
 import brix.plugin.site.page.tile.admin.EmptyTileEditorPanel;
 import brix.plugin.site.page.tile.admin.TileEditorPanel;
+import brix.web.nodepage.BrixPageParameters;
 
 /**
  * Stateless stock quote tile definition.
@@ -31,12 +35,18 @@ import brix.plugin.site.page.tile.admin.TileEditorPanel;
  * Wicket's automatic state management and thus exposes extra work on the user to manage state. See
  * {@link StatelessStockQuotePanel} for details.
  * 
+ * The quote is looked up by a remote service, so the tile is a {@link PrefetchingTile}. When a
+ * prefetch executor is configured the lookup starts before the page is rendered, concurrently with
+ * other slow tiles on the page.
+ * 
  * For a stateful variant of tile see {@link StatefulStockQuoteTile}
  * 
  * @author igor.vaynberg
  */
-public class StatelessStockQuoteTile implements Tile
+public class StatelessStockQuoteTile implements PrefetchingTile
 {
+    /** type name the tile is registered with */
+    public static final String TYPE_NAME = "brix.demo.StatelessStockQuoteTile";
 
     /** {@inheritDoc} */
     public String getDisplayName()
@@ -47,7 +57,7 @@ public class StatelessStockQuoteTile implements Tile
     /** {@inheritDoc} */
     public String getTypeName()
     {
-        return "brix.demo.StatelessStockQuoteTile";
+        return TYPE_NAME;
     }
 
     /** {@inheritDoc} */
@@ -61,7 +71,37 @@ public class StatelessStockQuoteTile implements Tile
     public Component newViewer(String id, IModel<BrixNode> tileNode)
     {
         // create and return panel that will render the tile
-        return new StatelessStockQuotePanel(id);
+        return new StatelessStockQuotePanel(id, tileNode);
+    }
+
+    /** {@inheritDoc} */
+    public Callable<String> newPrefetchTask(IModel<BrixNode> tileNode,
+            BrixPageParameters pageParameters)
+    {
+        final String symbol = pageParameters.getQueryParam("symbol").toString(null);
+        if (symbol == null)
+        {
+            return null;
+        }
+        return new Callable<String>()
+        {
+            public String call()
+            {
+                return new StockQuoteRequest(symbol).getQuote();
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public long getPrefetchTimeout(IModel<BrixNode> tileNode)
+    {
+        return 5000;
+    }
+
+    /** {@inheritDoc} */
+    public String getFallbackMarkup(IModel<BrixNode> tileNode)
+    {
+        return "<div>Stock quotes are not available at the moment.</div>";
     }
 
     /** {@inheritDoc} */
@@ -19,10 +19,11 @@ import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
 
 import brix.jcr.wrapper.BrixNode;
-import brix.plugin.site.page.tile.Tile;
+import brix.plugin.site.page.tile.CacheableTile;
+import brix.plugin.site.page.tile.TileCachePolicy;
 import brix.plugin.site.page.tile.admin.TileEditorPanel;
 
-public class TimeTile implements Tile
+public class TimeTile implements CacheableTile
 {
 
     public Component newViewer(String id, IModel<BrixNode> tileNode)
@@ -50,4 +51,27 @@ public class TimeTile implements Tile
         return false;
     }
 
+    public TileCachePolicy getCachePolicy(IModel<BrixNode> tileNode)
+    {
+        // the rendered time only changes when the most precise field of the format does, so the
+        // output can be reused until the next second or minute starts
+        BrixNode node = tileNode.getObject();
+        String format = node.hasProperty("format") ? node.getProperty("format").getString() : null;
+        long period;
+        if (format != null && format.indexOf('S') >= 0)
+        {
+            // milliseconds, not worth caching
+            return null;
+        }
+        else if (format == null || format.indexOf('s') >= 0)
+        {
+            period = 1000L;
+        }
+        else
+        {
+            period = 60000L;
+        }
+        return new TileCachePolicy(period - System.currentTimeMillis() % period);
+    }
+
 }
@@ -18,10 +18,10 @@ import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
 
 import brix.jcr.wrapper.BrixNode;
-import brix.plugin.site.page.tile.Tile;
+import brix.plugin.site.page.tile.StatelessTile;
 import brix.plugin.site.page.tile.admin.TileEditorPanel;
 
-public class SubTreeMenuTile implements Tile
+public class SubTreeMenuTile implements StatelessTile
 {
     public static final String TYPE_NAME = "brix.web.tile.menu.MenuTile";
 
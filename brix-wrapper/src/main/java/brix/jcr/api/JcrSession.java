@@ -57,6 +57,21 @@ public interface JcrSession extends BrixSession
         {
             return wrap(delegate, null);
         }
+
+        /**
+         * Wraps the session for reading only. Nodes and properties are not wrapped by the
+         * <code>brix.jcr.base</code> layer (so there are no action handlers, change log or value
+         * filter) and every attempt to modify the repository through the session or its items
+         * fails with {@link javax.jcr.AccessDeniedException}.
+         * 
+         * @param delegate
+         * @param behavior
+         * @return
+         */
+        public static JcrSession wrapReadOnly(Session delegate, Behavior behavior)
+        {
+            return WrapperAccessor.JcrSessionWrapper.wrapReadOnly(delegate, behavior);
+        }
     };
 
     /**
@@ -184,6 +199,38 @@ public interface JcrSession extends BrixSession
      */
     public void nodeRemoved(JcrNode node);
 
+    /**
+     * Each wrapped node should call this method when it changes in a way that might affect how the
+     * node is wrapped (such as changing its type).
+     */
+    public void nodeWrappingChanged(JcrNode node);
+
+    /**
+     * Discards all wrapped nodes cached by this session. Should be called after operations that
+     * affect nodes other than the one they were invoked on (such as workspace moves).
+     */
+    public void clearNodeMaps();
+
+    /**
+     * Enables or disables the identity map of wrapped nodes. When enabled, every node of this
+     * session is wrapped only once (keyed by its identifier) and the same wrapper instance is
+     * returned from {@link #getNode(String)}, {@link #getItem(String)}, {@link JcrNode#getParent()},
+     * {@link JcrNode#getNodes()} etc. The map is cleared on {@link #refresh(boolean)}, moves and
+     * removals.
+     * <p>
+     * The identity map is only suitable for short lived (e.g. request scoped) sessions as it keeps
+     * all wrapped nodes until it is cleared.
+     * 
+     * @param enabled
+     */
+    public void setNodeIdentityMapEnabled(boolean enabled);
+
+    /**
+     * @return <code>true</code> if the identity map of wrapped nodes is enabled
+     * @see #setNodeIdentityMapEnabled(boolean)
+     */
+    public boolean isNodeIdentityMapEnabled();
+
     /**
      * Returns the node specified by the given identifier. Applies to both referenceable and
      * non-referenceable nodes.
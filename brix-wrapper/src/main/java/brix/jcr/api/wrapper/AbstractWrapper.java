@@ -14,6 +14,7 @@
 
 package brix.jcr.api.wrapper;
 
+import javax.jcr.AccessDeniedException;
 import javax.jcr.RepositoryException;
 
 import brix.jcr.api.JcrSession;
@@ -93,6 +94,20 @@ abstract class AbstractWrapper
         }
     }
 
+    /**
+     * Throws {@link AccessDeniedException} if the session this wrapper belongs to is read-only.
+     * Must be called by all methods that modify the repository before calling the delegate.
+     * 
+     * @throws AccessDeniedException
+     */
+    protected void checkWritable() throws AccessDeniedException
+    {
+        if (getJcrSession().isReadOnly())
+        {
+            throw new AccessDeniedException("Session is read-only.");
+        }
+    }
+
     protected void handleException(Exception e)
     {
         // TODO: This is definitely not what we want to do.
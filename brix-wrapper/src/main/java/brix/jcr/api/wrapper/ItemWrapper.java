@@ -73,57 +73,67 @@ abstract class ItemWrapper extends AbstractWrapper implements JcrItem
 
     public JcrItem getAncestor(final int depth)
     {
-        return executeCallback(new Callback<JcrItem>()
+        try
         {
-            public JcrItem execute() throws Exception
-            {
-                return JcrItem.Wrapper.wrap(getDelegate().getAncestor(depth), getJcrSession());
-            }
-        });
+            return JcrItem.Wrapper.wrap(getDelegate().getAncestor(depth), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public int getDepth()
     {
-        return executeCallback(new Callback<Integer>()
+        try
+        {
+            return getDelegate().getDepth();
+        }
+        catch (Exception e)
         {
-            public Integer execute() throws Exception
-            {
-                return getDelegate().getDepth();
-            }
-        });
+            handleException(e);
+            return 0;
+        }
     }
 
     public String getName()
     {
-        return executeCallback(new Callback<String>()
+        try
         {
-            public String execute() throws Exception
-            {
-                return getDelegate().getName();
-            }
-        });
+            return getDelegate().getName();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNode getParent()
     {
-        return executeCallback(new Callback<JcrNode>()
+        try
+        {
+            return JcrNode.Wrapper.wrap(getDelegate().getParent(), getJcrSession());
+        }
+        catch (Exception e)
         {
-            public JcrNode execute() throws Exception
-            {
-                return JcrNode.Wrapper.wrap(getDelegate().getParent(), getJcrSession());
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public String getPath()
     {
-        return executeCallback(new Callback<String>()
+        try
         {
-            public String execute() throws Exception
-            {
-                return getDelegate().getPath();
-            }
-        });
+            return getDelegate().getPath();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrSession getSession()
@@ -133,13 +143,15 @@ abstract class ItemWrapper extends AbstractWrapper implements JcrItem
 
     public boolean isModified()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isModified();
-            }
-        });
+            return getDelegate().isModified();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean isNew()
@@ -154,35 +166,40 @@ abstract class ItemWrapper extends AbstractWrapper implements JcrItem
 
     public boolean isSame(final Item otherItem)
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isSame(unwrap(otherItem));
-            }
-        });
+            return getDelegate().isSame(unwrap(otherItem));
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public void refresh(final boolean keepChanges)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().refresh(keepChanges);
-            }
-        });
+            getDelegate().refresh(keepChanges);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void remove()
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().remove();
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().remove();
-            }
-        });
+            handleException(e);
+        }
     }
 
     /**
@@ -191,13 +208,15 @@ abstract class ItemWrapper extends AbstractWrapper implements JcrItem
     @Deprecated
     public void save()
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().save();
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().save();
-            }
-        });
+            handleException(e);
+        }
     }
 
     @Override
@@ -208,15 +227,14 @@ abstract class ItemWrapper extends AbstractWrapper implements JcrItem
 
     public void accept(final ItemVisitor visitor)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-
-            public void execute() throws Exception
-            {
-                getDelegate().accept(visitor);
-            }
-
-        });
+            getDelegate().accept(visitor);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
 
     }
 
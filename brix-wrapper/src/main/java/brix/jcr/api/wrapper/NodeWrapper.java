@@ -56,19 +56,28 @@ public class NodeWrapper extends ItemWrapper implements JcrNode
         {
             return null;
         }
+        else if (session instanceof SessionWrapper && session.isNodeIdentityMapEnabled())
+        {
+            return ((SessionWrapper)session).getMappedNode(delegate);
+        }
         else
         {
-            Behavior behavior = session.getBehavior();
-            if (behavior != null)
+            return newWrapper(delegate, session);
+        }
+    }
+
+    static JcrNode newWrapper(Node delegate, JcrSession session)
+    {
+        Behavior behavior = session.getBehavior();
+        if (behavior != null)
+        {
+            JcrNode node = behavior.wrap(delegate, session);
+            if (node != null)
             {
-                JcrNode node = behavior.wrap(delegate, session);
-                if (node != null)
-                {
-                    return node;
-                }
+                return node;
             }
-            return new NodeWrapper(delegate, session);
         }
+        return new NodeWrapper(delegate, session);
     }
 
     @Override
@@ -77,83 +86,126 @@ public class NodeWrapper extends ItemWrapper implements JcrNode
         return (Node)super.getDelegate();
     }
 
+    @Override
+    public void remove()
+    {
+        super.remove();
+        getJcrSession().nodeRemoved(this);
+    }
+
+    /**
+     * Returns whether the property with given name affects how this node is wrapped. Setting such
+     * property discards the wrapped nodes cached by the session.
+     * 
+     * @param name
+     * @return
+     */
+    protected boolean isWrappingProperty(String name)
+    {
+        return false;
+    }
+
+    private void propertySet(String name)
+    {
+        if (isWrappingProperty(name))
+        {
+            getJcrSession().nodeWrappingChanged(this);
+        }
+    }
+
     public void addMixin(final String mixinName)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().addMixin(mixinName);
-            }
-        });
+            checkWritable();
+            getDelegate().addMixin(mixinName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
+        getJcrSession().nodeWrappingChanged(this);
     }
 
     public JcrNode addNode(final String relPath)
     {
-        return executeCallback(new Callback<JcrNode>()
+        try
         {
-            public JcrNode execute() throws Exception
-            {
-                return JcrNode.Wrapper.wrap(getDelegate().addNode(relPath), getJcrSession());
-            }
-        });
+            checkWritable();
+            return JcrNode.Wrapper.wrap(getDelegate().addNode(relPath), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNode addNode(final String relPath, final String primaryNodeTypeName)
     {
-        return executeCallback(new Callback<JcrNode>()
+        try
         {
-            public JcrNode execute() throws Exception
-            {
-                return JcrNode.Wrapper.wrap(getDelegate().addNode(relPath, primaryNodeTypeName),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            return JcrNode.Wrapper.wrap(getDelegate().addNode(relPath, primaryNodeTypeName),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public boolean canAddMixin(final String mixinName)
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().canAddMixin(mixinName);
-            }
-        });
+            return getDelegate().canAddMixin(mixinName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void cancelMerge(final Version version)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().cancelMerge(unwrap(version));
-            }
-        });
+            checkWritable();
+            getDelegate().cancelMerge(unwrap(version));
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public JcrVersion checkin()
     {
-        return executeCallback(new Callback<JcrVersion>()
+        try
         {
-            public JcrVersion execute() throws Exception
+            checkWritable();
+            final Node delegate = getDelegate();
+            if (delegate.isNodeType("mix:versionable"))
+            {
+                return JcrVersion.Wrapper.wrap(delegate.checkin(), getJcrSession());
+            }
+            else
             {
-                final Node delegate = getDelegate();
-                if (delegate.isNodeType("mix:versionable"))
-                {
-                    return JcrVersion.Wrapper.wrap(delegate.checkin(), getJcrSession());
-                }
-                else
-                {
-                    return null;
-                }
+                return null;
             }
-        });
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
@@ -173,618 +225,765 @@ public class NodeWrapper extends ItemWrapper implements JcrNode
     @Deprecated
     public void checkout()
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
+            checkWritable();
+            if (getDelegate().isNodeType("mix:versionable"))
             {
-                if (getDelegate().isNodeType("mix:versionable"))
-                {
-                    getDelegate().checkout();
-                }
+                getDelegate().checkout();
             }
-        });
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void doneMerge(final Version version)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().doneMerge(unwrap(version));
-            }
-        });
+            checkWritable();
+            getDelegate().doneMerge(unwrap(version));
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public JcrVersion getBaseVersion()
     {
-        return executeCallback(new Callback<JcrVersion>()
+        try
         {
-            public JcrVersion execute() throws Exception
-            {
-                return JcrVersion.Wrapper.wrap(getDelegate().getBaseVersion(), getJcrSession());
-            }
-        });
+            return JcrVersion.Wrapper.wrap(getDelegate().getBaseVersion(), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public String getCorrespondingNodePath(final String workspaceName)
     {
-        return executeCallback(new Callback<String>()
+        try
         {
-            public String execute() throws Exception
-            {
-                return getDelegate().getCorrespondingNodePath(workspaceName);
-            }
-        });
+            return getDelegate().getCorrespondingNodePath(workspaceName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public NodeDefinition getDefinition()
     {
-        return executeCallback(new Callback<NodeDefinition>()
+        try
         {
-            public NodeDefinition execute() throws Exception
-            {
-                return getDelegate().getDefinition();
-            }
-        });
+            return getDelegate().getDefinition();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public int getIndex()
     {
-        return executeCallback(new Callback<Integer>()
+        try
         {
-            public Integer execute() throws Exception
-            {
-                return getDelegate().getIndex();
-            }
-        });
+            return getDelegate().getIndex();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return 0;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public Lock getLock()
     {
-        return executeCallback(new Callback<Lock>()
+        try
         {
-            public Lock execute() throws Exception
-            {
-                return getDelegate().getLock();
-            }
-        });
+            return getDelegate().getLock();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public NodeType[] getMixinNodeTypes()
     {
-        return executeCallback(new Callback<NodeType[]>()
+        try
         {
-            public NodeType[] execute() throws Exception
-            {
-                return getDelegate().getMixinNodeTypes();
-            }
-        });
+            return getDelegate().getMixinNodeTypes();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNode getNode(final String relPath)
     {
-        return executeCallback(new Callback<JcrNode>()
+        try
         {
-            public JcrNode execute() throws Exception
-            {
-                return JcrNode.Wrapper.wrap(getDelegate().getNode(relPath), getJcrSession());
-            }
-        });
+            return JcrNode.Wrapper.wrap(getDelegate().getNode(relPath), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNodeIterator getNodes()
     {
-        return executeCallback(new Callback<JcrNodeIterator>()
+        try
         {
-            public JcrNodeIterator execute() throws Exception
-            {
-                return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(), getJcrSession());
-            }
-        });
+            return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNodeIterator getNodes(final String namePattern)
     {
-        return executeCallback(new Callback<JcrNodeIterator>()
+        try
         {
-            public JcrNodeIterator execute() throws Exception
-            {
-                return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(namePattern),
-                        getJcrSession());
-            }
-        });
+            return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(namePattern),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrItem getPrimaryItem()
     {
-        return executeCallback(new Callback<JcrItem>()
+        try
         {
-            public JcrItem execute() throws Exception
-            {
-                return JcrItem.Wrapper.wrap(getDelegate().getPrimaryItem(), getJcrSession());
-            }
-        });
+            return JcrItem.Wrapper.wrap(getDelegate().getPrimaryItem(), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public NodeType getPrimaryNodeType()
     {
-        return executeCallback(new Callback<NodeType>()
+        try
         {
-            public NodeType execute() throws Exception
-            {
-                return getDelegate().getPrimaryNodeType();
-            }
-        });
+            return getDelegate().getPrimaryNodeType();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getProperties()
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(),
-                        getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getProperties(final String namePattern)
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(namePattern),
-                        getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(namePattern),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty getProperty(final String relPath)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper
-                        .wrap(getDelegate().getProperty(relPath), getJcrSession());
-            }
-        });
+            return JcrProperty.Wrapper
+                    .wrap(getDelegate().getProperty(relPath), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getReferences()
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getReferences(),
-                        getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getReferences(),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public String getUUID()
     {
-        return executeCallback(new Callback<String>()
+        try
         {
-            public String execute() throws Exception
-            {
-                return getDelegate().getUUID();
-            }
-        });
+            return getDelegate().getUUID();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public JcrVersionHistory getVersionHistory()
     {
-        return executeCallback(new Callback<JcrVersionHistory>()
+        try
         {
-            public JcrVersionHistory execute() throws Exception
-            {
-                return JcrVersionHistory.Wrapper.wrap(getDelegate().getVersionHistory(),
-                        getJcrSession());
-            }
-        });
+            return JcrVersionHistory.Wrapper.wrap(getDelegate().getVersionHistory(),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public boolean hasNode(final String relPath)
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().hasNode(relPath);
-            }
-        });
+            return getDelegate().hasNode(relPath);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean hasNodes()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().hasNodes();
-            }
-        });
+            return getDelegate().hasNodes();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean hasProperties()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().hasProperties();
-            }
-        });
+            return getDelegate().hasProperties();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean hasProperty(final String relPath)
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().hasProperty(relPath);
-            }
-        });
+            return getDelegate().hasProperty(relPath);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public boolean holdsLock()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().holdsLock();
-            }
-        });
+            return getDelegate().holdsLock();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean isCheckedOut()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isCheckedOut();
-            }
-        });
+            return getDelegate().isCheckedOut();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean isLocked()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isLocked();
-            }
-        });
+            return getDelegate().isLocked();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public boolean isNodeType(final String nodeTypeName)
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isNodeType(nodeTypeName);
-            }
-        });
+            return getDelegate().isNodeType(nodeTypeName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public Lock lock(final boolean isDeep, final boolean isSessionScoped)
     {
-        return executeCallback(new Callback<Lock>()
+        try
         {
-            public Lock execute() throws Exception
-            {
-                return getDelegate().lock(isDeep, isSessionScoped);
-            }
-        });
+            checkWritable();
+            return getDelegate().lock(isDeep, isSessionScoped);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public JcrNodeIterator merge(final String srcWorkspace, final boolean bestEffort)
     {
-        return executeCallback(new Callback<JcrNodeIterator>()
+        try
         {
-            public JcrNodeIterator execute() throws Exception
-            {
-                return JcrNodeIterator.Wrapper.wrap(getDelegate().merge(srcWorkspace, bestEffort),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            return JcrNodeIterator.Wrapper.wrap(getDelegate().merge(srcWorkspace, bestEffort),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public void orderBefore(final String srcChildRelPath, final String destChildRelPath)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().orderBefore(srcChildRelPath, destChildRelPath);
-            }
-        });
+            checkWritable();
+            getDelegate().orderBefore(srcChildRelPath, destChildRelPath);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
 
     }
 
     public void removeMixin(final String mixinName)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().removeMixin(mixinName);
-            }
-        });
+            checkWritable();
+            getDelegate().removeMixin(mixinName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
+        getJcrSession().nodeWrappingChanged(this);
     }
 
     /** @depreated */
     @Deprecated
     public void restore(final String versionName, final boolean removeExisting)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().restore(versionName, removeExisting);
-            }
-        });
+            checkWritable();
+            getDelegate().restore(versionName, removeExisting);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void restore(final Version version, final boolean removeExisting)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().restore(unwrap(version), removeExisting);
-            }
-        });
+            checkWritable();
+            getDelegate().restore(unwrap(version), removeExisting);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void restore(final Version version, final String relPath, final boolean removeExisting)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().restore(unwrap(version), relPath, removeExisting);
-            }
-        });
+            checkWritable();
+            getDelegate().restore(unwrap(version), relPath, removeExisting);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void restoreByLabel(final String versionLabel, final boolean removeExisting)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().restoreByLabel(versionLabel, removeExisting);
-            }
-        });
+            checkWritable();
+            getDelegate().restoreByLabel(versionLabel, removeExisting);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public JcrProperty setProperty(final String name, final Value value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrap(value)),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrap(value)), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final Value[] values)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                final Value[] unwrapped = unwrap(values, new Value[values.length]);
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrapped),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            final Value[] unwrapped = unwrap(values, new Value[values.length]);
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrapped), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final String[] values)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, values),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, values), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final String value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public JcrProperty setProperty(final String name, final InputStream value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final boolean value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final double value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final long value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final Calendar value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final Node value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrap(value)),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrap(value)), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final Value value, final int type)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate()
-                        .setProperty(name, unwrap(value), type), getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrap(value), type), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final Value[] values, final int type)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                final Value[] unwrapped = unwrap(values, new Value[values.length]);
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrapped, type),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            final Value[] unwrapped = unwrap(values, new Value[values.length]);
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrapped, type), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final String[] values, final int type)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, values, type),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, values, type), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final String value, final int type)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, value, type),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, value, type), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @depreated */
     @Deprecated
     public void unlock()
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().unlock();
-            }
-        });
+            checkWritable();
+            getDelegate().unlock();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void update(final String srcWorkspaceName)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().update(srcWorkspaceName);
-            }
-        });
+            checkWritable();
+            getDelegate().update(srcWorkspaceName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     @Override
@@ -795,188 +994,213 @@ public class NodeWrapper extends ItemWrapper implements JcrNode
 
     public void accept(final ItemVisitor visitor)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                visitor.visit(NodeWrapper.this);
-            }
-        });
+            visitor.visit(this);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void followLifecycleTransition(final String transition)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-
-            public void execute() throws Exception
-            {
-                getDelegate().followLifecycleTransition(transition);
-            }
-        });
+            checkWritable();
+            getDelegate().followLifecycleTransition(transition);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
 
     }
 
     public String[] getAllowedLifecycleTransistions()
     {
-        return executeCallback(new Callback<String[]>()
+        try
         {
-
-            public String[] execute() throws Exception
-            {
-                return getDelegate().getAllowedLifecycleTransistions();
-            }
-        });
+            return getDelegate().getAllowedLifecycleTransistions();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public String getIdentifier()
     {
-        return executeCallback(new Callback<String>()
+        try
         {
-
-            public String execute() throws Exception
-            {
-                return getDelegate().getIdentifier();
-            }
-        });
+            return getDelegate().getIdentifier();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNodeIterator getNodes(final String[] nameGlobs)
     {
-        return executeCallback(new Callback<JcrNodeIterator>()
+        try
         {
-            public JcrNodeIterator execute() throws Exception
-            {
-                return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(nameGlobs),
-                        getJcrSession());
-            }
-        });
+            return JcrNodeIterator.Wrapper.wrap(getDelegate().getNodes(nameGlobs),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getProperties(final String[] nameGlobs)
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(nameGlobs),
-                        getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getProperties(nameGlobs),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getReferences(final String name)
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getReferences(name),
-                        getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getReferences(name),
+                    getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrNodeIterator getSharedSet()
     {
-        return executeCallback(new Callback<JcrNodeIterator>()
+        try
         {
-
-            public JcrNodeIterator execute() throws Exception
-            {
-                return JcrNodeIterator.Wrapper.wrap(getDelegate().getSharedSet(), getJcrSession());
-            }
-        });
+            return JcrNodeIterator.Wrapper.wrap(getDelegate().getSharedSet(), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getWeakReferences()
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getWeakReferences(),getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getWeakReferences(),getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrPropertyIterator getWeakReferences(final String name)
     {
-        return executeCallback(new Callback<JcrPropertyIterator>()
+        try
         {
-
-            public JcrPropertyIterator execute() throws Exception
-            {
-                return JcrPropertyIterator.Wrapper.wrap(getDelegate().getWeakReferences(name), getJcrSession());
-            }
-        });
+            return JcrPropertyIterator.Wrapper.wrap(getDelegate().getWeakReferences(name), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public void removeShare()
     {
-        executeCallback(new VoidCallback()
+        try
         {
-
-            public void execute() throws Exception
-            {
-                getDelegate().removeShare();
-            }
-        });
+            checkWritable();
+            getDelegate().removeShare();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
+        getJcrSession().nodeRemoved(this);
 
     }
 
     public void removeSharedSet()
     {
-        executeCallback(new VoidCallback()
+        try
         {
-
-            public void execute() throws Exception
-            {
-                getDelegate().removeSharedSet();
-            }
-        });
+            checkWritable();
+            getDelegate().removeSharedSet();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
+        getJcrSession().nodeRemoved(this);
 
     }
 
     public void setPrimaryType(final String nodeTypeName)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-
-            public void execute() throws Exception
-            {
-                getDelegate().setPrimaryType(nodeTypeName);
-            }
-        });
+            checkWritable();
+            getDelegate().setPrimaryType(nodeTypeName);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
+        getJcrSession().nodeWrappingChanged(this);
 
     }
 
     public JcrProperty setProperty(final String name, final Binary value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrap(value)),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrap(value)), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty setProperty(final String name, final BigDecimal value)
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
         {
-
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().setProperty(name, unwrap(value)),
-                        getJcrSession());
-            }
-        });
+            checkWritable();
+            JcrProperty property = JcrProperty.Wrapper.wrap(
+                    getDelegate().setProperty(name, unwrap(value)), getJcrSession());
+            propertySet(name);
+            return property;
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 }
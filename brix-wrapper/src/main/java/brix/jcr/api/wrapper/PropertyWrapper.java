@@ -62,342 +62,395 @@ class PropertyWrapper extends ItemWrapper implements JcrProperty
 
     public boolean getBoolean()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().getBoolean();
-            }
-        });
+            return getDelegate().getBoolean();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
     public Calendar getDate()
     {
-        return executeCallback(new Callback<Calendar>()
+        try
         {
-            public Calendar execute() throws Exception
-            {
-                return getDelegate().getDate();
-            }
-        });
+            return getDelegate().getDate();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public PropertyDefinition getDefinition()
     {
-        return executeCallback(new Callback<PropertyDefinition>()
+        try
         {
-            public PropertyDefinition execute() throws Exception
-            {
-                return getDelegate().getDefinition();
-            }
-        });
+            return getDelegate().getDefinition();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public double getDouble()
     {
-        return executeCallback(new Callback<Double>()
+        try
         {
-            public Double execute() throws Exception
-            {
-                return getDelegate().getDouble();
-            }
-        });
+            return getDelegate().getDouble();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return 0;
+        }
     }
 
     public long getLength()
     {
-        return executeCallback(new Callback<Long>()
+        try
         {
-            public Long execute() throws Exception
-            {
-                return getDelegate().getLength();
-            }
-        });
+            return getDelegate().getLength();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return 0;
+        }
     }
 
     public long[] getLengths()
     {
-        return executeCallback(new Callback<long[]>()
+        try
         {
-            public long[] execute() throws Exception
-            {
-                return getDelegate().getLengths();
-            }
-        });
+            return getDelegate().getLengths();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public long getLong()
     {
-        return executeCallback(new Callback<Long>()
+        try
         {
-            public Long execute() throws Exception
-            {
-                return getDelegate().getLong();
-            }
-        });
+            return getDelegate().getLong();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return 0;
+        }
     }
 
     public JcrNode getNode()
     {
-        return executeCallback(new Callback<JcrNode>()
+        try
         {
-            public JcrNode execute() throws Exception
-            {
-                return JcrNode.Wrapper.wrap(getDelegate().getNode(), getJcrSession());
-            }
-        });
+            return JcrNode.Wrapper.wrap(getDelegate().getNode(), getJcrSession());
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     /** @deprecated, see Property#getStream() */
     @Deprecated
     public InputStream getStream()
     {
-        return executeCallback(new Callback<InputStream>()
+        try
+        {
+            return getDelegate().getStream();
+        }
+        catch (Exception e)
         {
-            public InputStream execute() throws Exception
-            {
-                return getDelegate().getStream();
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public String getString()
     {
-        return executeCallback(new Callback<String>()
+        try
+        {
+            return getDelegate().getString();
+        }
+        catch (Exception e)
         {
-            public String execute() throws Exception
-            {
-                return getDelegate().getString();
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public int getType()
     {
-        return executeCallback(new Callback<Integer>()
+        try
+        {
+            return getDelegate().getType();
+        }
+        catch (Exception e)
         {
-            public Integer execute() throws Exception
-            {
-                return getDelegate().getType();
-            }
-        });
+            handleException(e);
+            return 0;
+        }
     }
 
     public JcrValue getValue()
     {
-        return executeCallback(new Callback<JcrValue>()
+        try
+        {
+            return JcrValue.Wrapper.wrap(getDelegate().getValue(), getJcrSession());
+        }
+        catch (Exception e)
         {
-            public JcrValue execute() throws Exception
-            {
-                return JcrValue.Wrapper.wrap(getDelegate().getValue(), getJcrSession());
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrValue[] getValues()
     {
-        return executeCallback(new Callback<JcrValue[]>()
+        try
+        {
+            return JcrValue.Wrapper.wrap(getDelegate().getValues(), getJcrSession());
+        }
+        catch (Exception e)
         {
-            public JcrValue[] execute() throws Exception
-            {
-                return JcrValue.Wrapper.wrap(getDelegate().getValues(), getJcrSession());
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public void setValue(final Value value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void setValue(final Value[] values)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(values);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(values);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public void setValue(final String value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void setValue(final String[] values)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(values);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(values);
-            }
-        });
+            handleException(e);
+        }
     }
 
     /** @deprecated */
     @Deprecated
     public void setValue(final InputStream value)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public void setValue(final long value)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public void setValue(final double value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void setValue(final Calendar value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void setValue(final boolean value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void setValue(final Node value)
     {
-        executeCallback(new VoidCallback()
+        try
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(unwrap(value));
-            }
-        });
+            checkWritable();
+            getDelegate().setValue(unwrap(value));
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+        }
     }
 
     public void accept(final ItemVisitor visitor)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            visitor.visit(PropertyWrapper.this);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                visitor.visit(PropertyWrapper.this);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public Binary getBinary()
     {
-        return executeCallback(new Callback<Binary>()
+        try
         {
-
-            public Binary execute() throws Exception
-            {
-                return getDelegate().getBinary();
-            }
-
-        });
+            return getDelegate().getBinary();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public BigDecimal getDecimal()
     {
-        return executeCallback(new Callback<BigDecimal>()
+        try
         {
-
-            public BigDecimal execute() throws Exception
-            {
-                return getDelegate().getDecimal();
-            }
-
-        });
+            return getDelegate().getDecimal();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return null;
+        }
     }
 
     public JcrProperty getProperty()
     {
-        return executeCallback(new Callback<JcrProperty>()
+        try
+        {
+            return JcrProperty.Wrapper.wrap(getDelegate().getProperty(), getJcrSession());
+        }
+        catch (Exception e)
         {
-            public JcrProperty execute() throws Exception
-            {
-                return JcrProperty.Wrapper.wrap(getDelegate().getProperty(), getJcrSession());
-            }
-        });
+            handleException(e);
+            return null;
+        }
     }
 
     public void setValue(final Binary value)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public void setValue(final BigDecimal value)
     {
-        executeCallback(new VoidCallback()
+        try
+        {
+            checkWritable();
+            getDelegate().setValue(value);
+        }
+        catch (Exception e)
         {
-            public void execute() throws Exception
-            {
-                getDelegate().setValue(value);
-            }
-        });
+            handleException(e);
+        }
     }
 
     public boolean isMultiple()
     {
-        return executeCallback(new Callback<Boolean>()
+        try
         {
-
-            public Boolean execute() throws Exception
-            {
-                return getDelegate().isMultiple();
-            }
-
-        });
+            return getDelegate().isMultiple();
+        }
+        catch (Exception e)
+        {
+            handleException(e);
+            return false;
+        }
     }
 
 }
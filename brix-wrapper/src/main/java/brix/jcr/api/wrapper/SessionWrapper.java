@@ -79,6 +79,18 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 		}
 	}
 
+	public static JcrSession wrapReadOnly(Session delegate, Behavior behavior)
+	{
+		if (delegate == null)
+		{
+			return null;
+		}
+		else
+		{
+			return new SessionWrapper(WrapperAccessor.wrapReadOnly(delegate), behavior);
+		}
+	}
+
 	@Override
 	public BrixSession getDelegate()
 	{
@@ -89,351 +101,461 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 	@Deprecated
 	public void addLockToken(final String lt)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().addLockToken(lt);
-			}
-		});
+			getDelegate().addLockToken(lt);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void checkPermission(final String absPath, final String actions)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().checkPermission(absPath, actions);
-			}
-		});
+			getDelegate().checkPermission(absPath, actions);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void exportDocumentView(final String absPath, final ContentHandler contentHandler,
 			final boolean skipBinary, final boolean noRecurse)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().exportDocumentView(absPath, contentHandler, skipBinary, noRecurse);
-			}
-		});
+			getDelegate().exportDocumentView(absPath, contentHandler, skipBinary, noRecurse);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void exportDocumentView(final String absPath, final OutputStream out,
 			final boolean skipBinary, final boolean noRecurse)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().exportDocumentView(absPath, out, skipBinary, noRecurse);
-			}
-		});
+			getDelegate().exportDocumentView(absPath, out, skipBinary, noRecurse);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void exportSystemView(final String absPath, final ContentHandler contentHandler,
 			final boolean skipBinary, final boolean noRecurse)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().exportSystemView(absPath, contentHandler, skipBinary, noRecurse);
-			}
-		});
+			getDelegate().exportSystemView(absPath, contentHandler, skipBinary, noRecurse);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void exportSystemView(final String absPath, final OutputStream out,
 			final boolean skipBinary, final boolean noRecurse)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().exportSystemView(absPath, out, skipBinary, noRecurse);
-			}
-		});
+			getDelegate().exportSystemView(absPath, out, skipBinary, noRecurse);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public Object getAttribute(final String name)
 	{
-		return executeCallback(new Callback<Object>()
+		try
 		{
-			public Object execute() throws Exception
-			{
-				return getDelegate().getAttribute(name);
-			}
-		});
+			return getDelegate().getAttribute(name);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public String[] getAttributeNames()
 	{
-		return executeCallback(new Callback<String[]>()
+		try
 		{
-			public String[] execute() throws Exception
-			{
-				return getDelegate().getAttributeNames();
-			}
-		});
+			return getDelegate().getAttributeNames();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public ContentHandler getImportContentHandler(final String parentAbsPath, final int uuidBehavior)
 	{
-		return executeCallback(new Callback<ContentHandler>()
+		try
 		{
-			public ContentHandler execute() throws Exception
-			{
-				return getDelegate().getImportContentHandler(parentAbsPath, uuidBehavior);
-			}
-		});
+			return getDelegate().getImportContentHandler(parentAbsPath, uuidBehavior);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public JcrItem getItem(final String absPath)
 	{
-		return executeCallback(new Callback<JcrItem>()
+		try
 		{
-			public JcrItem execute() throws Exception
-			{
-				return JcrItem.Wrapper.wrap(getDelegate().getItem(absPath), getJcrSession());
-			}
-		});
+			return JcrItem.Wrapper.wrap(getDelegate().getItem(absPath), getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	/** @deprecated */
 	@Deprecated
 	public String[] getLockTokens()
 	{
-		return executeCallback(new Callback<String[]>()
+		try
 		{
-			public String[] execute() throws Exception
-			{
-				return getDelegate().getLockTokens();
-			}
-		});
+			return getDelegate().getLockTokens();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public String getNamespacePrefix(final String uri)
 	{
-		return executeCallback(new Callback<String>()
+		try
 		{
-			public String execute() throws Exception
-			{
-				return getDelegate().getNamespacePrefix(uri);
-			}
-		});
+			return getDelegate().getNamespacePrefix(uri);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public String[] getNamespacePrefixes()
 	{
-		return executeCallback(new Callback<String[]>()
+		try
 		{
-			public String[] execute() throws Exception
-			{
-				return getDelegate().getNamespacePrefixes();
-			}
-		});
+			return getDelegate().getNamespacePrefixes();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public String getNamespaceURI(final String prefix)
 	{
-		return executeCallback(new Callback<String>()
+		try
 		{
-			public String execute() throws Exception
-			{
-				return getDelegate().getNamespaceURI(prefix);
-			}
-		});
+			return getDelegate().getNamespaceURI(prefix);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public void nodeRemoved(JcrNode node)
 	{
 		// it's not enough to just remove the node from UUID map, we are
 		// removing the entire subtree
+		clearNodeMaps();
+	}
+
+	public void nodeWrappingChanged(JcrNode node)
+	{
+		clearNodeMaps();
+	}
+
+	public void clearNodeMaps()
+	{
 		uuidMap.clear();
+		if (identityMap != null)
+		{
+			identityMap.clear();
+		}
 	}
 
 	private Map<String, JcrNode> uuidMap = new HashMap<String, JcrNode>();
 
+	private Map<String, JcrNode> identityMap = null;
+
+	public void setNodeIdentityMapEnabled(boolean enabled)
+	{
+		if (!enabled)
+		{
+			identityMap = null;
+		}
+		else if (identityMap == null)
+		{
+			identityMap = new HashMap<String, JcrNode>();
+		}
+	}
+
+	public boolean isNodeIdentityMapEnabled()
+	{
+		return identityMap != null;
+	}
+
+	/**
+	 * Returns the wrapper for given node from the identity map, creating it if necessary. Must only
+	 * be called when the identity map is enabled.
+	 * 
+	 * @param delegate
+	 * @return
+	 */
+	JcrNode getMappedNode(final Node delegate)
+	{
+		String id;
+		try
+		{
+			id = delegate.getIdentifier();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
+		JcrNode result = identityMap.get(id);
+		if (result == null)
+		{
+			result = NodeWrapper.newWrapper(delegate, this);
+			identityMap.put(id, result);
+		}
+		return result;
+	}
+
 	public Repository getRepository()
 	{
-		return executeCallback(new Callback<Repository>()
+		try
 		{
-			public Repository execute() throws Exception
-			{
-				return getDelegate().getRepository();
-			}
-		});
+			return getDelegate().getRepository();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public JcrNode getRootNode()
 	{
-		return executeCallback(new Callback<JcrNode>()
+		try
 		{
-			public JcrNode execute() throws Exception
-			{
-				return JcrNode.Wrapper.wrap(getDelegate().getRootNode(), getJcrSession());
-			}
-		});
+			return JcrNode.Wrapper.wrap(getDelegate().getRootNode(), getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public String getUserID()
 	{
-		return executeCallback(new Callback<String>()
+		try
 		{
-			public String execute() throws Exception
-			{
-				return getDelegate().getUserID();
-			}
-		});
+			return getDelegate().getUserID();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public JcrValueFactory getValueFactory()
 	{
-		return executeCallback(new Callback<JcrValueFactory>()
+		try
 		{
-			public JcrValueFactory execute() throws Exception
-			{
-				return JcrValueFactory.Wrapper.wrap(getDelegate().getValueFactory(),
-						getJcrSession());
-			}
-		});
+			return JcrValueFactory.Wrapper.wrap(getDelegate().getValueFactory(),
+					getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public JcrWorkspace getWorkspace()
 	{
-		return executeCallback(new Callback<JcrWorkspace>()
+		try
 		{
-			public JcrWorkspace execute() throws Exception
-			{
-				return JcrWorkspace.Wrapper.wrap(getDelegate().getWorkspace(), getJcrSession());
-			}
-		});
+			return JcrWorkspace.Wrapper.wrap(getDelegate().getWorkspace(), getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public boolean hasPendingChanges()
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().hasPendingChanges();
-			}
-		});
+			return getDelegate().hasPendingChanges();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public JcrSession impersonate(final Credentials credentials)
 	{
-		return executeCallback(new Callback<JcrSession>()
+		try
 		{
-			public JcrSession execute() throws Exception
-			{
-				return JcrSession.Wrapper.wrap(getDelegate().impersonate(credentials),
-						getBehavior());
-			}
-		});
+			return JcrSession.Wrapper.wrap(getDelegate().impersonate(credentials),
+					getBehavior());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public void importXML(final String parentAbsPath, final InputStream in, final int uuidBehavior)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().importXML(parentAbsPath, in, uuidBehavior);
-			}
-		});
+			getDelegate().importXML(parentAbsPath, in, uuidBehavior);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public boolean isLive()
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().isLive();
-			}
-		});
+			return getDelegate().isLive();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public boolean itemExists(final String absPath)
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().itemExists(absPath);
-			}
-		});
+			return getDelegate().itemExists(absPath);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public void logout()
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().logout();
-			}
-		});
+			getDelegate().logout();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void move(final String srcAbsPath, final String destAbsPath)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().move(srcAbsPath, destAbsPath);
-			}
-		});
+			getDelegate().move(srcAbsPath, destAbsPath);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
+		clearNodeMaps();
 	}
 
 	public void refresh(final boolean keepChanges)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().refresh(keepChanges);
-			}
-		});
+			getDelegate().refresh(keepChanges);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
+		clearNodeMaps();
 	}
 
 	/** @deprecated */
 	@Deprecated
 	public void removeLockToken(final String lt)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().removeLockToken(lt);
-			}
-		});
+			getDelegate().removeLockToken(lt);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void save()
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().save();
-			}
-		});
+			getDelegate().save();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void setNamespacePrefix(final String prefix, final String uri)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-			public void execute() throws Exception
-			{
-				getDelegate().setNamespacePrefix(prefix, uri);
-			}
-		});
+			getDelegate().setNamespacePrefix(prefix, uri);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
 	}
 
 	public void addActionHandler(AbstractActionHandler handler)
@@ -461,28 +583,35 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 		getDelegate().setValueFilter(valueFilter);
 	}
 
+	public boolean isReadOnly()
+	{
+		return getDelegate().isReadOnly();
+	}
+
 	public AccessControlManager getAccessControlManager()
 	{
-		return executeCallback(new Callback<AccessControlManager>()
+		try
 		{
-
-			public AccessControlManager execute() throws Exception
-			{
-				return getDelegate().getAccessControlManager();
-			}
-		});
+			return getDelegate().getAccessControlManager();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	public JcrNode getNode(final String absPath)
 	{
-		return executeCallback(new Callback<JcrNode>()
+		try
 		{
-
-			public JcrNode execute() throws Exception
-			{
-				return JcrNode.Wrapper.wrap(getDelegate().getNode(absPath), getJcrSession());
-			}
-		});
+			return JcrNode.Wrapper.wrap(getDelegate().getNode(absPath), getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 	}
 
 	/** @deprecated */
@@ -492,14 +621,15 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 		JcrNode result = uuidMap.get(uuid);
 		if (result == null)
 		{
-			result = executeCallback(new Callback<JcrNode>()
+			try
 			{
-				public JcrNode execute() throws Exception
-				{
-					Node node = getDelegate().getNodeByUUID(uuid);
-					return JcrNode.Wrapper.wrap(node, getJcrSession());
-				}
-			});
+				Node node = getDelegate().getNodeByUUID(uuid);
+				result = JcrNode.Wrapper.wrap(node, getJcrSession());
+			}
+			catch (Exception e)
+			{
+				handleException(e);
+			}
 			uuidMap.put(uuid, result);
 		}
 		return result;
@@ -510,15 +640,15 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 		JcrNode result = uuidMap.get(id);
 		if (result == null)
 		{
-			result = executeCallback(new Callback<JcrNode>()
+			try
 			{
-
-				public JcrNode execute() throws Exception
-				{
-					Node node = getDelegate().getNodeByIdentifier(id);
-					return JcrNode.Wrapper.wrap(node, getJcrSession());
-				}
-			});
+				Node node = getDelegate().getNodeByIdentifier(id);
+				result = JcrNode.Wrapper.wrap(node, getJcrSession());
+			}
+			catch (Exception e)
+			{
+				handleException(e);
+			}
 			uuidMap.put(id, result);
 		}
 		return result;
@@ -526,90 +656,97 @@ class SessionWrapper extends AbstractWrapper implements JcrSession
 
 	public JcrProperty getProperty(final String absPath)
 	{
-		return executeCallback(new Callback<JcrProperty>()
+		try
 		{
-
-			public JcrProperty execute() throws Exception
-			{
-				return JcrProperty.Wrapper
-						.wrap(getDelegate().getProperty(absPath), getJcrSession());
-			}
-		});
+			return JcrProperty.Wrapper
+					.wrap(getDelegate().getProperty(absPath), getJcrSession());
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 
 	}
 
 	public RetentionManager getRetentionManager()
 	{
-		return executeCallback(new Callback<RetentionManager>()
+		try
 		{
-
-			public RetentionManager execute() throws Exception
-			{
-				return getDelegate().getRetentionManager();
-			}
-		});
+			return getDelegate().getRetentionManager();
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return null;
+		}
 
 	}
 
 	public boolean hasCapability(final String methodName, final Object target,
 			final Object[] arguments)
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().hasCapability(methodName, target, arguments);
-			}
-		});
+			return getDelegate().hasCapability(methodName, target, arguments);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public boolean hasPermission(final String absPath, final String actions)
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().hasPermission(absPath, actions);
-			}
-		});
+			return getDelegate().hasPermission(absPath, actions);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public boolean nodeExists(final String absPath)
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().nodeExists(absPath);
-			}
-		});
+			return getDelegate().nodeExists(absPath);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public boolean propertyExists(final String absPath)
 	{
-		return executeCallback(new Callback<Boolean>()
+		try
 		{
-
-			public Boolean execute() throws Exception
-			{
-				return getDelegate().propertyExists(absPath);
-			}
-		});
+			return getDelegate().propertyExists(absPath);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+			return false;
+		}
 	}
 
 	public void removeItem(final String absPath)
 	{
-		executeCallback(new VoidCallback()
+		try
 		{
-
-			public void execute() throws Exception
-			{
-				getDelegate().removeItem(absPath);
-			}
-		});
+			getDelegate().removeItem(absPath);
+		}
+		catch (Exception e)
+		{
+			handleException(e);
+		}
+		clearNodeMaps();
 
 	}
 }
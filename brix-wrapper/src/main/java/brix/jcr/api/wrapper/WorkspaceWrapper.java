@@ -68,6 +68,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().clone(srcWorkspace, srcAbsPath, destAbsPath, removeExisting);
             }
         });
@@ -79,6 +80,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().copy(srcAbsPath, destAbsPath);
             }
         });
@@ -90,6 +92,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().copy(srcWorkspace, srcAbsPath, destAbsPath);
             }
         });
@@ -112,6 +115,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public ContentHandler execute() throws Exception
             {
+                checkWritable();
                 return getDelegate().getImportContentHandler(parentAbsPath, uuidBehavior);
             }
         });
@@ -185,6 +189,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().importXML(parentAbsPath, in, uuidBehavior);
             }
         });
@@ -196,9 +201,12 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().move(srcAbsPath, destAbsPath);
             }
         });
+        // moved nodes may be wrapped differently at the new location
+        getJcrSession().clearNodeMaps();
     }
 
     /** @deprecated */
@@ -209,6 +217,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
         {
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().restore(versions, removeExisting);
             }
         });
@@ -221,6 +230,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
 
             public void execute() throws Exception
             {
+                checkWritable();
                 getDelegate().createWorkspace(name);
             }
         });
@@ -233,6 +243,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
 
         public void execute() throws Exception
         {
+            checkWritable();
             getDelegate().createWorkspace(name, srcWorkspace);
         }
     });
@@ -246,6 +257,7 @@ class WorkspaceWrapper extends AbstractWrapper implements JcrWorkspace
 
         public void execute() throws Exception
         {
+            checkWritable();
             getDelegate().deleteWorkspace(name);
         }
     });
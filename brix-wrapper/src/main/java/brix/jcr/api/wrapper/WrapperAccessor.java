@@ -145,6 +145,11 @@ public class WrapperAccessor
 		{
 			return SessionWrapper.wrap(delegate, behavior);
 		}
+
+		public static JcrSession wrapReadOnly(Session delegate, JcrSession.Behavior behavior)
+		{
+			return SessionWrapper.wrapReadOnly(delegate, behavior);
+		}
 	};
 
 	public static class JcrValueWrapper
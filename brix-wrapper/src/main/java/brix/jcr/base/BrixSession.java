@@ -33,4 +33,11 @@ public interface BrixSession extends Session
 	public void setValueFilter(ValueFilter valueFilter);
 	
 	public ValueFilter getValueFilter();
+
+	/**
+	 * Returns whether the session rejects all modifications.
+	 * 
+	 * @return <code>true</code> if the session is read-only
+	 */
+	public boolean isReadOnly();
 }
@@ -0,0 +1,391 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.event;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Item;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EventsListener} that delivers post-save events to an {@link AsyncEventsListener} on a
+ * worker thread instead of the saving thread. This is an opt-in alternative to registering an
+ * {@link EventsListener} directly, suitable for listeners that only react to saved content and
+ * don't need to modify it as part of the save.
+ * <p>
+ * After each save the events are converted to {@link DetachedEvent}s (the original events
+ * reference session nodes that must not be accessed from other threads) and put to a bounded
+ * queue. Pending events for the same path are coalesced, so when the worker falls behind only the
+ * last event of each kind per path is delivered. The worker delivers the events in batches of at
+ * most {@code maxBatchSize}.
+ * <p>
+ * When the queue is full the behavior depends on the {@link OverflowPolicy}.
+ * 
+ * <pre>
+ * AsyncEventsDispatcher dispatcher = new AsyncEventsDispatcher(listener);
+ * session.addEventsListener(dispatcher);
+ * </pre>
+ * 
+ * The same dispatcher can (and usually should) be registered with multiple sessions.
+ */
+public class AsyncEventsDispatcher implements EventsListener
+{
+	private static final Logger logger = LoggerFactory.getLogger(AsyncEventsDispatcher.class);
+
+	/**
+	 * What to do with a new event when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Block the saving thread until there is space in the queue. If the thread is interrupted
+		 * while waiting the event is delivered synchronously.
+		 */
+		BLOCK,
+		/**
+		 * Deliver the event synchronously on the saving thread
+		 */
+		CALLER_RUNS,
+		/**
+		 * Drop the event
+		 */
+		DISCARD
+	};
+
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+	private final AsyncEventsListener listener;
+	private final int capacity;
+	private final int maxBatchSize;
+	private final OverflowPolicy overflowPolicy;
+
+	private final Object lock = new Object();
+
+	// all following fields are guarded by lock
+	private final Map<String, DetachedEvent> pending = new LinkedHashMap<String, DetachedEvent>();
+	private Thread worker = null;
+	private boolean delivering = false;
+	private boolean shutdown = false;
+	private long discardedCount = 0;
+
+	public AsyncEventsDispatcher(AsyncEventsListener listener)
+	{
+		this(listener, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param listener
+	 *            listener to deliver events to
+	 * @param capacity
+	 *            maximum number of pending (coalesced) events
+	 * @param maxBatchSize
+	 *            maximum number of events delivered in one
+	 *            {@link AsyncEventsListener#handleEvents(List)} call
+	 * @param overflowPolicy
+	 *            what to do when there are <code>capacity</code> events pending
+	 */
+	public AsyncEventsDispatcher(AsyncEventsListener listener, int capacity, int maxBatchSize,
+			OverflowPolicy overflowPolicy)
+	{
+		if (listener == null)
+		{
+			throw new IllegalArgumentException("Argument 'listener' may not be null.");
+		}
+		if (overflowPolicy == null)
+		{
+			throw new IllegalArgumentException("Argument 'overflowPolicy' may not be null.");
+		}
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Argument 'capacity' must be positive.");
+		}
+		if (maxBatchSize < 1)
+		{
+			throw new IllegalArgumentException("Argument 'maxBatchSize' must be positive.");
+		}
+		this.listener = listener;
+		this.capacity = capacity;
+		this.maxBatchSize = maxBatchSize;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public void handleEventsBeforeSave(Session session, Item item, List<Event> events)
+			throws RepositoryException
+	{
+		// nothing to do, only saved events are delivered
+	}
+
+	public void handleEventsAfterSave(Session session, Item item, List<Event> events)
+			throws RepositoryException
+	{
+		List<DetachedEvent> detached = new ArrayList<DetachedEvent>(events.size());
+		for (Event event : events)
+		{
+			DetachedEvent e = DetachedEvent.detach(session, event);
+			if (e != null)
+			{
+				detached.add(e);
+			}
+		}
+		enqueue(detached);
+	}
+
+	/**
+	 * Adds the events to the queue.
+	 * 
+	 * @param events
+	 */
+	public void enqueue(List<DetachedEvent> events)
+	{
+		List<DetachedEvent> overflow = null;
+		synchronized (lock)
+		{
+			if (shutdown)
+			{
+				throw new IllegalStateException("Dispatcher has been shut down.");
+			}
+			for (DetachedEvent event : events)
+			{
+				String key = event.getKey();
+				if (pending.remove(key) == null)
+				{
+					boolean accepted = true;
+					if (overflowPolicy == OverflowPolicy.BLOCK)
+					{
+						accepted = awaitCapacity();
+					}
+					else if (pending.size() >= capacity)
+					{
+						accepted = false;
+					}
+
+					if (!accepted)
+					{
+						if (overflowPolicy == OverflowPolicy.DISCARD)
+						{
+							++discardedCount;
+							continue;
+						}
+						if (overflow == null)
+						{
+							overflow = new ArrayList<DetachedEvent>();
+						}
+						overflow.add(event);
+						continue;
+					}
+				}
+				pending.put(key, event);
+			}
+			startWorker();
+			lock.notifyAll();
+		}
+		if (overflow != null)
+		{
+			deliver(overflow);
+		}
+	}
+
+	/**
+	 * Waits until there is space in the queue. Must be called with the lock held.
+	 * 
+	 * @return <code>false</code> if the thread has been interrupted while waiting
+	 */
+	private boolean awaitCapacity()
+	{
+		while (pending.size() >= capacity)
+		{
+			// the worker must be running and awake to make space
+			startWorker();
+			lock.notifyAll();
+			try
+			{
+				lock.wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void startWorker()
+	{
+		if (worker == null && !shutdown)
+		{
+			worker = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					work();
+				}
+			}, "Brix AsyncEventsDispatcher");
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	private void work()
+	{
+		boolean finished = false;
+		try
+		{
+			deliverPending();
+			finished = true;
+		}
+		finally
+		{
+			if (!finished)
+			{
+				// the listener threw an error; let another worker deliver the remaining events
+				// so that flush() and blocked enqueue() calls do not wait forever
+				synchronized (lock)
+				{
+					worker = null;
+					delivering = false;
+					if (!pending.isEmpty())
+					{
+						startWorker();
+					}
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void deliverPending()
+	{
+		while (true)
+		{
+			List<DetachedEvent> batch;
+			synchronized (lock)
+			{
+				while (pending.isEmpty() && !shutdown)
+				{
+					try
+					{
+						lock.wait();
+					}
+					catch (InterruptedException e)
+					{
+						// keep delivering until shut down
+					}
+				}
+				if (pending.isEmpty())
+				{
+					worker = null;
+					lock.notifyAll();
+					return;
+				}
+				batch = new ArrayList<DetachedEvent>(Math.min(pending.size(), maxBatchSize));
+				for (Iterator<DetachedEvent> i = pending.values().iterator(); i.hasNext() &&
+					batch.size() < maxBatchSize;)
+				{
+					batch.add(i.next());
+					i.remove();
+				}
+				delivering = true;
+				lock.notifyAll();
+			}
+			try
+			{
+				deliver(batch);
+			}
+			finally
+			{
+				synchronized (lock)
+				{
+					delivering = false;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void deliver(List<DetachedEvent> events)
+	{
+		try
+		{
+			listener.handleEvents(events);
+		}
+		catch (RuntimeException e)
+		{
+			logger.error("Error delivering events to " + listener, e);
+		}
+	}
+
+	/**
+	 * Waits until all pending events have been delivered. Useful for tests.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void flush() throws InterruptedException
+	{
+		synchronized (lock)
+		{
+			while (!pending.isEmpty() || delivering)
+			{
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting events. Events already pending are still delivered, after which the worker
+	 * thread terminates.
+	 */
+	public void shutdown()
+	{
+		synchronized (lock)
+		{
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return number of events currently waiting for delivery
+	 */
+	public int getPendingCount()
+	{
+		synchronized (lock)
+		{
+			return pending.size();
+		}
+	}
+
+	/**
+	 * @return number of events dropped because the queue was full (only with
+	 *         {@link OverflowPolicy#DISCARD})
+	 */
+	public long getDiscardedCount()
+	{
+		synchronized (lock)
+		{
+			return discardedCount;
+		}
+	}
+}
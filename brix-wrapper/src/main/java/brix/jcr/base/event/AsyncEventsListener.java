@@ -0,0 +1,33 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.event;
+
+import java.util.List;
+
+/**
+ * Listener that receives post-save events asynchronously, in batches, from an
+ * {@link AsyncEventsDispatcher}.
+ */
+public interface AsyncEventsListener
+{
+	/**
+	 * Invoked on the dispatcher's worker thread with a batch of events saved since the previous
+	 * invocation. Events for the same path are coalesced, the list is in order the events were
+	 * saved in.
+	 * 
+	 * @param events
+	 */
+	public void handleEvents(List<DetachedEvent> events);
+}
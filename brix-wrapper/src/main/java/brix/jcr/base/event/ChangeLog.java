@@ -15,7 +15,11 @@
 package brix.jcr.base.event;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -30,6 +34,13 @@ import javax.jcr.Session;
  * The session must add proper events to the {@link ChangeLog} using
  * {@link #addEvent(Event)} and {@link ChangeLog} will make sure that the events
  * will be normalized (i.e. redundant events will be removed, etc).
+ * <p>
+ * Events are indexed by the path of their node, so that normalizing a new
+ * event and extracting events for a subtree only has to look at events in the
+ * affected subtree rather than at the whole queue. A new event is only offered
+ * (via {@link Event#onNewEvent(Event, Event.QueueCallback)}) to queued events
+ * for the same node, or, in case of {@link BeforeRemoveNodeEvent}, to queued
+ * events for the removed subtree.
  * 
  * @see #addEvent(Event)
  * @see #removeAndGetAffectedEvents(Node)
@@ -44,7 +55,124 @@ public class ChangeLog
 
 	}
 
-	private List<Event> events = new ArrayList<Event>();
+	/**
+	 * Queued event together with the path it is indexed under and its position
+	 * in the queue.
+	 */
+	private static class Entry
+	{
+		private final long sequence;
+		private final String path;
+		private Event event;
+
+		public Entry(long sequence, String path, Event event)
+		{
+			this.sequence = sequence;
+			this.path = path;
+			this.event = event;
+		}
+	}
+
+	private long nextSequence = 0;
+
+	/**
+	 * All queued events by their position in the queue.
+	 */
+	private SortedMap<Long, Entry> events = new TreeMap<Long, Entry>();
+
+	/**
+	 * Queued events by path of their node.
+	 */
+	private TreeMap<String, List<Entry>> index = new TreeMap<String, List<Entry>>();
+
+	/**
+	 * Queued events that don't belong to a node.
+	 */
+	private List<Entry> unindexed = new ArrayList<Entry>();
+
+	private static String getPath(Event event) throws RepositoryException
+	{
+		return event instanceof NodeEvent ? ((NodeEvent) event).getNode().getPath() : null;
+	}
+
+	private static String getUpperBound(String prefix)
+	{
+		return prefix + Character.MAX_VALUE;
+	}
+
+	private void addEntry(Entry entry)
+	{
+		events.put(entry.sequence, entry);
+		if (entry.path == null)
+		{
+			unindexed.add(entry);
+			return;
+		}
+		List<Entry> list = index.get(entry.path);
+		if (list == null)
+		{
+			list = new ArrayList<Entry>(1);
+			index.put(entry.path, list);
+		}
+		list.add(entry);
+	}
+
+	private void removeEntry(Entry entry)
+	{
+		events.remove(entry.sequence);
+		if (entry.path == null)
+		{
+			unindexed.remove(entry);
+			return;
+		}
+		List<Entry> list = index.get(entry.path);
+		list.remove(entry);
+		if (list.isEmpty())
+		{
+			index.remove(entry.path);
+		}
+	}
+
+	/**
+	 * Returns entries indexed under the given path or (if
+	 * <code>subtree</code> is <code>true</code>) under any path starting with
+	 * it.
+	 * 
+	 * @param path
+	 * @param subtree
+	 * @return
+	 */
+	private List<Entry> getEntries(String path, boolean subtree)
+	{
+		List<Entry> result = new ArrayList<Entry>();
+		if (subtree)
+		{
+			for (List<Entry> list : index.subMap(path, getUpperBound(path)).values())
+			{
+				result.addAll(list);
+			}
+		}
+		else
+		{
+			List<Entry> list = index.get(path);
+			if (list != null)
+			{
+				result.addAll(list);
+			}
+		}
+		return result;
+	}
+
+	private static void sort(List<Entry> entries)
+	{
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			public int compare(Entry o1, Entry o2)
+			{
+				return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+			}
+		});
+	}
 
 	/**
 	 * Adds the event to the event queue.
@@ -55,48 +183,74 @@ public class ChangeLog
 	public void addEvent(Event event) throws RepositoryException
 	{
 		final boolean blockAddingEvent[] = { false };
-		for (int i = 0; i < events.size(); ++i)
+		Event.QueueCallback callback = new Event.QueueCallback()
 		{
-			Event e = events.get(i);
-			Event.QueueCallback callback = new Event.QueueCallback()
+			public void blockAddingEvent()
 			{
-				public void blockAddingEvent()
-				{
-					blockAddingEvent[0] = true;
-				}
+				blockAddingEvent[0] = true;
+			}
+		};
 
-			};
-			events.set(i, e.onNewEvent(event, callback));
+		String path = getPath(event);
+		List<Entry> candidates;
+		if (path == null)
+		{
+			candidates = new ArrayList<Entry>(events.values());
+		}
+		else
+		{
+			candidates = getEntries(path, event instanceof BeforeRemoveNodeEvent);
+			candidates.addAll(unindexed);
+			sort(candidates);
 		}
 
-		removeNullEvents();
+		for (Entry entry : candidates)
+		{
+			Event replacement = entry.event.onNewEvent(event, callback);
+			if (replacement != entry.event)
+			{
+				removeEntry(entry);
+				if (replacement != null)
+				{
+					addEntry(new Entry(entry.sequence, getPath(replacement), replacement));
+				}
+			}
+		}
 
 		if (blockAddingEvent[0] == false)
 		{
 			Event transformed = event.transformBeforeAddingToQueue();
 			if (transformed != null)
 			{
-				events.add(transformed);
+				addEntry(new Entry(nextSequence++, getPath(transformed), transformed));
 			}
 		}
+
+		if (event instanceof MoveNodeEvent)
+		{
+			// paths of the moved subtree have changed. Note that paths can also
+			// change when a same name sibling is removed, events for such nodes
+			// might then not be coalesced (but they are still properly
+			// returned from removeAndGetAffectedEvents)
+			reindex();
+		}
 	}
 
 	/**
-	 * Shrinks the queue removing null events.
+	 * Rebuilds the path index from current paths of the queued events.
+	 * 
+	 * @throws RepositoryException
 	 */
-	private void removeNullEvents()
+	private void reindex() throws RepositoryException
 	{
-		// remove null events
-		List<Event> newList = new ArrayList<Event>(events.size());
-		for (Event e : events)
+		List<Entry> entries = new ArrayList<Entry>(events.values());
+		events = new TreeMap<Long, Entry>();
+		index = new TreeMap<String, List<Entry>>();
+		unindexed = new ArrayList<Entry>();
+		for (Entry entry : entries)
 		{
-			if (e != null)
-			{
-				newList.add(e);
-			}
+			addEntry(new Entry(entry.sequence, getPath(entry.event), entry.event));
 		}
-
-		events = newList;
 	}
 
 	/**
@@ -110,25 +264,44 @@ public class ChangeLog
 	 */
 	public List<Event> removeAndGetAffectedEvents(String path) throws RepositoryException
 	{
-		List<Event> result;
+		List<Event> result = new ArrayList<Event>();
 		if (path == null)
 		{
-			result = events;
-			events = new ArrayList<Event>();
+			for (Entry entry : events.values())
+			{
+				result.add(entry.event);
+			}
+			events = new TreeMap<Long, Entry>();
+			index = new TreeMap<String, List<Entry>>();
+			unindexed = new ArrayList<Entry>();
 		}
 		else
 		{
-			result = new ArrayList<Event>();
-			for (int i = 0; i < events.size(); ++i)
+			List<Entry> candidates = getEntries(path, true);
+
+			// events of nodes that are ancestors of path can be affected as
+			// well (i.e. property events when path is a property path)
+			for (int i = path.indexOf('/', 1); i != -1; i = path.indexOf('/', i + 1))
+			{
+				candidates.addAll(getEntries(path.substring(0, i), false));
+			}
+			if (!path.equals("/"))
+			{
+				candidates.addAll(getEntries("/", false));
+			}
+
+			// events not belonging to any node
+			candidates.addAll(unindexed);
+
+			sort(candidates);
+			for (Entry entry : candidates)
 			{
-				Event e = events.get(i);
-				if (e.isAffected(path))
+				if (entry.event.isAffected(path))
 				{
-					result.add(e);
-					events.set(i, null);
+					result.add(entry.event);
+					removeEntry(entry);
 				}
 			}
-			removeNullEvents();
 		}
 		return result;
 	}
@@ -0,0 +1,187 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.event;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Session independent snapshot of an {@link Event}. Unlike {@link Event}, which references live
+ * {@link javax.jcr.Node}s of the session, detached events only carry paths and names so they can be
+ * passed to other threads and processed after the session has been closed.
+ * 
+ * @see AsyncEventsDispatcher
+ */
+public final class DetachedEvent
+{
+	public enum Type {
+		ADD_NODE, REMOVE_NODE, MOVE_NODE, SET_PROPERTY, REMOVE_PROPERTY, CHANGE_NODE_MIXINS, CHANGE_CHILD_NODES_ORDER
+	};
+
+	private final String workspace;
+	private final Type type;
+	private final String path;
+	private final String propertyName;
+	private final String originalPath;
+
+	public DetachedEvent(String workspace, Type type, String path, String propertyName,
+			String originalPath)
+	{
+		if (type == null)
+		{
+			throw new IllegalArgumentException("Argument 'type' may not be null.");
+		}
+		if (path == null)
+		{
+			throw new IllegalArgumentException("Argument 'path' may not be null.");
+		}
+		this.workspace = workspace;
+		this.type = type;
+		this.path = path;
+		this.propertyName = propertyName;
+		this.originalPath = originalPath;
+	}
+
+	/**
+	 * Creates snapshot of the given event. Must be called while the event's nodes are still valid
+	 * (i.e. right after save).
+	 * 
+	 * @param session
+	 * @param event
+	 * @return detached event or <code>null</code> if the event type is not known
+	 * @throws RepositoryException
+	 */
+	public static DetachedEvent detach(Session session, Event event) throws RepositoryException
+	{
+		String workspace = session.getWorkspace().getName();
+		if (event instanceof AddNodeEvent)
+		{
+			String path = ((AddNodeEvent)event).getNewNode().getPath();
+			return new DetachedEvent(workspace, Type.ADD_NODE, path, null, null);
+		}
+		else if (event instanceof RemoveNodeEvent)
+		{
+			RemoveNodeEvent e = (RemoveNodeEvent)event;
+			String parentPath = e.getParentNode().getPath();
+			String path = (parentPath.endsWith("/") ? parentPath : parentPath + "/") +
+				e.getNodeName();
+			return new DetachedEvent(workspace, Type.REMOVE_NODE, path, null, null);
+		}
+		else if (event instanceof MoveNodeEvent)
+		{
+			MoveNodeEvent e = (MoveNodeEvent)event;
+			return new DetachedEvent(workspace, Type.MOVE_NODE, e.getNode().getPath(), null, e
+				.getOriginalPath());
+		}
+		else if (event instanceof PropertyEvent)
+		{
+			PropertyEvent e = (PropertyEvent)event;
+			Type type = e instanceof RemovePropertyEvent ? Type.REMOVE_PROPERTY : Type.SET_PROPERTY;
+			return new DetachedEvent(workspace, type, e.getNode().getPath(), e.getPropertyName(),
+				null);
+		}
+		else if (event instanceof ChangeNodeMixinsEvent)
+		{
+			String path = ((ChangeNodeMixinsEvent)event).getNode().getPath();
+			return new DetachedEvent(workspace, Type.CHANGE_NODE_MIXINS, path, null, null);
+		}
+		else if (event instanceof ChangeChildNodesOrderEvent)
+		{
+			String path = ((ChangeChildNodesOrderEvent)event).getNode().getPath();
+			return new DetachedEvent(workspace, Type.CHANGE_CHILD_NODES_ORDER, path, null, null);
+		}
+		return null;
+	}
+
+	/**
+	 * @return name of workspace the event happened in
+	 */
+	public String getWorkspace()
+	{
+		return workspace;
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns path of the node. For property events this is the path of node the property belongs
+	 * to.
+	 * 
+	 * @return node path
+	 */
+	public String getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * @return property name for property events, <code>null</code> otherwise
+	 */
+	public String getPropertyName()
+	{
+		return propertyName;
+	}
+
+	/**
+	 * @return path the node was moved from for move events, <code>null</code> otherwise
+	 */
+	public String getOriginalPath()
+	{
+		return originalPath;
+	}
+
+	/**
+	 * Returns key of this event. Pending events with equal keys are coalesced, so that only the
+	 * last one is delivered. Moves are only coalesced with moves of the same source to the same
+	 * destination, otherwise the listener would not learn about the source of the replaced move.
+	 * 
+	 * @return
+	 */
+	String getKey()
+	{
+		StringBuilder key = new StringBuilder();
+		key.append(workspace).append('\u0000');
+		key.append(type).append('\u0000');
+		key.append(path);
+		if (propertyName != null)
+		{
+			key.append('\u0000').append(propertyName);
+		}
+		if (originalPath != null)
+		{
+			key.append('\u0000').append(originalPath);
+		}
+		return key.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		result.append(type).append(' ').append(workspace).append(':').append(path);
+		if (propertyName != null)
+		{
+			result.append('/').append(propertyName);
+		}
+		if (originalPath != null)
+		{
+			result.append(" (from ").append(originalPath).append(')');
+		}
+		return result.toString();
+	}
+}
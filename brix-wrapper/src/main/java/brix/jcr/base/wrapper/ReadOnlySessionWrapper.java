@@ -0,0 +1,347 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.wrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.AccessControlException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.AccessDeniedException;
+import javax.jcr.Credentials;
+import javax.jcr.Item;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Property;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.retention.RetentionManager;
+import javax.jcr.security.AccessControlManager;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import brix.jcr.base.BrixSession;
+import brix.jcr.base.action.AbstractActionHandler;
+import brix.jcr.base.event.EventsListener;
+import brix.jcr.base.filter.ValueFilter;
+
+/**
+ * Read-only counterpart of {@link SessionWrapper}. Items are returned as they come from the
+ * repository, without the node and property wrappers, the action handlers and the change log, so
+ * reading through this session costs no more than reading through the plain JCR session. The
+ * methods of this class that modify the workspace throw {@link AccessDeniedException} and
+ * modifications made through the <code>brix.jcr.api</code> wrappers of the returned items are
+ * rejected as well.
+ * <p>
+ * This is not a security boundary: the returned items are raw JCR items, so
+ * <code>item.getSession()</code> and anything that unwraps a delegate give access to the
+ * underlying writable session.
+ */
+class ReadOnlySessionWrapper implements BrixSession
+{
+	private static final ValueFilter VALUE_FILTER = new ValueFilter();
+
+	private final Session delegate;
+
+	private ReadOnlySessionWrapper(Session delegate)
+	{
+		this.delegate = delegate;
+	}
+
+	public static ReadOnlySessionWrapper wrap(Session session)
+	{
+		if (session == null)
+		{
+			return null;
+		}
+		else
+		{
+			return new ReadOnlySessionWrapper(session);
+		}
+	}
+
+	public Session getDelegate()
+	{
+		return delegate;
+	}
+
+	private static AccessDeniedException readOnly()
+	{
+		return new AccessDeniedException("Session is read-only.");
+	}
+
+	/** @deprecated */
+	@Deprecated
+	public void addLockToken(String lt)
+	{
+		delegate.addLockToken(lt);
+	}
+
+	public void checkPermission(String absPath, String actions) throws AccessControlException,
+			RepositoryException
+	{
+		delegate.checkPermission(absPath, actions);
+	}
+
+	public void exportDocumentView(String absPath, ContentHandler contentHandler,
+			boolean skipBinary, boolean noRecurse) throws SAXException, RepositoryException
+	{
+		delegate.exportDocumentView(absPath, contentHandler, skipBinary, noRecurse);
+	}
+
+	public void exportDocumentView(String absPath, OutputStream out, boolean skipBinary,
+			boolean noRecurse) throws IOException, RepositoryException
+	{
+		delegate.exportDocumentView(absPath, out, skipBinary, noRecurse);
+	}
+
+	public void exportSystemView(String absPath, ContentHandler contentHandler, boolean skipBinary,
+			boolean noRecurse) throws SAXException, RepositoryException
+	{
+		delegate.exportSystemView(absPath, contentHandler, skipBinary, noRecurse);
+	}
+
+	public void exportSystemView(String absPath, OutputStream out, boolean skipBinary,
+			boolean noRecurse) throws IOException, RepositoryException
+	{
+		delegate.exportSystemView(absPath, out, skipBinary, noRecurse);
+	}
+
+	public Object getAttribute(String name)
+	{
+		return delegate.getAttribute(name);
+	}
+
+	public String[] getAttributeNames()
+	{
+		return delegate.getAttributeNames();
+	}
+
+	public ContentHandler getImportContentHandler(String parentAbsPath, int uuidBehavior)
+			throws RepositoryException
+	{
+		throw readOnly();
+	}
+
+	public Item getItem(String absPath) throws RepositoryException
+	{
+		return delegate.getItem(absPath);
+	}
+
+	/** @deprecated */
+	@Deprecated
+	public String[] getLockTokens()
+	{
+		return delegate.getLockTokens();
+	}
+
+	public String getNamespacePrefix(String uri) throws RepositoryException
+	{
+		return delegate.getNamespacePrefix(uri);
+	}
+
+	public String[] getNamespacePrefixes() throws RepositoryException
+	{
+		return delegate.getNamespacePrefixes();
+	}
+
+	public String getNamespaceURI(String prefix) throws RepositoryException
+	{
+		return delegate.getNamespaceURI(prefix);
+	}
+
+	public Node getNodeByIdentifier(String id) throws ItemNotFoundException, RepositoryException
+	{
+		return delegate.getNodeByIdentifier(id);
+	}
+
+	/** @deprecated */
+	@Deprecated
+	public Node getNodeByUUID(String uuid) throws RepositoryException
+	{
+		return delegate.getNodeByUUID(uuid);
+	}
+
+	public Repository getRepository()
+	{
+		return delegate.getRepository();
+	}
+
+	public Node getRootNode() throws RepositoryException
+	{
+		return delegate.getRootNode();
+	}
+
+	public String getUserID()
+	{
+		return delegate.getUserID();
+	}
+
+	public ValueFactory getValueFactory() throws RepositoryException
+	{
+		return delegate.getValueFactory();
+	}
+
+	public Workspace getWorkspace()
+	{
+		return delegate.getWorkspace();
+	}
+
+	public boolean hasPendingChanges() throws RepositoryException
+	{
+		return delegate.hasPendingChanges();
+	}
+
+	public Session impersonate(Credentials credentials) throws RepositoryException
+	{
+		return ReadOnlySessionWrapper.wrap(delegate.impersonate(credentials));
+	}
+
+	public void importXML(String parentAbsPath, InputStream in, int uuidBehavior)
+			throws IOException, RepositoryException
+	{
+		throw readOnly();
+	}
+
+	public boolean isLive()
+	{
+		return delegate.isLive();
+	}
+
+	public boolean itemExists(String absPath) throws RepositoryException
+	{
+		return delegate.itemExists(absPath);
+	}
+
+	public void logout()
+	{
+		delegate.logout();
+	}
+
+	public void move(String srcAbsPath, String destAbsPath) throws RepositoryException
+	{
+		throw readOnly();
+	}
+
+	public void refresh(boolean keepChanges) throws RepositoryException
+	{
+		delegate.refresh(keepChanges);
+	}
+
+	/** @deprecated */
+	@Deprecated
+	public void removeLockToken(String lt)
+	{
+		delegate.removeLockToken(lt);
+	}
+
+	public void save() throws RepositoryException
+	{
+		throw readOnly();
+	}
+
+	public void setNamespacePrefix(String prefix, String uri) throws RepositoryException
+	{
+		delegate.setNamespacePrefix(prefix, uri);
+	}
+
+	public AccessControlManager getAccessControlManager()
+			throws UnsupportedRepositoryOperationException, RepositoryException
+	{
+		return delegate.getAccessControlManager();
+	}
+
+	public Node getNode(String absPath) throws PathNotFoundException, RepositoryException
+	{
+		return delegate.getNode(absPath);
+	}
+
+	public Property getProperty(String absPath) throws PathNotFoundException, RepositoryException
+	{
+		return delegate.getProperty(absPath);
+	}
+
+	public RetentionManager getRetentionManager() throws UnsupportedRepositoryOperationException,
+			RepositoryException
+	{
+		return delegate.getRetentionManager();
+	}
+
+	public boolean hasCapability(String methodName, Object target, Object[] arguments)
+			throws RepositoryException
+	{
+		return delegate.hasCapability(methodName, target, arguments);
+	}
+
+	public boolean hasPermission(String absPath, String actions) throws RepositoryException
+	{
+		return delegate.hasPermission(absPath, actions);
+	}
+
+	public boolean nodeExists(String absPath) throws RepositoryException
+	{
+		return delegate.nodeExists(absPath);
+	}
+
+	public boolean propertyExists(String absPath) throws RepositoryException
+	{
+		return delegate.propertyExists(absPath);
+	}
+
+	public void removeItem(String absPath) throws RepositoryException
+	{
+		throw readOnly();
+	}
+
+	public void addActionHandler(AbstractActionHandler handler)
+	{
+		throw new UnsupportedOperationException("Session is read-only.");
+	}
+
+	public void addEventsListener(EventsListener listener)
+	{
+		// read-only session never produces events
+	}
+
+	private final Map<String, Object> attributesMap = new HashMap<String, Object>();
+
+	public Map<String, Object> getAttributesMap()
+	{
+		return attributesMap;
+	}
+
+	public void setValueFilter(ValueFilter valueFilter)
+	{
+		throw new UnsupportedOperationException("Session is read-only.");
+	}
+
+	public ValueFilter getValueFilter()
+	{
+		return VALUE_FILTER;
+	}
+
+	public boolean isReadOnly()
+	{
+		return true;
+	}
+}
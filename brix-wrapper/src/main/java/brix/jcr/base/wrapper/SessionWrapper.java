@@ -305,6 +305,11 @@ class SessionWrapper extends BaseWrapper<Session> implements BrixSession
 		return valueFilter;
 	}
 
+	public boolean isReadOnly()
+	{
+		return false;
+	}
+
 	public AccessControlManager getAccessControlManager()
 			throws UnsupportedRepositoryOperationException, RepositoryException
 	{
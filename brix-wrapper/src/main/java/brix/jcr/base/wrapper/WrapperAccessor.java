@@ -22,9 +22,9 @@ public class WrapperAccessor
 {
     public static BrixSession wrap(Session session)
     {
-    	if (session instanceof SessionWrapper)
+    	if (session instanceof SessionWrapper || session instanceof ReadOnlySessionWrapper)
     	{
-    		return (SessionWrapper)session;
+    		return (BrixSession)session;
     	}
     	else
     	{
@@ -32,12 +32,41 @@ public class WrapperAccessor
     	}        
     }
 
+    /**
+     * Wraps the session without the node wrappers, action handlers and change log. The returned
+     * session rejects all modifications.
+     * 
+     * @param session
+     * @return
+     */
+    public static BrixSession wrapReadOnly(Session session)
+    {
+        if (session instanceof ReadOnlySessionWrapper)
+        {
+            return (ReadOnlySessionWrapper)session;
+        }
+        else
+        {
+            return ReadOnlySessionWrapper.wrap(unwrap(session));
+        }
+    }
+
     public static Session unwrap(Session session)
     {
-        while (session instanceof SessionWrapper)
+        while (true)
         {
-            session = ((SessionWrapper)session).getDelegate();
+            if (session instanceof SessionWrapper)
+            {
+                session = ((SessionWrapper)session).getDelegate();
+            }
+            else if (session instanceof ReadOnlySessionWrapper)
+            {
+                session = ((ReadOnlySessionWrapper)session).getDelegate();
+            }
+            else
+            {
+                return session;
+            }
         }
-        return session;
     }
 }
@@ -14,7 +14,12 @@
 
 package brix;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
@@ -22,6 +27,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.jcr.AccessDeniedException;
 import javax.jcr.Credentials;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
@@ -39,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import brix.jcr.api.JcrNode;
 import brix.jcr.api.JcrSession;
+import brix.jcr.exception.JcrException;
 
 public class WrapperTest
 {
@@ -144,4 +151,65 @@ public class WrapperTest
 		node1.setProperty("property", "value");
 	}
 
+	@Test
+	public void testNodeIdentityMap() throws RepositoryException
+	{
+		JcrSession session = login();
+		session.setNodeIdentityMapEnabled(true);
+
+		JcrNode node = session.getRootNode().addNode("node");
+		JcrNode child = node.addNode("child");
+		session.save();
+
+		assertSame(node, session.getNode("/node"));
+		assertSame(node, session.getItem("/node"));
+		assertSame(node, child.getParent());
+		assertSame(child, node.getNodes().nextNode());
+
+		session.refresh(false);
+		JcrNode refreshed = session.getNode("/node");
+		assertNotSame(node, refreshed);
+		assertEquals(node, refreshed);
+
+		refreshed.getNode("child").remove();
+		assertNotSame(refreshed, session.getNode("/node"));
+	}
+
+	@Test
+	public void testReadOnlySession() throws RepositoryException
+	{
+		JcrSession session = login();
+		session.getRootNode().addNode("node").setProperty("property", "value");
+		session.save();
+
+		Credentials credentials = new SimpleCredentials("admin", "admin".toCharArray());
+		JcrSession readOnly = JcrSession.Wrapper.wrapReadOnly(repo.login(credentials), null);
+		sessions.add(readOnly);
+
+		assertTrue(readOnly.isReadOnly());
+		JcrNode node = readOnly.getNode("/node");
+		assertEquals("value", node.getProperty("property").getString());
+		assertEquals(node, node.getProperty("property").getParent());
+
+		try
+		{
+			node.setProperty("property", "changed");
+			fail();
+		}
+		catch (JcrException e)
+		{
+			assertTrue(e.getCause() instanceof AccessDeniedException);
+		}
+		try
+		{
+			readOnly.save();
+			fail();
+		}
+		catch (JcrException e)
+		{
+			assertTrue(e.getCause() instanceof AccessDeniedException);
+		}
+		assertEquals("value", node.getProperty("property").getString());
+	}
+
 }
@@ -0,0 +1,129 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.api.wrapper;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Micro benchmark comparing the two styles of calling the delegate used by the wrappers: through
+ * an anonymous {@link AbstractWrapper.Callback} passed to
+ * {@link AbstractWrapper#executeCallback(AbstractWrapper.Callback)} and directly with inline
+ * exception translation. This is not a unit test, run it using the {@link #main(String[])} method.
+ */
+public class WrapperCallBenchmark
+{
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int CALLS = 10000000;
+
+    private static class Delegate
+    {
+        private int counter = 0;
+
+        public int getValue() throws RepositoryException
+        {
+            return ++counter;
+        }
+    }
+
+    private static class BenchmarkWrapper extends AbstractWrapper
+    {
+        public BenchmarkWrapper(Delegate delegate)
+        {
+            super(delegate, null);
+        }
+
+        @Override
+        public Delegate getDelegate()
+        {
+            return (Delegate)super.getDelegate();
+        }
+
+        public Integer callbackStyle()
+        {
+            return executeCallback(new Callback<Integer>()
+            {
+                public Integer execute() throws Exception
+                {
+                    return getDelegate().getValue();
+                }
+            });
+        }
+
+        public int inlineStyle()
+        {
+            try
+            {
+                return getDelegate().getValue();
+            }
+            catch (Exception e)
+            {
+                handleException(e);
+                return 0;
+            }
+        }
+    }
+
+    private static long runCallback(BenchmarkWrapper wrapper)
+    {
+        long sum = 0;
+        for (int i = 0; i < CALLS; ++i)
+        {
+            sum += wrapper.callbackStyle();
+        }
+        return sum;
+    }
+
+    private static long runInline(BenchmarkWrapper wrapper)
+    {
+        long sum = 0;
+        for (int i = 0; i < CALLS; ++i)
+        {
+            sum += wrapper.inlineStyle();
+        }
+        return sum;
+    }
+
+    public static void main(String[] args)
+    {
+        BenchmarkWrapper wrapper = new BenchmarkWrapper(new Delegate());
+
+        // the sum is printed so that the JIT can not eliminate the calls
+        long sum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; ++i)
+        {
+            sum += runCallback(wrapper);
+            sum += runInline(wrapper);
+        }
+
+        long callbackTime = 0;
+        long inlineTime = 0;
+        for (int i = 0; i < ROUNDS; ++i)
+        {
+            long start = System.nanoTime();
+            sum += runCallback(wrapper);
+            callbackTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sum += runInline(wrapper);
+            inlineTime += System.nanoTime() - start;
+        }
+
+        double calls = (double)ROUNDS * CALLS;
+        System.out.println("callback: " + callbackTime / calls + " ns/call");
+        System.out.println("inline:   " + inlineTime / calls + " ns/call");
+        System.out.println("(" + sum + ")");
+    }
+}
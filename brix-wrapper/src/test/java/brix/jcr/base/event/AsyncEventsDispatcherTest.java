@@ -0,0 +1,217 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.event;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import brix.jcr.base.event.AsyncEventsDispatcher.OverflowPolicy;
+import brix.jcr.base.event.DetachedEvent.Type;
+
+public class AsyncEventsDispatcherTest
+{
+	private AsyncEventsDispatcher dispatcher;
+
+	@After
+	public void shutdown()
+	{
+		if (dispatcher != null)
+		{
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Records delivered batches. Delivery of the first batch blocks until released.
+	 */
+	private static class RecordingListener implements AsyncEventsListener
+	{
+		private final List<String> batches = new ArrayList<String>();
+		private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private String thread;
+
+		public void handleEvents(List<DetachedEvent> events)
+		{
+			synchronized (this)
+			{
+				batches.add(events.toString());
+				thread = Thread.currentThread().getName();
+			}
+			firstBatchStarted.countDown();
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		public synchronized List<String> getBatches()
+		{
+			return new ArrayList<String>(batches);
+		}
+	}
+
+	private static DetachedEvent setProperty(String path, String property)
+	{
+		return new DetachedEvent("default", Type.SET_PROPERTY, path, property, null);
+	}
+
+	private static DetachedEvent move(String from, String to)
+	{
+		return new DetachedEvent("default", Type.MOVE_NODE, to, null, from);
+	}
+
+	private static DetachedEvent addNode(String path)
+	{
+		return new DetachedEvent("default", Type.ADD_NODE, path, null, null);
+	}
+
+	@Test
+	public void coalesceAndBatch() throws InterruptedException
+	{
+		RecordingListener listener = new RecordingListener();
+		dispatcher = new AsyncEventsDispatcher(listener, 100, 2, OverflowPolicy.BLOCK);
+
+		dispatcher.enqueue(Arrays.asList(addNode("/foo")));
+		listener.firstBatchStarted.await();
+
+		// worker is busy, these get coalesced
+		dispatcher.enqueue(Arrays.asList(setProperty("/foo", "a"), setProperty("/foo", "b")));
+		dispatcher.enqueue(Arrays.asList(setProperty("/foo", "a"), addNode("/bar")));
+		assertEquals(3, dispatcher.getPendingCount());
+
+		listener.release.countDown();
+		dispatcher.flush();
+
+		assertEquals(0, dispatcher.getPendingCount());
+		assertEquals(Arrays.asList("[ADD_NODE default:/foo]",
+			"[SET_PROPERTY default:/foo/b, SET_PROPERTY default:/foo/a]",
+			"[ADD_NODE default:/bar]"), listener.getBatches());
+		assertEquals("Brix AsyncEventsDispatcher", listener.thread);
+	}
+
+	@Test
+	public void movesKeepSources() throws InterruptedException
+	{
+		RecordingListener listener = new RecordingListener();
+		dispatcher = new AsyncEventsDispatcher(listener, 100, 10, OverflowPolicy.BLOCK);
+
+		dispatcher.enqueue(Arrays.asList(addNode("/foo")));
+		listener.firstBatchStarted.await();
+
+		// different moves to the same destination are not coalesced
+		dispatcher.enqueue(Arrays.asList(move("/a", "/c"), move("/c", "/b"), move("/d", "/c"),
+			move("/d", "/c")));
+		assertEquals(3, dispatcher.getPendingCount());
+
+		listener.release.countDown();
+		dispatcher.flush();
+		assertEquals(Arrays.asList("[ADD_NODE default:/foo]",
+			"[MOVE_NODE default:/c (from /a), MOVE_NODE default:/b (from /c), " +
+				"MOVE_NODE default:/c (from /d)]"), listener.getBatches());
+	}
+
+	@Test
+	public void overflowDiscard() throws InterruptedException
+	{
+		RecordingListener listener = new RecordingListener();
+		dispatcher = new AsyncEventsDispatcher(listener, 1, 10, OverflowPolicy.DISCARD);
+
+		dispatcher.enqueue(Arrays.asList(addNode("/foo")));
+		listener.firstBatchStarted.await();
+
+		dispatcher.enqueue(Arrays.asList(addNode("/bar"), addNode("/baz")));
+		assertEquals(1, dispatcher.getDiscardedCount());
+
+		listener.release.countDown();
+		dispatcher.flush();
+		assertEquals(Arrays.asList("[ADD_NODE default:/foo]", "[ADD_NODE default:/bar]"), listener
+			.getBatches());
+	}
+
+	@Test
+	public void overflowCallerRuns() throws InterruptedException
+	{
+		RecordingListener listener = new RecordingListener();
+		listener.release.countDown();
+		dispatcher = new AsyncEventsDispatcher(listener, 1, 10, OverflowPolicy.CALLER_RUNS);
+
+		// nothing is being delivered yet, so the second event doesn't fit
+		synchronized (listener)
+		{
+			dispatcher.enqueue(Arrays.asList(addNode("/foo"), addNode("/bar")));
+			assertEquals(Thread.currentThread().getName(), listener.thread);
+		}
+		dispatcher.flush();
+		assertEquals(2, listener.getBatches().size());
+	}
+
+	@Test(timeout = 10000)
+	public void overflowBlock() throws InterruptedException
+	{
+		RecordingListener listener = new RecordingListener();
+		listener.release.countDown();
+		dispatcher = new AsyncEventsDispatcher(listener, 2, 1, OverflowPolicy.BLOCK);
+
+		// make sure the worker exists and is idle
+		dispatcher.enqueue(Arrays.asList(addNode("/foo")));
+		dispatcher.flush();
+
+		// more events than capacity in a single save must not block forever
+		dispatcher.enqueue(Arrays.asList(addNode("/a"), addNode("/b"), addNode("/c"),
+			addNode("/d"), addNode("/e")));
+		dispatcher.flush();
+		assertEquals(6, listener.getBatches().size());
+		assertEquals("[ADD_NODE default:/e]", listener.getBatches().get(5));
+	}
+
+	@Test(timeout = 10000)
+	public void errorInListener() throws InterruptedException
+	{
+		final List<String> delivered = new ArrayList<String>();
+		dispatcher = new AsyncEventsDispatcher(new AsyncEventsListener()
+		{
+			public void handleEvents(List<DetachedEvent> events)
+			{
+				if (events.get(0).getPath().equals("/error"))
+				{
+					throw new Error("expected");
+				}
+				synchronized (delivered)
+				{
+					delivered.add(events.toString());
+				}
+			}
+		}, 10, 1, OverflowPolicy.BLOCK);
+
+		dispatcher.enqueue(Arrays.asList(addNode("/error"), addNode("/foo")));
+		dispatcher.flush();
+		dispatcher.enqueue(Arrays.asList(addNode("/bar")));
+		dispatcher.flush();
+		assertEquals(Arrays.asList("[ADD_NODE default:/foo]", "[ADD_NODE default:/bar]"),
+			delivered);
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brix.jcr.base.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeLogTest
+{
+	private ChangeLog changeLog;
+
+	@Before
+	public void initChangeLog()
+	{
+		changeLog = new ChangeLog();
+	}
+
+	/**
+	 * Node stub that only knows its (mutable) path.
+	 */
+	private static class NodeStub implements InvocationHandler
+	{
+		private String path;
+
+		public NodeStub(String path)
+		{
+			this.path = path;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			if (method.getName().equals("getPath"))
+			{
+				return path;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	private static Node node(NodeStub stub)
+	{
+		return (Node)Proxy.newProxyInstance(ChangeLogTest.class.getClassLoader(),
+			new Class<?>[] { Node.class }, stub);
+	}
+
+	private static Node node(String path)
+	{
+		return node(new NodeStub(path));
+	}
+
+	private static List<String> paths(List<Event> events) throws RepositoryException
+	{
+		List<String> result = new ArrayList<String>();
+		for (Event event : events)
+		{
+			String path = ((NodeEvent)event).getNode().getPath();
+			if (event instanceof PropertyEvent)
+			{
+				path += "/" + ((PropertyEvent)event).getPropertyName();
+			}
+			result.add(path);
+		}
+		return result;
+	}
+
+	@Test
+	public void propertyEventsCoalesced() throws RepositoryException
+	{
+		Node node = node("/foo");
+		changeLog.addEvent(new RemovePropertyEvent(node, "a"));
+		changeLog.addEvent(new RemovePropertyEvent(node, "b"));
+		changeLog.addEvent(new RemovePropertyEvent(node("/foo"), "a"));
+
+		List<Event> events = changeLog.removeAndGetAffectedEvents(null);
+		assertEquals("[/foo/b, /foo/a]", paths(events).toString());
+	}
+
+	@Test
+	public void removeDiscardsSubtree() throws RepositoryException
+	{
+		Node node = node("/foo/bar");
+		changeLog.addEvent(new AddNodeEvent(node("/foo")));
+		changeLog.addEvent(new AddNodeEvent(node));
+		changeLog.addEvent(new RemovePropertyEvent(node("/foo/bar/baz"), "a"));
+		changeLog.addEvent(new RemovePropertyEvent(node("/foo/baz"), "a"));
+		changeLog.addEvent(new BeforeRemoveNodeEvent(node));
+
+		List<Event> events = changeLog.removeAndGetAffectedEvents(null);
+		assertEquals("[/foo, /foo/baz/a]", paths(events).toString());
+	}
+
+	@Test
+	public void removeAndGetAffectedEvents() throws RepositoryException
+	{
+		changeLog.addEvent(new AddNodeEvent(node("/foo/bar/baz")));
+		changeLog.addEvent(new RemovePropertyEvent(node("/"), "a"));
+		changeLog.addEvent(new AddNodeEvent(node("/bar")));
+		changeLog.addEvent(new RemovePropertyEvent(node("/foo"), "a"));
+		changeLog.addEvent(new AddNodeEvent(node("/foo/bar")));
+
+		List<Event> events = changeLog.removeAndGetAffectedEvents("/foo/bar");
+		assertEquals("[/foo/bar/baz, /foo/bar]", paths(events).toString());
+
+		events = changeLog.removeAndGetAffectedEvents("/foo/a");
+		assertEquals("[/foo/a]", paths(events).toString());
+
+		events = changeLog.removeAndGetAffectedEvents("/foo");
+		assertTrue(events.isEmpty());
+
+		events = changeLog.removeAndGetAffectedEvents(null);
+		assertEquals("[//a, /bar]", paths(events).toString());
+	}
+
+	@Test
+	public void moveUpdatesIndex() throws RepositoryException
+	{
+		NodeStub stub = new NodeStub("/foo/bar");
+		changeLog.addEvent(new RemovePropertyEvent(node(stub), "a"));
+
+		stub.path = "/baz/bar";
+		changeLog.addEvent(new MoveNodeEvent(node("/baz"), "/foo"));
+
+		assertTrue(changeLog.removeAndGetAffectedEvents("/foo").isEmpty());
+
+		List<Event> events = changeLog.removeAndGetAffectedEvents("/baz");
+		assertEquals("[/baz/bar/a, /baz]", paths(events).toString());
+	}
+}